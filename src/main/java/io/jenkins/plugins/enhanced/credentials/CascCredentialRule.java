@@ -10,11 +10,15 @@ public class CascCredentialRule {
 
     private String itemPattern;
     private String credentialPattern;
+    private RuleEffect effect;
+    private Integer priority;
 
     @DataBoundConstructor
-    public CascCredentialRule(String itemPattern, String credentialPattern) {
+    public CascCredentialRule(String itemPattern, String credentialPattern, RuleEffect effect, Integer priority) {
         this.itemPattern = itemPattern;
         this.credentialPattern = credentialPattern;
+        this.effect = effect;
+        this.priority = priority;
     }
 
 }
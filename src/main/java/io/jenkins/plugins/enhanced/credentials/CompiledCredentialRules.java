@@ -0,0 +1,290 @@
+package io.jenkins.plugins.enhanced.credentials;
+
+import io.jenkins.plugins.enhanced.credentials.engine.ClassifiedPattern;
+import io.jenkins.plugins.enhanced.credentials.engine.ItemPathIndex;
+import io.jenkins.plugins.enhanced.credentials.engine.MultiPatternMatcher;
+import io.jenkins.plugins.enhanced.credentials.engine.PatternIndex;
+import io.jenkins.plugins.enhanced.credentials.engine.PatternKind;
+import io.jenkins.plugins.enhanced.credentials.engine.UnsupportedPatternException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable, pre-compiled view of {@link CredentialRules} used by access checks.
+ * A new instance is built whenever the rules are saved or reloaded, so checks never touch the disk.
+ * <p>
+ * Rules are kept in evaluation order, so the first rule matching both the credential and the item decides: deny rules
+ * come first for {@link EvaluationMode#ANY_MATCH} and rules are ordered by descending priority for
+ * {@link EvaluationMode#FIRST_MATCH}.
+ */
+public final class CompiledCredentialRules {
+
+    private static final Logger LOGGER = Logger.getLogger(CompiledCredentialRules.class.getName());
+
+    /**
+     * Pattern used in place of a rule pattern which can't be compiled, it never matches.
+     */
+    private static final Pattern NEVER_MATCHING = Pattern.compile("(?!)");
+
+    private static final AtomicLong GENERATION_COUNTER = new AtomicLong();
+
+    public static final CompiledCredentialRules EMPTY = new CompiledCredentialRules(false, EvaluationMode.ANY_MATCH, false, Collections.emptyList());
+
+    private final long generation = GENERATION_COUNTER.incrementAndGet();
+    private final boolean restrictNotMatching;
+    private final EvaluationMode evaluationMode;
+    private final boolean linearTimeOnly;
+    private final List<CompiledCredentialRule> credentialRuleList;
+    private final BitSet allowRules = new BitSet();
+    private final PatternIndex credentialPatternIndex;
+    private final Map<PatternKind, Integer> itemPatternKindCounts;
+    private final ItemPathIndex itemPathIndex;
+
+    private CompiledCredentialRules(boolean restrictNotMatching, EvaluationMode evaluationMode, boolean linearTimeOnly, List<CompiledCredentialRule> credentialRuleList) {
+        this.restrictNotMatching = restrictNotMatching;
+        this.evaluationMode = evaluationMode;
+        this.linearTimeOnly = linearTimeOnly;
+        this.credentialRuleList = Collections.unmodifiableList(credentialRuleList);
+        List<ClassifiedPattern> credentialPatterns = new ArrayList<>();
+        List<ClassifiedPattern> itemPatterns = new ArrayList<>();
+        Map<PatternKind, Integer> itemPatternKindCounts = new EnumMap<>(PatternKind.class);
+        for (PatternKind kind : PatternKind.values()) {
+            itemPatternKindCounts.put(kind, 0);
+        }
+        for (int i = 0; i < credentialRuleList.size(); i++) {
+            CompiledCredentialRule credentialRule = credentialRuleList.get(i);
+            if (credentialRule.effect == RuleEffect.ALLOW) {
+                allowRules.set(i);
+            }
+            ClassifiedPattern credentialPattern = credentialRule.credentialPattern;
+            credentialPatterns.add(credentialPattern.getPattern() == NEVER_MATCHING ? null : credentialPattern);
+            if (credentialRule.itemPattern.getPattern() != NEVER_MATCHING) {
+                itemPatternKindCounts.merge(credentialRule.itemPattern.getKind(), 1, Integer::sum);
+                itemPatterns.add(credentialRule.itemPattern);
+            } else {
+                itemPatterns.add(null);
+            }
+        }
+        this.credentialPatternIndex = PatternIndex.compile(credentialPatterns);
+        this.itemPathIndex = ItemPathIndex.compile(itemPatterns);
+        this.itemPatternKindCounts = Collections.unmodifiableMap(itemPatternKindCounts);
+    }
+
+    public static CompiledCredentialRules compile(CredentialRules credentialRules) {
+        boolean linearTimeOnly = Boolean.TRUE.equals(credentialRules.getLinearTimeOnly());
+        List<CompiledCredentialRule> compiledRuleList = new ArrayList<>();
+        if (credentialRules.getCredentialRuleList() != null) {
+            for (CredentialRule credentialRule : credentialRules.getCredentialRuleList()) {
+                compiledRuleList.add(new CompiledCredentialRule(
+                        credentialRule.getName(),
+                        compilePattern(credentialRule.getName(), credentialRule.getCredentialPattern(), linearTimeOnly),
+                        compilePattern(credentialRule.getName(), credentialRule.getItemPattern(), linearTimeOnly),
+                        credentialRule.getEffect(),
+                        credentialRule.getPriority()));
+            }
+        }
+        EvaluationMode evaluationMode = credentialRules.getEvaluationMode();
+        // The sort is stable, rules keep their configured order otherwise
+        if (evaluationMode == EvaluationMode.FIRST_MATCH) {
+            compiledRuleList.sort(Comparator.comparingInt(CompiledCredentialRule::getPriority).reversed());
+        } else {
+            compiledRuleList.sort(Comparator.comparing(credentialRule -> credentialRule.getEffect() != RuleEffect.DENY));
+        }
+        boolean restrictNotMatching = Boolean.TRUE.equals(credentialRules.getRestrictNotMatching());
+        CompiledCredentialRules compiledCredentialRules = new CompiledCredentialRules(restrictNotMatching, evaluationMode, linearTimeOnly, compiledRuleList);
+        LOGGER.fine(String.format("Compiled %d Credential Rules with restrictNotMatching:%s evaluationMode:%s linearTimeOnly:%s, %s",
+                compiledRuleList.size(), restrictNotMatching, evaluationMode, linearTimeOnly, compiledCredentialRules.getSummary()));
+        return compiledCredentialRules;
+    }
+
+    private static ClassifiedPattern compilePattern(String ruleName, String pattern, boolean linearTimeOnly) {
+        if (pattern == null) {
+            LOGGER.warning(String.format("Pattern of Credential Rule:%s is empty, rule will never match", ruleName));
+            return ClassifiedPattern.classify(NEVER_MATCHING);
+        }
+        try {
+            Pattern compiledPattern = Pattern.compile(pattern);
+            if (linearTimeOnly) {
+                MultiPatternMatcher.checkSupported(compiledPattern);
+            }
+            return ClassifiedPattern.classify(compiledPattern);
+        } catch (PatternSyntaxException e) {
+            LOGGER.log(Level.WARNING, String.format("Pattern:%s of Credential Rule:%s is not valid, rule will never match", pattern, ruleName), e);
+            return ClassifiedPattern.classify(NEVER_MATCHING);
+        } catch (UnsupportedPatternException e) {
+            LOGGER.log(Level.WARNING, String.format("Pattern:%s of Credential Rule:%s can't be matched in linear time, rule will never match", pattern, ruleName), e);
+            return ClassifiedPattern.classify(NEVER_MATCHING);
+        }
+    }
+
+    /**
+     * Returns why the pattern can't be used in a rule, or {@code null} if it can.
+     */
+    public static String validatePattern(String pattern, boolean linearTimeOnly) {
+        try {
+            Pattern compiledPattern = Pattern.compile(pattern);
+            if (linearTimeOnly) {
+                MultiPatternMatcher.checkSupported(compiledPattern);
+            }
+            return null;
+        } catch (PatternSyntaxException e) {
+            return String.format("Invalid regular expression: %s", e.getDescription());
+        } catch (UnsupportedPatternException e) {
+            return String.format("Pattern can't be matched in linear time: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns true if the pattern is matched in linear time, otherwise it is matched by {@link Pattern} within a step budget.
+     */
+    public static boolean isLinearTime(String pattern) {
+        try {
+            MultiPatternMatcher.checkSupported(Pattern.compile(pattern));
+            return true;
+        } catch (PatternSyntaxException | UnsupportedPatternException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a number identifying this snapshot, every compilation gets a higher one.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public boolean isRestrictNotMatching() {
+        return restrictNotMatching;
+    }
+
+    public EvaluationMode getEvaluationMode() {
+        return evaluationMode;
+    }
+
+    public boolean isLinearTimeOnly() {
+        return linearTimeOnly;
+    }
+
+    /**
+     * Returns the rules in evaluation order.
+     */
+    public List<CompiledCredentialRule> getCredentialRuleList() {
+        return credentialRuleList;
+    }
+
+    /**
+     * Returns true if any of the given rules is an allow rule.
+     */
+    public boolean containsAllowRule(BitSet rules) {
+        return rules.intersects(allowRules);
+    }
+
+    /**
+     * Returns the indexes of the rules in {@link #getCredentialRuleList()} whose credential pattern matches the credential id,
+     * all credential patterns are evaluated in a single pass.
+     */
+    public BitSet matchCredential(String credentialId) {
+        return credentialPatternIndex.match(credentialId);
+    }
+
+    /**
+     * Returns the indexes of the rules in {@link #getCredentialRuleList()} whose item pattern may match the item,
+     * i.e. the rules attached to the item's ancestor folders. Only these rules need their item pattern evaluated.
+     */
+    public BitSet candidateRulesForItem(String itemName) {
+        return itemPathIndex.candidates(itemName);
+    }
+
+    /**
+     * Returns the number of rules whose item pattern is limited to a folder.
+     */
+    public int getFolderAnchoredRuleCount() {
+        return itemPathIndex.getAnchoredPatternCount();
+    }
+
+    /**
+     * Returns how many credential patterns landed in each {@link PatternKind}.
+     */
+    public Map<PatternKind, Integer> getCredentialPatternKindCounts() {
+        return credentialPatternIndex.getKindCounts();
+    }
+
+    /**
+     * Returns how many item patterns landed in each {@link PatternKind}.
+     */
+    public Map<PatternKind, Integer> getItemPatternKindCounts() {
+        return itemPatternKindCounts;
+    }
+
+    public String getSummary() {
+        return String.format("Credential Patterns:%s Item Patterns:%s Folder Anchored Rules:%d",
+                getCredentialPatternKindCounts(), getItemPatternKindCounts(), getFolderAnchoredRuleCount());
+    }
+
+    /**
+     * A single {@link CredentialRule} with its patterns compiled.
+     */
+    public static final class CompiledCredentialRule {
+
+        private final String name;
+        private final ClassifiedPattern credentialPattern;
+        private final ClassifiedPattern itemPattern;
+        private final RuleEffect effect;
+        private final int priority;
+
+        CompiledCredentialRule(String name, ClassifiedPattern credentialPattern, ClassifiedPattern itemPattern, RuleEffect effect, int priority) {
+            this.name = name;
+            this.credentialPattern = credentialPattern;
+            this.itemPattern = itemPattern;
+            this.effect = effect;
+            this.priority = priority;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Pattern getCredentialPattern() {
+            return credentialPattern.getPattern();
+        }
+
+        public Pattern getItemPattern() {
+            return itemPattern.getPattern();
+        }
+
+        public RuleEffect getEffect() {
+            return effect;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public PatternKind getCredentialPatternKind() {
+            return credentialPattern.getKind();
+        }
+
+        public PatternKind getItemPatternKind() {
+            return itemPattern.getKind();
+        }
+
+        public boolean matchesCredential(String credentialId) {
+            return credentialPattern.matches(credentialId);
+        }
+
+        public boolean matchesItem(String itemName) {
+            return itemPattern.matches(itemName);
+        }
+    }
+}
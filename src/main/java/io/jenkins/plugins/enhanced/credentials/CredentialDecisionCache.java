@@ -0,0 +1,118 @@
+package io.jenkins.plugins.enhanced.credentials;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jenkins.util.SystemProperties;
+
+import java.util.logging.Logger;
+
+/**
+ * Bounded cache of access decisions keyed by credential id and item full name.
+ * <p>
+ * Keys carry the generation of the {@link CompiledCredentialRules} the decision was made with, so decisions made with
+ * an older rule set are never returned. The whole cache is dropped when the rules change and entries of an item are
+ * dropped when the item is renamed, moved or deleted.
+ */
+public class CredentialDecisionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialDecisionCache.class.getName());
+
+    /**
+     * Maximum number of cached decisions, 0 disables the cache.
+     */
+    static final int MAXIMUM_SIZE = SystemProperties.getInteger(CredentialDecisionCache.class.getName() + ".maximumSize", 10_000);
+
+    private static final CredentialDecisionCache INSTANCE = new CredentialDecisionCache(MAXIMUM_SIZE);
+
+    private final int maximumSize;
+    private final Cache<DecisionKey, Boolean> decisions;
+
+    CredentialDecisionCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.decisions = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    public static CredentialDecisionCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cached decision or {@code null} if the decision for the rule set is not cached.
+     */
+    public Boolean getDecision(CompiledCredentialRules credentialRules, String credentialId, String itemName) {
+        if (maximumSize == 0) {
+            return null;
+        }
+        return decisions.getIfPresent(new DecisionKey(credentialRules.getGeneration(), credentialId, itemName));
+    }
+
+    public void putDecision(CompiledCredentialRules credentialRules, String credentialId, String itemName, Boolean decision) {
+        if (maximumSize == 0) {
+            return;
+        }
+        decisions.put(new DecisionKey(credentialRules.getGeneration(), credentialId, itemName), decision);
+    }
+
+    public void invalidateAll() {
+        LOGGER.fine("Invalidating all cached access decisions");
+        decisions.invalidateAll();
+    }
+
+    /**
+     * Drops the decisions of the item and, if the item is a folder, of all the items in it.
+     */
+    public void invalidateItem(String itemFullName) {
+        LOGGER.fine(String.format("Invalidating cached access decisions for Item:%s", itemFullName));
+        String childPrefix = itemFullName + "/";
+        decisions.asMap().keySet().removeIf(key -> key.itemName.equals(itemFullName) || key.itemName.startsWith(childPrefix));
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getSize() {
+        return decisions.size();
+    }
+
+    public long getHitCount() {
+        return decisions.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return decisions.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return decisions.stats().evictionCount();
+    }
+
+    private static final class DecisionKey {
+        private final long generation;
+        private final String credentialId;
+        private final String itemName;
+
+        DecisionKey(long generation, String credentialId, String itemName) {
+            this.generation = generation;
+            this.credentialId = credentialId;
+            this.itemName = itemName;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey that = (DecisionKey) other;
+            return generation == that.generation && credentialId.equals(that.credentialId) && itemName.equals(that.itemName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Long.hashCode(generation) + credentialId.hashCode()) + itemName.hashCode();
+        }
+    }
+}
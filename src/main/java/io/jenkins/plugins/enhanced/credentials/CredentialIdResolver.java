@@ -0,0 +1,75 @@
+package io.jenkins.plugins.enhanced.credentials;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.common.IdCredentials;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the id of a credential without reflection on every use.
+ * <p>
+ * Credentials implementing {@link IdCredentials} are asked directly, for any other class the {@code getId} method is
+ * looked up once and kept as a {@link MethodHandle} per class.
+ */
+public final class CredentialIdResolver {
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialIdResolver.class.getName());
+
+    private static final MethodType GET_ID_TYPE = MethodType.methodType(String.class, Credentials.class);
+
+    /**
+     * {@code getId} handle per credential class, {@code null} if the class has no public {@code getId} method returning a
+     * {@link String}.
+     */
+    private static final ClassValue<MethodHandle> GET_ID_HANDLES = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                Method getIdMethod = type.getMethod("getId");
+                if (getIdMethod.getReturnType() != String.class) {
+                    LOGGER.warning(String.format("Credential type:%s has a getId method returning %s instead of String", type.getName(), getIdMethod.getReturnType().getName()));
+                    return null;
+                }
+                // The method may be public but declared by a class which is not
+                getIdMethod.setAccessible(true);
+                return MethodHandles.lookup().unreflect(getIdMethod).asType(GET_ID_TYPE);
+            } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, String.format("Credential type:%s has no usable getId method", type.getName()), e);
+                return null;
+            }
+        }
+    };
+
+    private CredentialIdResolver() {
+    }
+
+    /**
+     * Returns the id of the credential.
+     *
+     * @throws IllegalArgumentException if the id of the credential can't be resolved
+     */
+    public static String resolveId(Credentials credentials) {
+        if (credentials instanceof IdCredentials) {
+            return ((IdCredentials) credentials).getId();
+        }
+        MethodHandle getIdHandle = GET_ID_HANDLES.get(credentials.getClass());
+        if (getIdHandle == null) {
+            throw new IllegalArgumentException(String.format("Credential type:%s has no getId method returning a String", credentials.getClass().getName()));
+        }
+        String credentialId;
+        try {
+            credentialId = (String) getIdHandle.invokeExact(credentials);
+        } catch (Throwable e) {
+            throw new IllegalArgumentException(String.format("Failed to get id of Credential type:%s", credentials.getClass().getName()), e);
+        }
+        if (credentialId == null) {
+            throw new IllegalArgumentException(String.format("Credential type:%s returned no id", credentials.getClass().getName()));
+        }
+        return credentialId;
+    }
+}
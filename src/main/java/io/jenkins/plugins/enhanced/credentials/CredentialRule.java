@@ -21,6 +21,8 @@ public class CredentialRule extends AbstractDescribableImpl<CredentialRule> {
     @SuppressWarnings("lgtm[jenkins/plaintext-storage]")
     private String credentialPattern;
     private String itemPattern;
+    private RuleEffect effect = RuleEffect.ALLOW;
+    private Integer priority = 0;
 
     @DataBoundConstructor
     public CredentialRule(String name, String credentialPattern, String itemPattern) {
@@ -44,6 +46,16 @@ public class CredentialRule extends AbstractDescribableImpl<CredentialRule> {
         this.itemPattern = itemPattern;
     }
 
+    @DataBoundSetter
+    public void setEffect(RuleEffect effect) {
+        this.effect = effect;
+    }
+
+    @DataBoundSetter
+    public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
     public String getName() {
         return name;
     }
@@ -56,6 +68,15 @@ public class CredentialRule extends AbstractDescribableImpl<CredentialRule> {
         return itemPattern;
     }
 
+    public RuleEffect getEffect() {
+        // Rules saved before effects were introduced are allow rules
+        return effect == null ? RuleEffect.ALLOW : effect;
+    }
+
+    public Integer getPriority() {
+        return priority == null ? 0 : priority;
+    }
+
     @Override
     public Descriptor<CredentialRule> getDescriptor() {
         return super.getDescriptor();
@@ -85,7 +106,7 @@ public class CredentialRule extends AbstractDescribableImpl<CredentialRule> {
             if(Util.fixEmptyAndTrim(value) == null){
                 return FormValidation.error("Credential Pattern can't be empty.");
             }
-            return FormValidation.ok();
+            return validatePattern(value);
         }
 
         @RequirePOST
@@ -94,6 +115,17 @@ public class CredentialRule extends AbstractDescribableImpl<CredentialRule> {
             if(Util.fixEmptyAndTrim(value) == null){
                 return FormValidation.error("Item Patterncan't be empty.");
             }
+            return validatePattern(value);
+        }
+
+        private static FormValidation validatePattern(String value) {
+            String error = CompiledCredentialRules.validatePattern(value, CredentialRuleConfiguration.getCompiledCredentialRules().isLinearTimeOnly());
+            if (error != null) {
+                return FormValidation.error(error);
+            }
+            if (!CompiledCredentialRules.isLinearTime(value)) {
+                return FormValidation.warning("Pattern can't be matched in linear time, it will be matched with a step budget and block access if the budget is exceeded.");
+            }
             return FormValidation.ok();
         }
 
@@ -5,6 +5,7 @@ import hudson.Extension;
 import hudson.model.Descriptor;
 import hudson.model.ManagementLink;
 import hudson.util.FormApply;
+import io.jenkins.plugins.enhanced.credentials.audit.AccessAuditLog;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.StaplerRequest;
@@ -29,6 +30,18 @@ public class CredentialRuleConfiguration extends ManagementLink {
         return this.credentialRules;
     }
 
+    public CompiledCredentialRules getCompiledRules() {
+        return getCompiledCredentialRules();
+    }
+
+    public CredentialDecisionCache getDecisionCache() {
+        return CredentialDecisionCache.get();
+    }
+
+    public AccessAuditLog getAuditLog() {
+        return AccessAuditLog.get();
+    }
+
     @Override
     public String getIconFileName() {
         return "symbol-lock-closed";
@@ -60,11 +73,18 @@ public class CredentialRuleConfiguration extends ManagementLink {
         return (CredentialRules.CredentialRulesDescriptorImpl) descriptor;
     }
 
+    /**
+     * Returns the rules in memory, they are only reloaded on configure or when the file changes, see
+     * {@link CredentialRules.CredentialRulesReloader}.
+     */
     public static CredentialRules loadCredentialRules(){
-        getCredentialRulesDescriptor().load();
         return getCredentialRulesDescriptor().getCredentialRules();
     }
 
+    public static CompiledCredentialRules getCompiledCredentialRules(){
+        return getCredentialRulesDescriptor().getCompiledCredentialRules();
+    }
+
     private CredentialRules saveCredentialRules(StaplerRequest req, JSONObject submittedForm) throws Descriptor.FormException {
         getCredentialRulesDescriptor().configure(req,submittedForm);
         return getCredentialRulesDescriptor().getCredentialRules();
@@ -4,14 +4,17 @@ import com.cloudbees.plugins.credentials.Credentials;
 import com.google.common.util.concurrent.ListenableFuture;
 import hudson.AbortException;
 import hudson.model.*;
+import io.jenkins.plugins.enhanced.credentials.audit.AccessAuditLog;
+import io.jenkins.plugins.enhanced.credentials.engine.RegexBudgetExceededException;
 import io.jenkins.plugins.enhanced.credentials.listener.GenericRunListener;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.steps.StepExecution;
 
-import java.lang.reflect.Method;
+import java.util.BitSet;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class CredentialRuleSupporter {
@@ -19,95 +22,89 @@ public class CredentialRuleSupporter {
     private static final Logger LOGGER = Logger.getLogger(CredentialRuleSupporter.class.getName());
 
     public Boolean checkProjectHasAccessForCredential(Credentials credentials, FreeStyleProject project) {
-        String credentialId = callGetId(credentials);
+        String credentialId = CredentialIdResolver.resolveId(credentials);
         String itemName = project.getFullName();
         return checkItemHasAccessForCredential(credentialId, itemName);
     }
 
     public Boolean checkJobHasAccessForCredential(Credentials credentials, Job job) {
-        String credentialId = callGetId(credentials);
+        String credentialId = CredentialIdResolver.resolveId(credentials);
         String itemName = job.getFullName();
         return checkItemHasAccessForCredential(credentialId, itemName);
     }
 
-    private Boolean checkItemHasAccessForCredential(String credentialId, String itemName) {
-        CredentialRules credentialRules = CredentialRuleConfiguration.loadCredentialRules();
-        LOGGER.fine(String.format("Checking Access for Credential:%s and Item:%s", credentialId, itemName));
+    public Boolean checkItemHasAccessForCredential(String credentialId, String itemName) {
+        return checkItemHasAccessForCredential(CredentialRuleConfiguration.getCompiledCredentialRules(), credentialId, itemName);
+    }
+
+    /**
+     * Checks access with the given rules, going through the decision cache and the audit log like every access check.
+     */
+    public Boolean checkItemHasAccessForCredential(CompiledCredentialRules credentialRules, String credentialId, String itemName) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("Checking Access for Credential:%s and Item:%s", credentialId, itemName));
+        }
+        CredentialDecisionCache credentialDecisionCache = CredentialDecisionCache.get();
+        Boolean cachedDecision = credentialDecisionCache.getDecision(credentialRules, credentialId, itemName);
+        if (cachedDecision != null) {
+            AccessAuditLog.get().record(credentialId, itemName, cachedDecision, true, credentialRules.getGeneration());
+            return cachedDecision;
+        }
+        Boolean decision;
+        try {
+            decision = evaluateAccessForCredential(credentialRules, credentialId, itemName);
+        } catch (RegexBudgetExceededException e) {
+            // Fail closed, the same check would exceed the budget again so the decision is cached as well
+            LOGGER.warning(String.format("Blocking Credential:%s Access for Item:%s, %s", credentialId, itemName, e.getMessage()));
+            decision = false;
+        }
+        credentialDecisionCache.putDecision(credentialRules, credentialId, itemName, decision);
+        // Decisions go to the audit log instead of the controller log, formatting happens on the audit writer thread
+        AccessAuditLog.get().record(credentialId, itemName, decision, false, credentialRules.getGeneration());
+        return decision;
+    }
+
+    /**
+     * Evaluates the rules for the access, without the decision cache and the audit log.
+     */
+    public Boolean evaluateAccessForCredential(CompiledCredentialRules credentialRules, String credentialId, String itemName) {
 
         // Check if there are any rules are defined
         if (credentialRules.getCredentialRuleList().size() == 0) {
             LOGGER.fine("No Credentials Rules are found");
             // If there are no rules, then check the default restriction config
-            if (credentialRules.getRestrictNotMatching()) {
-                // Means that credential usage must be blocked
-                LOGGER.info(String.format("Blocking Credential:%s Access for Item:%s", credentialId, itemName));
-                return false;
-            } else {
-                // Means that credential usage must be allowed
-                LOGGER.info(String.format("Allowing Credential:%s Access for Item:%s", credentialId, itemName));
-                return true;
-            }
+            // Means that credential usage must be blocked if restricted, allowed otherwise
+            return !credentialRules.isRestrictNotMatching();
         } else {
-            // If there are rules defined, loop in them and find if there are any matches
-            Boolean isCredentialMatched = false;
+            // If there are rules defined, find the rules matching the credential in a single pass
             Boolean isItemAllowed = false;
-            for (CredentialRule credentialRule : credentialRules.getCredentialRuleList()) {
-                String credentialPattern = credentialRule.getCredentialPattern();
-                String itemPattern = credentialRule.getItemPattern();
-                LOGGER.fine(String.format("Checking access for credentialPattern:%s and itemPattern:%s", credentialPattern,itemPattern));
-                // Check if the credential Name matches with the pattern
-                if (credentialId.matches(credentialPattern)) {
-                    LOGGER.fine(String.format("Credential %s is matched with pattern:%s", credentialId, credentialPattern));
-                    isCredentialMatched = true;
-                    // Check if item name matches with the pattern
-                    if (itemName.matches(itemPattern)) {
-                        LOGGER.fine(String.format("Item %s is matched with pattern:%s", itemName, itemPattern));
-                        isItemAllowed = true;
+            BitSet matchedRules = credentialRules.matchCredential(credentialId);
+            // Deny rules only apply where their item pattern matches, only allow rules make a credential matched
+            Boolean isCredentialMatched = credentialRules.containsAllowRule(matchedRules);
+            // Only the rules attached to the item's ancestor folders can match the item
+            matchedRules.and(credentialRules.candidateRulesForItem(itemName));
+            // Rules are in evaluation order, the first rule matching the item decides
+            for (int i = matchedRules.nextSetBit(0); i >= 0; i = matchedRules.nextSetBit(i + 1)) {
+                CompiledCredentialRules.CompiledCredentialRule credentialRule = credentialRules.getCredentialRuleList().get(i);
+                if (credentialRule.matchesItem(itemName)) {
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine(String.format("Credential %s and Item %s are matched with patterns:%s %s of %s rule:%s", credentialId, itemName,
+                                credentialRule.getCredentialPattern(), credentialRule.getItemPattern(), credentialRule.getEffect(), credentialRule.getName()));
                     }
+                    if (credentialRule.getEffect() == RuleEffect.DENY) {
+                        return false;
+                    }
+                    isItemAllowed = true;
+                    break;
                 }
             }
-            // If default restriction policy is set to restrict
-            // and
-            // If the credential is not matched.
-            // return true for blocking
-            if (credentialRules.getRestrictNotMatching() && !isCredentialMatched) {
-                LOGGER.info(String.format("Blocking Credential:%s Access for Item:%s", credentialId, itemName));
-                return false;
-            }
-            // If default restriction policy is set to restrict
-            // and
-            // If the credential is matched.
-            // return isItemAllowed for blocking
-            if (credentialRules.getRestrictNotMatching() && isCredentialMatched) {
-                if( isItemAllowed)
-                    LOGGER.info(String.format("Allowing Credential:%s Access for Item:%s", credentialId, itemName));
-                else
-                    LOGGER.info(String.format("Blocking Credential:%s Access for Item:%s", credentialId, itemName));
+            // If the credential is matched, return isItemAllowed
+            if (isCredentialMatched) {
                 return isItemAllowed;
             }
-            // If default restriction policy is set to allow
-            // and
-            // If the credential is matched.
-            // return isItemAllowed for blocking
-            if (!credentialRules.getRestrictNotMatching() && isCredentialMatched) {
-                if( isItemAllowed)
-                    LOGGER.info(String.format("Allowing Credential:%s Access for Item:%s", credentialId, itemName));
-                else
-                    LOGGER.info(String.format("Blocking Credential:%s Access for Item:%s", credentialId, itemName));
-                return isItemAllowed;
-            }
-            // If default restriction policy is set to allow
-            // and
-            // If the credential is not matched.
-            // return true for allowing
-            if (!credentialRules.getRestrictNotMatching() && !isCredentialMatched) {
-                LOGGER.info(String.format("Allowing Credential:%s Access for Item:%s", credentialId, itemName));
-                return true;
-            }
+            // If the credential is not matched, block if the default restriction policy is set to restrict, allow otherwise
+            return !credentialRules.isRestrictNotMatching();
         }
-
-        // Return false by default where this code shouldn't be reached
-        return false;
     }
 
     public void tryStoppingFreeStyleBuild(FreeStyleBuild freeStyleBuild) throws AbortException {
@@ -142,17 +139,6 @@ public class CredentialRuleSupporter {
         }
     }
 
-    public static String callGetId(Credentials credentials) {
-        try {
-            Method getIdMethod = credentials.getClass().getMethod("getId");
-            Object getIdResult = getIdMethod.invoke(credentials);
-            return String.valueOf(getIdResult);
-        } catch (Exception e) {
-            // If it can't get the ID, there is nothing can be done.
-            throw new RuntimeException("Runtime Exception");
-        }
-    }
-
     public static void checkAdminPermission() throws Exception {
         Jenkins jenkins = Jenkins.getInstanceOrNull();
         if(jenkins == null){
@@ -5,6 +5,7 @@ import hudson.Extension;
 import hudson.Util;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
+import hudson.model.PeriodicWork;
 import io.jenkins.plugins.casc.Attribute;
 import io.jenkins.plugins.casc.ConfigurationContext;
 import io.jenkins.plugins.casc.ConfiguratorException;
@@ -18,7 +19,9 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
@@ -29,6 +32,10 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
 
     private Boolean restrictNotMatching = false;
 
+    private EvaluationMode evaluationMode = EvaluationMode.ANY_MATCH;
+
+    private Boolean linearTimeOnly = false;
+
     @DataBoundConstructor
     public CredentialRules(List<CredentialRule> credentialRuleList, Boolean restrictNotMatching) {
         this.credentialRuleList = credentialRuleList;
@@ -53,6 +60,24 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
         this.restrictNotMatching = restrictNotMatching;
     }
 
+    public EvaluationMode getEvaluationMode() {
+        return evaluationMode == null ? EvaluationMode.ANY_MATCH : evaluationMode;
+    }
+
+    @DataBoundSetter
+    public void setEvaluationMode(EvaluationMode evaluationMode) {
+        this.evaluationMode = evaluationMode;
+    }
+
+    public Boolean getLinearTimeOnly() {
+        return linearTimeOnly;
+    }
+
+    @DataBoundSetter
+    public void setLinearTimeOnly(Boolean linearTimeOnly) {
+        this.linearTimeOnly = linearTimeOnly;
+    }
+
     public List<Descriptor<CredentialRule>> getCredentialRuleListDescriptors() {
         return Jenkins.get().getDescriptorList(CredentialRule.class);
     }
@@ -64,13 +89,70 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
 
         public Boolean restrictNotMatching = false;
 
+        public EvaluationMode evaluationMode = EvaluationMode.ANY_MATCH;
+
+        public Boolean linearTimeOnly = false;
+
+        private transient volatile CompiledCredentialRules compiledCredentialRules = CompiledCredentialRules.EMPTY;
+
+        private transient long loadedConfigFileTimestamp;
+
+        private transient long loadedConfigFileLength;
+
+        public CredentialRulesDescriptorImpl() {
+            this.load();
+        }
+
         public CredentialRules getCredentialRules() {
-            return new CredentialRules(this.credentialRuleList, this.restrictNotMatching);
+            CredentialRules credentialRules = new CredentialRules(this.credentialRuleList, this.restrictNotMatching);
+            credentialRules.setEvaluationMode(this.evaluationMode);
+            credentialRules.setLinearTimeOnly(this.linearTimeOnly);
+            return credentialRules;
+        }
+
+        /**
+         * Returns the in-memory snapshot of the rules, it is replaced atomically on every save or reload.
+         */
+        public CompiledCredentialRules getCompiledCredentialRules() {
+            return this.compiledCredentialRules;
+        }
+
+        @Override
+        public synchronized void load() {
+            super.load();
+            this.compileCredentialRules();
+        }
+
+        @Override
+        public synchronized void save() {
+            super.save();
+            this.compileCredentialRules();
+        }
+
+        /**
+         * Reloads the rules if the configuration file has been changed outside of this descriptor.
+         */
+        public synchronized void reloadIfChanged() {
+            File configFile = this.getConfigFile().getFile();
+            if (configFile.lastModified() != this.loadedConfigFileTimestamp || configFile.length() != this.loadedConfigFileLength) {
+                LOGGER.info(String.format("Credential Rules file %s is changed, reloading", configFile));
+                this.load();
+            }
+        }
+
+        private void compileCredentialRules() {
+            File configFile = this.getConfigFile().getFile();
+            this.loadedConfigFileTimestamp = configFile.lastModified();
+            this.loadedConfigFileLength = configFile.length();
+            this.compiledCredentialRules = CompiledCredentialRules.compile(this.getCredentialRules());
+            CredentialDecisionCache.get().invalidateAll();
         }
 
         private CredentialRules processCasc(CNode config) throws ConfiguratorException {
             LOGGER.fine("Processing Casc");
             Boolean restrictNotMatching = false;
+            EvaluationMode evaluationMode = EvaluationMode.ANY_MATCH;
+            Boolean linearTimeOnly = false;
             List<CredentialRule> credentialRuleList = new ArrayList<>();
             Mapping credentialRulesMapping = config.asMapping();
             for (Map.Entry<String, CNode> entry : credentialRulesMapping.entrySet()) {
@@ -79,6 +161,12 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
                 if (key.equals("restrictNotMatching")) {
                     restrictNotMatching = Boolean.valueOf(entry.getValue().toString());
                     LOGGER.fine(String.format("Setting restrictNotMatching from Casc with value:%s", restrictNotMatching));
+                } else if (key.equals("evaluationMode")) {
+                    evaluationMode = parseCascValue(EvaluationMode.class, key, entry.getValue().toString());
+                    LOGGER.fine(String.format("Setting evaluationMode from Casc with value:%s", evaluationMode));
+                } else if (key.equals("linearTimeOnly")) {
+                    linearTimeOnly = Boolean.valueOf(entry.getValue().toString());
+                    LOGGER.fine(String.format("Setting linearTimeOnly from Casc with value:%s", linearTimeOnly));
                 } else {
                     Mapping credentialRuleMapping = entry.getValue().asMapping();
                     if (!(credentialRuleMapping.containsKey("credentialPattern") && credentialRuleMapping.containsKey("itemPattern"))) {
@@ -87,11 +175,43 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
                     }
                     String credentialPattern = credentialRuleMapping.get("credentialPattern").toString();
                     String itemPattern = credentialRuleMapping.get("itemPattern").toString();
-                    LOGGER.fine(String.format("Adding Credential Rule with values %s %s %s", key, credentialPattern, itemPattern));
-                    credentialRuleList.add(new CredentialRule(key, credentialPattern, itemPattern));
+                    CredentialRule credentialRule = new CredentialRule(key, credentialPattern, itemPattern);
+                    if (credentialRuleMapping.containsKey("effect")) {
+                        credentialRule.setEffect(parseCascValue(RuleEffect.class, key, credentialRuleMapping.get("effect").toString()));
+                    }
+                    if (credentialRuleMapping.containsKey("priority")) {
+                        try {
+                            credentialRule.setPriority(Integer.valueOf(credentialRuleMapping.get("priority").toString()));
+                        } catch (NumberFormatException e) {
+                            throw new ConfiguratorException(String.format("Invalid priority for %s", key), e);
+                        }
+                    }
+                    LOGGER.fine(String.format("Adding Credential Rule with values %s %s %s %s %s", key, credentialPattern, itemPattern,
+                            credentialRule.getEffect(), credentialRule.getPriority()));
+                    credentialRuleList.add(credentialRule);
+                }
+            }
+            // Patterns are validated once all keys are read, linearTimeOnly may come after the rules
+            for (CredentialRule credentialRule : credentialRuleList) {
+                for (String pattern : Arrays.asList(credentialRule.getCredentialPattern(), credentialRule.getItemPattern())) {
+                    String error = CompiledCredentialRules.validatePattern(pattern, linearTimeOnly);
+                    if (error != null) {
+                        throw new ConfiguratorException(String.format("Invalid pattern %s for %s: %s", pattern, credentialRule.getName(), error));
+                    }
                 }
             }
-            return new CredentialRules(credentialRuleList, restrictNotMatching);
+            CredentialRules credentialRules = new CredentialRules(credentialRuleList, restrictNotMatching);
+            credentialRules.setEvaluationMode(evaluationMode);
+            credentialRules.setLinearTimeOnly(linearTimeOnly);
+            return credentialRules;
+        }
+
+        private static <T extends Enum<T>> T parseCascValue(Class<T> type, String key, String value) throws ConfiguratorException {
+            try {
+                return Enum.valueOf(type, value);
+            } catch (IllegalArgumentException e) {
+                throw new ConfiguratorException(String.format("Invalid value %s for %s, expected one of %s", value, key, Arrays.toString(type.getEnumConstants())), e);
+            }
         }
 
         @NonNull
@@ -116,9 +236,22 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
                                 return credentialRules.getRestrictNotMatching();
                             })
             );
+            credentialRulesDefinitions.add(
+                    new Attribute<CredentialRules, Boolean>("linearTimeOnly", Boolean.class)
+                            .getter(target -> {
+                                return credentialRules.getLinearTimeOnly();
+                            })
+            );
+            credentialRulesDefinitions.add(
+                    new Attribute<CredentialRules, EvaluationMode>("evaluationMode", EvaluationMode.class)
+                            .getter(target -> {
+                                return credentialRules.getEvaluationMode();
+                            })
+            );
             for (CredentialRule credentialRule : credentialRules.getCredentialRuleList()) {
                 Attribute<CredentialRules, ?> attribute = new Attribute<CredentialRules, CascCredentialRule>(credentialRule.getName(), CascCredentialRule.class).getter(target -> {
-                    return new CascCredentialRule(credentialRule.getItemPattern(), credentialRule.getCredentialPattern());
+                    return new CascCredentialRule(credentialRule.getItemPattern(), credentialRule.getCredentialPattern(),
+                            credentialRule.getEffect(), credentialRule.getPriority());
                 });
                 credentialRulesDefinitions.add(attribute);
             }
@@ -132,6 +265,8 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
             CredentialRules credentialRules = this.processCasc(config);
             this.credentialRuleList = credentialRules.getCredentialRuleList();
             this.restrictNotMatching = credentialRules.getRestrictNotMatching();
+            this.evaluationMode = credentialRules.getEvaluationMode();
+            this.linearTimeOnly = credentialRules.getLinearTimeOnly();
             this.save();
             return credentialRules;
         }
@@ -149,6 +284,10 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
             List<CredentialRule> submittedcredentialRuleList = new ArrayList<>();
             Boolean submittedRestrictNotMatching = submittedForm.getBoolean("restrictNotMatching");
             LOGGER.fine(String.format("Found submitted restrictNotMatching with value:%s", submittedRestrictNotMatching));
+            EvaluationMode submittedEvaluationMode = parseFormValue(EvaluationMode.class, submittedForm.optString("evaluationMode", EvaluationMode.ANY_MATCH.name()));
+            LOGGER.fine(String.format("Found submitted evaluationMode with value:%s", submittedEvaluationMode));
+            Boolean submittedLinearTimeOnly = submittedForm.optBoolean("linearTimeOnly", false);
+            LOGGER.fine(String.format("Found submitted linearTimeOnly with value:%s", submittedLinearTimeOnly));
             JSONArray definedCredentialRules = JSONArray.fromObject(submittedForm.getOrDefault("definedCredentialRules", new JSONArray()));
             for (Object item : definedCredentialRules) {
                 JSONObject definedCredentialRule = JSONObject.fromObject(item);
@@ -161,18 +300,61 @@ public class CredentialRules extends AbstractDescribableImpl<CredentialRules> {
                 String definitionRuleName = definedCredentialRule.getString("itemPattern");
                 if (Util.fixEmptyAndTrim(definitionRuleName) == null)
                     throw new Descriptor.FormException("Item Pattern can't be empty", definitionRuleName);
-                LOGGER.fine(String.format("Adding Credential Rule with values %s %s %s", definitionName, definitionPattern, definitionRuleName));
-                submittedcredentialRuleList.add(new CredentialRule(definitionName, definitionPattern, definitionRuleName));
+                String credentialPatternError = CompiledCredentialRules.validatePattern(definitionPattern, submittedLinearTimeOnly);
+                if (credentialPatternError != null)
+                    throw new Descriptor.FormException(String.format("Credential pattern of %s: %s", definitionName, credentialPatternError), "credentialPattern");
+                String itemPatternError = CompiledCredentialRules.validatePattern(definitionRuleName, submittedLinearTimeOnly);
+                if (itemPatternError != null)
+                    throw new Descriptor.FormException(String.format("Item Pattern of %s: %s", definitionName, itemPatternError), "itemPattern");
+                CredentialRule credentialRule = new CredentialRule(definitionName, definitionPattern, definitionRuleName);
+                credentialRule.setEffect(parseFormValue(RuleEffect.class, definedCredentialRule.optString("effect", RuleEffect.ALLOW.name())));
+                String definitionPriority = Util.fixEmptyAndTrim(definedCredentialRule.optString("priority", null));
+                try {
+                    credentialRule.setPriority(definitionPriority == null ? 0 : Integer.valueOf(definitionPriority));
+                } catch (NumberFormatException e) {
+                    throw new Descriptor.FormException("Priority must be a number", "priority");
+                }
+                LOGGER.fine(String.format("Adding Credential Rule with values %s %s %s %s %s", definitionName, definitionPattern, definitionRuleName,
+                        credentialRule.getEffect(), credentialRule.getPriority()));
+                submittedcredentialRuleList.add(credentialRule);
             }
             this.credentialRuleList = submittedcredentialRuleList;
             this.restrictNotMatching = submittedRestrictNotMatching;
+            this.evaluationMode = submittedEvaluationMode;
+            this.linearTimeOnly = submittedLinearTimeOnly;
             this.save();
             return super.configure(req, submittedForm);
         }
 
+        private static <T extends Enum<T>> T parseFormValue(Class<T> type, String value) throws FormException {
+            try {
+                return Enum.valueOf(type, value);
+            } catch (IllegalArgumentException e) {
+                throw new Descriptor.FormException(String.format("Invalid value %s", value), type.getSimpleName());
+            }
+        }
+
         @Override
         public CredentialRules getTargetComponent(ConfigurationContext context) {
             return CredentialRuleConfiguration.loadCredentialRules();
         }
     }
+
+    /**
+     * Picks up changes made directly on the Credential Rules file.
+     */
+    @Extension
+    public static final class CredentialRulesReloader extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected void doRun() {
+            CredentialRulesDescriptorImpl descriptor = (CredentialRulesDescriptorImpl) Jenkins.get().getDescriptorOrDie(CredentialRules.class);
+            descriptor.reloadIfChanged();
+        }
+    }
 }
@@ -6,7 +6,6 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.util.HashMap;
-import java.util.Map;
 
 
 @AllArgsConstructor
@@ -26,25 +25,14 @@ public class CredentialUsage {
     }
 
     public CredentialUsage incrementItemUsage(String itemName){
-        this.itemUsage.put(itemName, (this.itemUsage.getOrDefault(itemName, 0) + 1));
-        this.totalUsageCount = this.calculateTotalUsageCount();
+        this.itemUsage.merge(itemName, 1, Integer::sum);
+        this.totalUsageCount = this.totalUsageCount + 1;
         return this;
     }
 
     public CredentialUsage incrementNodeUsage(String nodeName){
-        this.nodeUsage.put(nodeName, (this.nodeUsage.getOrDefault(nodeName, 0) + 1));
-        this.totalUsageCount = this.calculateTotalUsageCount();
+        this.nodeUsage.merge(nodeName, 1, Integer::sum);
+        this.totalUsageCount = this.totalUsageCount + 1;
         return this;
     }
-
-    private Integer calculateTotalUsageCount(){
-        Integer totalUsageCount = 0;
-        for(Map.Entry<String, Integer> usage : this.itemUsage.entrySet()){
-            totalUsageCount = totalUsageCount + usage.getValue();
-        }
-        for(Map.Entry<String, Integer> usage : this.nodeUsage.entrySet()){
-            totalUsageCount = totalUsageCount + usage.getValue();
-        }
-        return totalUsageCount;
-    }
 }
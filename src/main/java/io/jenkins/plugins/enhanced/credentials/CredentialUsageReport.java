@@ -3,34 +3,58 @@ package io.jenkins.plugins.enhanced.credentials;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.model.ManagementLink;
+import io.jenkins.plugins.enhanced.credentials.listener.CredentialUseDispatcher;
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageCounters;
+import io.jenkins.plugins.enhanced.credentials.usage.StaleCredentialScan;
+import io.jenkins.plugins.enhanced.credentials.usage.TopUsage;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.fileupload.FileItem;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 @Extension
 public class CredentialUsageReport extends ManagementLink {
 
+    private static final Logger LOGGER = Logger.getLogger(CredentialUsageReport.class.getName());
+
     private final static String url = "credentialUsageReport";
 
-    private HashMap<String, CredentialUsage> credentialUsageMap;
+    public CredentialUsages.CredentialUsageDescriptor getUsageDescriptor() {
+        return (CredentialUsages.CredentialUsageDescriptor) Jenkins.get().getDescriptorOrDie(CredentialUsages.class);
+    }
 
-    public HashMap<String, CredentialUsage> getCredentialUsageMap() {
-        this.credentialUsageMap = CredentialUsages.loadCredentialUsageReport().getCredentialUsageMap();
-        return this.credentialUsageMap;
+    public CredentialUseDispatcher getCredentialUseDispatcher() {
+        return CredentialUseDispatcher.get();
     }
 
-    public List<String> getCredentialIds(){
-        return this.getCredentialUsageMap().entrySet().stream().map(e -> e.getKey()).collect(Collectors.toList());
+    public CredentialUsageCounters getCredentialUsageCounters(String credentialId) {
+        return this.getUsageDescriptor().getCredentialUsageStore().getCounters(credentialId);
+    }
+
+    /**
+     * The live counters of every used credential, nothing is copied.
+     */
+    public Collection<CredentialUsageCounters> getAllCredentialUsageCounters() {
+        return this.getUsageDescriptor().getCredentialUsageStore().getAllCounters();
     }
 
-    private CredentialUsage getCredentialUsage(String credentialId){
-        return this.getCredentialUsageMap().getOrDefault(credentialId, new CredentialUsage(credentialId));
+    public List<String> getCredentialIds(){
+        return this.getAllCredentialUsageCounters().stream().map(CredentialUsageCounters::getCredentialId).collect(Collectors.toList());
     }
 
     public String getUrl() {
@@ -67,11 +91,112 @@ public class CredentialUsageReport extends ManagementLink {
     public void doUsageDetails(StaplerRequest staplerRequest, StaplerResponse staplerResponse) throws Exception {
         CredentialRuleSupporter.checkAdminPermission();
         String credentialId = staplerRequest.getParameter("credentialId");
+        CredentialUsageCounters counters = this.getCredentialUsageCounters(credentialId);
+        boolean showAllUsage = counters != null && Boolean.parseBoolean(staplerRequest.getParameter("all"));
         staplerRequest.setAttribute("selectedCredentialId", credentialId);
-        staplerRequest.setAttribute("selectedCredentialUsage", this.getCredentialUsage(credentialId));
+        staplerRequest.setAttribute("selectedCredentialCounters", counters);
+        staplerRequest.setAttribute("showAllUsage", showAllUsage);
+        if (showAllUsage) {
+            // Only the full lists of this credential are built, the default view reads the top usage
+            staplerRequest.setAttribute("selectedCredentialUsage", counters.toCredentialUsage());
+        }
         staplerRequest.getView(this, "usageDetails.jelly").forward(staplerRequest,staplerResponse);
     }
 
+    /**
+     * The items and nodes using the credential the most, as JSON.
+     */
+    public void doTopUsage(StaplerRequest staplerRequest, StaplerResponse staplerResponse) throws Exception {
+        CredentialRuleSupporter.checkAdminPermission();
+        String credentialId = staplerRequest.getParameter("credentialId");
+        CredentialUsageCounters counters = this.getCredentialUsageCounters(credentialId);
+        JSONObject topUsage = new JSONObject();
+        topUsage.put("credentialId", credentialId);
+        topUsage.put("totalUsageCount", counters != null ? counters.getTotalUsageCount() : 0);
+        topUsage.put("items", toJson(counters != null ? counters.getTopItems() : Collections.emptyList()));
+        topUsage.put("nodes", toJson(counters != null ? counters.getTopNodes() : Collections.emptyList()));
+        staplerResponse.setContentType("application/json;charset=UTF-8");
+        staplerResponse.getOutputStream().write(topUsage.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JSONArray toJson(List<TopUsage.Entry> entries) {
+        JSONArray array = new JSONArray();
+        for (TopUsage.Entry entry : entries) {
+            JSONObject object = new JSONObject();
+            object.put("name", entry.getName());
+            object.put("count", entry.getCount());
+            object.put("error", entry.getError());
+            array.add(object);
+        }
+        return array;
+    }
+
+    public StaleCredentialScan getStaleCredentialScan() {
+        return StaleCredentialScan.getLatest();
+    }
+
+    @RequirePOST
+    public void doStartStaleCredentialScan(StaplerRequest staplerRequest, StaplerResponse staplerResponse) throws Exception {
+        CredentialRuleSupporter.checkAdminPermission();
+        int days;
+        try {
+            days = Integer.parseInt(staplerRequest.getParameter("days"));
+        } catch (NumberFormatException e) {
+            days = 0;
+        }
+        if (days < 1) {
+            staplerResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, "Days must be a positive number");
+            return;
+        }
+        StaleCredentialScan.start(days, this.getUsageDescriptor().getCredentialUsageStore());
+        staplerResponse.forwardToPreviousPage(staplerRequest);
+    }
+
+    @RequirePOST
+    public void doCancelStaleCredentialScan(StaplerRequest staplerRequest, StaplerResponse staplerResponse) throws Exception {
+        CredentialRuleSupporter.checkAdminPermission();
+        StaleCredentialScan staleCredentialScan = StaleCredentialScan.getLatest();
+        if (staleCredentialScan != null) {
+            staleCredentialScan.cancel();
+        }
+        staplerResponse.forwardToPreviousPage(staplerRequest);
+    }
+
+    /**
+     * Downloads the usage of this controller and of the controllers merged into it, to be merged on other controllers.
+     * Read only, uses still queued for the accounting are exported with the next export.
+     */
+    public void doExportUsage(StaplerRequest staplerRequest, StaplerResponse staplerResponse) throws Exception {
+        CredentialRuleSupporter.checkAdminPermission();
+        CredentialUsages.CredentialUsageDescriptor usageDescriptor = this.getUsageDescriptor();
+        staplerResponse.setContentType("application/octet-stream");
+        staplerResponse.setHeader("Content-Disposition", "attachment; filename=credential-usage.bin");
+        usageDescriptor.getMergedUsage().export(usageDescriptor.getControllerId(), usageDescriptor.getCredentialUsageStore(), staplerResponse.getOutputStream());
+    }
+
+    /**
+     * Merges usage exported by another controller, merging the same export again changes nothing.
+     */
+    @RequirePOST
+    public void doImportUsage(StaplerRequest staplerRequest, StaplerResponse staplerResponse) throws Exception {
+        CredentialRuleSupporter.checkAdminPermission();
+        FileItem file = staplerRequest.getFileItem("file");
+        if (file == null || file.getSize() == 0) {
+            staplerResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, "No usage export uploaded");
+            return;
+        }
+        CredentialUsages.CredentialUsageDescriptor usageDescriptor = this.getUsageDescriptor();
+        try (InputStream input = file.getInputStream()) {
+            int changedCounters = usageDescriptor.getMergedUsage().merge(usageDescriptor.getControllerId(), input);
+            LOGGER.info(String.format("Merged usage export %s, %d counters changed", file.getName(), changedCounters));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Failed to merge usage export %s", file.getName()), e);
+            staplerResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, String.format("Failed to merge usage export: %s", e.getMessage()));
+            return;
+        }
+        staplerResponse.forwardToPreviousPage(staplerRequest);
+    }
+
     @RequirePOST
     public void doClearData(StaplerRequest staplerRequest, StaplerResponse staplerResponse) throws Exception {
         CredentialRuleSupporter.checkAdminPermission();
@@ -2,21 +2,99 @@ package io.jenkins.plugins.enhanced.credentials;
 
 import com.cloudbees.plugins.credentials.Credentials;
 import hudson.Extension;
+import hudson.init.Terminator;
 import hudson.model.*;
+import io.jenkins.plugins.enhanced.credentials.listener.CredentialUseConsumer;
+import io.jenkins.plugins.enhanced.credentials.listener.CredentialUseDispatcher;
+import io.jenkins.plugins.enhanced.credentials.listener.CredentialUseEvent;
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import io.jenkins.plugins.enhanced.credentials.usage.DeletedUsagePolicy;
+import io.jenkins.plugins.enhanced.credentials.usage.LegacyUsageReader;
+import io.jenkins.plugins.enhanced.credentials.usage.MappedUsageFile;
+import io.jenkins.plugins.enhanced.credentials.usage.MergedUsage;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageJournal;
+import io.jenkins.plugins.enhanced.credentials.usage.UsagePersistence;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageRetention;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.Optional;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class CredentialUsages extends AbstractDescribableImpl<CredentialUsages> {
 
     private static final Logger LOGGER = Logger.getLogger(CredentialRuleSupporter.class.getName());
 
+    /**
+     * Interval in seconds at which changed usage counters are written to disk.
+     */
+    static final long FLUSH_INTERVAL = SystemProperties.getLong(CredentialUsages.class.getName() + ".flushInterval", 30L);
+
+    /**
+     * Number of unwritten usage changes after which a write is started without waiting for the interval.
+     */
+    static final long MAX_PENDING_CHANGES = SystemProperties.getLong(CredentialUsages.class.getName() + ".maxPendingChanges", 10_000L);
+
+    /**
+     * Whether usage counters are kept in a memory-mapped file instead of the usage journal.
+     */
+    static final boolean MAPPED_PERSISTENCE = SystemProperties.getBoolean(CredentialUsages.class.getName() + ".mappedPersistence", false);
+
+    /**
+     * Id under which this controller's usage is exported, defaults to the instance id of the controller.
+     */
+    static final String CONTROLLER_ID = SystemProperties.getString(CredentialUsages.class.getName() + ".controllerId");
+
+    /**
+     * What happens to the usage of deleted items.
+     */
+    static final DeletedUsagePolicy DELETED_ITEM_POLICY = parseDeletedUsagePolicy(SystemProperties.getString(CredentialUsages.class.getName() + ".deletedItemPolicy", DeletedUsagePolicy.ARCHIVE.name()));
+
+    /**
+     * What happens to the usage of deleted nodes, e.g. of cloud agents.
+     */
+    static final DeletedUsagePolicy DELETED_NODE_POLICY = parseDeletedUsagePolicy(SystemProperties.getString(CredentialUsages.class.getName() + ".deletedNodePolicy", DeletedUsagePolicy.ARCHIVE.name()));
+
+    /**
+     * Number of items whose usage is kept per credential, the least recently used ones are folded into
+     * {@code (other items)}. 0 keeps all of them.
+     */
+    static final int MAX_ITEMS_PER_CREDENTIAL = SystemProperties.getInteger(CredentialUsages.class.getName() + ".maxItemsPerCredential", 0);
+
+    /**
+     * Number of nodes whose usage is kept per credential, the least recently used ones are folded into
+     * {@code (other nodes)}. 0 keeps all of them.
+     */
+    static final int MAX_NODES_PER_CREDENTIAL = SystemProperties.getInteger(CredentialUsages.class.getName() + ".maxNodesPerCredential", 0);
+
+    /**
+     * Days since the last use after which the usage of an item or node is folded into the other usage, 0 never.
+     */
+    static final long USAGE_TIME_TO_LIVE = SystemProperties.getLong(CredentialUsages.class.getName() + ".usageTimeToLive", 0L);
+
+    /**
+     * Megabytes the usage counters of all credentials may take, the least recently used ones are folded into the
+     * other usage beyond it. 0 is unlimited.
+     */
+    static final long MAX_USAGE_MEMORY = SystemProperties.getLong(CredentialUsages.class.getName() + ".maxUsageMemory", 0L);
+
+    /**
+     * Interval in minutes at which the retention limits are enforced.
+     */
+    static final long EVICTION_INTERVAL = SystemProperties.getLong(CredentialUsages.class.getName() + ".evictionInterval", 60L);
+
     private HashMap<String, CredentialUsage> credentialUsageMap;
 
     @DataBoundConstructor
@@ -38,65 +116,447 @@ public class CredentialUsages extends AbstractDescribableImpl<CredentialUsages>
         return (CredentialUsages.CredentialUsageDescriptor) descriptor;
     }
 
+    /**
+     * Returns a copy of the current usage counters, including the ones not written to disk yet. Uses still queued for
+     * the accounting are not included.
+     */
     protected static CredentialUsages loadCredentialUsageReport() {
-        getCredentialUsageReport().load();
         return getCredentialUsageReport().getCredentialUsageReport();
     }
 
-    private static CredentialUsages saveCredentialUsageReport(CredentialUsages credentialUsages) {
-        getCredentialUsageReport().credentialUsageMap = credentialUsages.getCredentialUsageMap();
-        getCredentialUsageReport().save();
-        return getCredentialUsageReport().getCredentialUsageReport();
+    /**
+     * Counts a use of the credential by a build, item or node, the use is counted in the background.
+     */
+    public static void incrementCredentialUsage(Credentials credentials, Object callerObject) {
+        String credentialId = CredentialIdResolver.resolveId(credentials);
+        if (callerObject instanceof Run) {
+            CredentialUseDispatcher.get().dispatch(CredentialUseEvent.of(credentialId, (Run<?, ?>) callerObject));
+        } else if (callerObject instanceof Node) {
+            CredentialUseDispatcher.get().dispatch(CredentialUseEvent.of(credentialId, (Node) callerObject));
+        } else if (callerObject instanceof Item) {
+            CredentialUseDispatcher.get().dispatch(CredentialUseEvent.of(credentialId, (Item) callerObject));
+        }
     }
 
-    private static Optional<String> callGetId(Credentials credentials) {
+    private static DeletedUsagePolicy parseDeletedUsagePolicy(String value) {
         try {
-            Method getIdMethod = credentials.getClass().getMethod("getId");
-            Object getIdResult = getIdMethod.invoke(credentials);
-            return Optional.of(String.valueOf(getIdResult));
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-            return Optional.empty();
+            return DeletedUsagePolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning(String.format("Unknown deleted usage policy:%s, using %s", value, DeletedUsagePolicy.ARCHIVE));
+            return DeletedUsagePolicy.ARCHIVE;
         }
     }
 
-    public static synchronized void incrementCredentialUsage(Credentials credentials, Object callerObject) {
-        String credentialId = CredentialRuleSupporter.callGetId(credentials);
-        LOGGER.fine(String.format("Incrementing usage count for Credential:%s", credentialId));
-        CredentialUsages credentialUsages = loadCredentialUsageReport();
-        CredentialUsage credentialUsage = credentialUsages.credentialUsageMap.getOrDefault(credentialId, new CredentialUsage(credentialId));
-        if (callerObject instanceof Run) {
-            String itemName = ((Run) callerObject).getParent().getFullName();
-            LOGGER.fine(String.format("Incrementing usage count for Credential:%s and item:%s", credentialId,itemName));
-            credentialUsage = credentialUsage.incrementItemUsage(itemName);
-        } else if (callerObject instanceof Node) {
-            String nodeName = ((Node) callerObject).getNodeName();
-            LOGGER.fine(String.format("Incrementing usage count for Credential:%s and node:%s", credentialId,nodeName));
-            credentialUsage = credentialUsage.incrementNodeUsage(nodeName);
-        } else if (callerObject instanceof Item) {
-            String itemName = ((Item) callerObject).getFullName();
-            LOGGER.fine(String.format("Incrementing usage count for Credential:%s and item:%s", credentialId,itemName));
-            credentialUsage = credentialUsage.incrementItemUsage(itemName);
-        }
-        credentialUsages.credentialUsageMap.put(credentialId, credentialUsage);
-        saveCredentialUsageReport(credentialUsages);
+    /**
+     * Moves the usage of a renamed or moved item to its new full name.
+     */
+    public static void renameItemUsage(String oldFullName, String newFullName) {
+        getCredentialUsageReport().renameItem(oldFullName, newFullName);
+    }
+
+    /**
+     * Keeps, drops or archives the usage of a deleted item as set by {@code deletedItemPolicy}.
+     */
+    public static void deleteItemUsage(String fullName) {
+        getCredentialUsageReport().delete(UsageEvent.Type.RENAME_ITEM, UsageEvent.Type.REMOVE_ITEM, DELETED_ITEM_POLICY, DeletedUsagePolicy.DELETED_ITEMS, fullName);
     }
 
-    public static synchronized void clearUsageData(){
+    /**
+     * Keeps, drops or archives the usage of a deleted node as set by {@code deletedNodePolicy}.
+     */
+    public static void deleteNodeUsage(String nodeName) {
+        getCredentialUsageReport().delete(UsageEvent.Type.RENAME_NODE, UsageEvent.Type.REMOVE_NODE, DELETED_NODE_POLICY, DeletedUsagePolicy.DELETED_NODES, nodeName);
+    }
+
+    public static void clearUsageData(){
         LOGGER.info("Clearing Usage Data");
-        CredentialUsages credentialUsages = loadCredentialUsageReport();
-        credentialUsages.credentialUsageMap = new HashMap<>();
-        saveCredentialUsageReport(credentialUsages);
+        // Written by the next flush once the uses queued before are cleared as well
+        getCredentialUsageReport().clear();
     }
 
     @Extension
     public static final class CredentialUsageDescriptor extends Descriptor<CredentialUsages> {
 
+        /**
+         * Usage counters as persisted before the usage journal, only read to migrate them to the usage persistence.
+         */
         private HashMap<String, CredentialUsage> credentialUsageMap = new HashMap<>();
 
+        private transient final UsagePersistence usagePersistence;
+        private transient final CredentialUsageStore credentialUsageStore;
+        private transient final MergedUsage mergedUsage;
+        private transient final UsageRetention usageRetention = new UsageRetention(MAX_ITEMS_PER_CREDENTIAL, MAX_NODES_PER_CREDENTIAL,
+                TimeUnit.DAYS.toMillis(USAGE_TIME_TO_LIVE), MAX_USAGE_MEMORY * 1024 * 1024);
+        private transient final Object flushLock = new Object();
+        private transient final AtomicBoolean earlyFlushScheduled = new AtomicBoolean();
+        private transient volatile long flushedChangeCount;
+        private transient volatile long oldestPendingChangeTime;
+        private transient volatile long lastFlushTime;
+        private transient volatile long lastFlushDuration;
+        private transient final AtomicLong flushCount = new AtomicLong();
+        private transient final AtomicLong flushFailureCount = new AtomicLong();
+        private transient final AtomicLong evictedCount = new AtomicLong();
+        private transient volatile long lastEvictionTime;
+
+        public CredentialUsageDescriptor() {
+            this.usagePersistence = MAPPED_PERSISTENCE ? new MappedUsageFile(new File(Jenkins.get().getRootDir(), "enhanced-credentials/counters")) : newUsageJournal();
+            if (this.usagePersistence.isEmpty()) {
+                this.migrateLegacyUsage();
+            }
+            this.load();
+            this.credentialUsageStore = this.recover();
+            this.flushedChangeCount = this.credentialUsageStore.getChangeCount();
+            this.mergedUsage = new MergedUsage(new File(Jenkins.get().getRootDir(), "enhanced-credentials/controllers"));
+            this.mergedUsage.load();
+        }
+
+        private static UsageJournal newUsageJournal() {
+            return new UsageJournal(new File(Jenkins.get().getRootDir(), "enhanced-credentials/usage"));
+        }
+
+        /**
+         * Streams the usage out of the legacy XML into the usage persistence and drops it from the XML, before the XML
+         * is loaded with it. If streaming fails, the usage is migrated from the loaded XML instead.
+         */
+        private void migrateLegacyUsage() {
+            File configFile = this.getConfigFile().getFile();
+            if (!configFile.exists()) {
+                return;
+            }
+            try {
+                CredentialUsageStore legacyUsage = new CredentialUsageStore(new HashMap<>());
+                int credentials = LegacyUsageReader.read(configFile, legacyUsage);
+                if (credentials > 0) {
+                    LOGGER.info(String.format("Migrating usage data of %d credentials from %s to %s", credentials, configFile, this.usagePersistence.getDirectory()));
+                    this.usagePersistence.writeInitialSnapshot(legacyUsage);
+                    this.save();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Failed to stream usage data from %s, migrating it after loading", configFile), e);
+            }
+        }
+
+        private CredentialUsageStore recover() {
+            try {
+                if (this.usagePersistence.isEmpty() && this.credentialUsageMap != null && !this.credentialUsageMap.isEmpty()) {
+                    LOGGER.info(String.format("Migrating usage data of %d credentials to %s", this.credentialUsageMap.size(), this.usagePersistence.getDirectory()));
+                    this.usagePersistence.writeInitialSnapshot(new CredentialUsageStore(this.credentialUsageMap));
+                    this.credentialUsageMap = new HashMap<>();
+                    this.save();
+                } else if (this.usagePersistence.isEmpty() && MAPPED_PERSISTENCE) {
+                    // Switched from the journal, carry its usage over and leave it in place to switch back
+                    UsageJournal usageJournal = newUsageJournal();
+                    if (!usageJournal.isEmpty()) {
+                        LOGGER.info(String.format("Migrating usage data from %s to %s", usageJournal.getDirectory(), this.usagePersistence.getDirectory()));
+                        this.usagePersistence.writeInitialSnapshot(usageJournal.recover());
+                        usageJournal.close();
+                    }
+                }
+                return this.usagePersistence.recover();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, String.format("Failed to read usage data from %s, counting from zero", this.usagePersistence.getDirectory()), e);
+                return new CredentialUsageStore(new HashMap<>());
+            }
+        }
+
         public CredentialUsages getCredentialUsageReport() {
-            return new CredentialUsages(this.credentialUsageMap);
+            return new CredentialUsages(this.credentialUsageStore.snapshot());
+        }
+
+        /**
+         * Usage merged from other controllers.
+         */
+        public MergedUsage getMergedUsage() {
+            return mergedUsage;
+        }
+
+        public String getControllerId() {
+            return CONTROLLER_ID != null ? CONTROLLER_ID : Jenkins.get().getLegacyInstanceId();
+        }
+
+        public UsagePersistence getUsagePersistence() {
+            return usagePersistence;
+        }
+
+        /**
+         * The usage journal, {@code null} if usage is kept in a memory-mapped file.
+         */
+        public UsageJournal getUsageJournal() {
+            return usagePersistence instanceof UsageJournal ? (UsageJournal) usagePersistence : null;
+        }
+
+        /**
+         * The memory-mapped usage file, {@code null} if usage is kept in the journal.
+         */
+        public MappedUsageFile getMappedUsageFile() {
+            return usagePersistence instanceof MappedUsageFile ? (MappedUsageFile) usagePersistence : null;
+        }
+
+        public CredentialUsageStore getCredentialUsageStore() {
+            return credentialUsageStore;
+        }
+
+        void increment(CredentialUseEvent event) {
+            String credentialId = event.getCredentialId();
+            if (event.getItemName() != null) {
+                LOGGER.fine(String.format("Incrementing usage count for Credential:%s and item:%s", credentialId, event.getItemName()));
+                this.record(new UsageEvent(UsageEvent.Type.ITEM, event.getTimestamp(), credentialId, event.getItemName(), event.getBuildNumber()));
+            } else if (event.getNodeName() != null) {
+                LOGGER.fine(String.format("Incrementing usage count for Credential:%s and node:%s", credentialId, event.getNodeName()));
+                this.record(new UsageEvent(UsageEvent.Type.NODE, event.getTimestamp(), credentialId, event.getNodeName(), UsageEvent.NO_BUILD_NUMBER));
+            }
+        }
+
+        /**
+         * Applies a change queued by {@link #changeUsage}, on the consumer thread after the uses queued before it.
+         */
+        void applyUsageChange(UsageEvent usageChange) {
+            this.record(usageChange);
+            // Usage is gone from the exported counters
+            this.mergedUsage.startLocalEpoch();
+        }
+
+        /**
+         * Queues a change shrinking the usage counters behind the uses already queued, so those are counted before it
+         * under the names they were used with.
+         */
+        private void changeUsage(UsageEvent usageChange) {
+            CredentialUseDispatcher.get().dispatchUsageChange(usageChange);
+        }
+
+        void clear() {
+            this.changeUsage(UsageEvent.clear());
+        }
+
+        void renameItem(String oldFullName, String newFullName) {
+            LOGGER.fine(String.format("Moving usage of item:%s to %s", oldFullName, newFullName));
+            this.changeUsage(UsageEvent.renameItem(oldFullName, newFullName));
+        }
+
+        void delete(UsageEvent.Type renameType, UsageEvent.Type removeType, DeletedUsagePolicy policy, String archiveName, String name) {
+            if (policy == DeletedUsagePolicy.KEEP) {
+                return;
+            }
+            LOGGER.fine(String.format("Applying %s to the usage of deleted %s", policy, name));
+            if (policy == DeletedUsagePolicy.ARCHIVE) {
+                this.changeUsage(UsageEvent.rename(renameType, System.currentTimeMillis(), name, archiveName));
+            } else {
+                this.changeUsage(new UsageEvent(removeType, System.currentTimeMillis(), null, name, UsageEvent.NO_BUILD_NUMBER));
+            }
+        }
+
+        /**
+         * Folds the least recently used usage beyond the retention limits into the other usage of its credential, the
+         * evictions are applied by the consumer thread. A use racing with the eviction of its counter may be folded as
+         * well, the total usage is never changed.
+         */
+        public void evict() {
+            if (!usageRetention.isEnabled()) {
+                return;
+            }
+            long evictionStartTime = System.currentTimeMillis();
+            List<UsageEvent> evictions = usageRetention.selectEvictions(this.credentialUsageStore, evictionStartTime);
+            evictions.forEach(this::changeUsage);
+            evictedCount.addAndGet(evictions.size());
+            lastEvictionTime = System.currentTimeMillis();
+            if (!evictions.isEmpty()) {
+                LOGGER.info(String.format("Queued %d least recently used usage counters to fold into other usage in %d ms", evictions.size(), lastEvictionTime - evictionStartTime));
+            }
+        }
+
+        public UsageRetention getUsageRetention() {
+            return usageRetention;
+        }
+
+        /**
+         * Estimated memory in bytes taken by the usage counters by item and node.
+         */
+        public long getUsageMemory() {
+            return credentialUsageStore.getCounterCount() * UsageRetention.COUNTER_MEMORY_SIZE;
+        }
+
+        public long getEvictedCount() {
+            return evictedCount.get();
+        }
+
+        public long getLastEvictionTime() {
+            return lastEvictionTime;
+        }
+
+        public DeletedUsagePolicy getDeletedItemPolicy() {
+            return DELETED_ITEM_POLICY;
+        }
+
+        public DeletedUsagePolicy getDeletedNodePolicy() {
+            return DELETED_NODE_POLICY;
+        }
+
+        /**
+         * Records a use or change, only called by the {@link CredentialUseDispatcher} delivering the queued events one
+         * at a time, so events are recorded and applied in the same order without a lock of their own.
+         */
+        private void record(UsageEvent event) {
+            // Persistence first, a change counted as pending is always written by the next flush
+            this.usagePersistence.record(event);
+            this.credentialUsageStore.apply(event);
+            this.markChanged();
+        }
+
+        private void markChanged() {
+            if (oldestPendingChangeTime == 0) {
+                oldestPendingChangeTime = System.currentTimeMillis();
+            }
+            if (this.getPendingChangeCount() >= MAX_PENDING_CHANGES
+                    && earlyFlushScheduled.compareAndSet(false, true)) {
+                // Never write on the accounting thread
+                Timer.get().submit(() -> {
+                    earlyFlushScheduled.set(false);
+                    flush();
+                });
+            }
+        }
+
+        /**
+         * Writes the usage counters to disk if any of them changed since the last write.
+         */
+        public void flush() {
+            synchronized (flushLock) {
+                try {
+                    // Before the changes which started it, a crash in between only leaves a new epoch of the old counters
+                    mergedUsage.persistLocalEpoch();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to write the usage epoch", e);
+                }
+                long changeCount = credentialUsageStore.getChangeCount();
+                long pendingChanges = changeCount - flushedChangeCount;
+                if (pendingChanges == 0) {
+                    return;
+                }
+                long flushStartTime = System.currentTimeMillis();
+                long flushedOldestPendingChangeTime = oldestPendingChangeTime;
+                oldestPendingChangeTime = 0;
+                try {
+                    int writtenEvents = usagePersistence.flush();
+                    flushedChangeCount = changeCount;
+                    lastFlushTime = System.currentTimeMillis();
+                    flushCount.incrementAndGet();
+                    LOGGER.fine(String.format("Wrote %d usage events in %d ms", writtenEvents, lastFlushTime - flushStartTime));
+                } catch (IOException | RuntimeException e) {
+                    flushFailureCount.incrementAndGet();
+                    if (oldestPendingChangeTime == 0) {
+                        oldestPendingChangeTime = flushedOldestPendingChangeTime;
+                    }
+                    LOGGER.log(Level.WARNING, "Failed to write credential usage data", e);
+                } finally {
+                    lastFlushDuration = System.currentTimeMillis() - flushStartTime;
+                }
+            }
+        }
+
+        /**
+         * Number of usage changes not written to disk yet, at most these are lost if the controller crashes.
+         */
+        public long getPendingChangeCount() {
+            return credentialUsageStore.getChangeCount() - flushedChangeCount;
+        }
+
+        /**
+         * Age in milliseconds of the oldest usage change not written to disk yet, 0 if all changes are written.
+         */
+        public long getFlushLag() {
+            long oldestPendingChangeTime = this.oldestPendingChangeTime;
+            return oldestPendingChangeTime == 0 || this.getPendingChangeCount() == 0 ? 0 : System.currentTimeMillis() - oldestPendingChangeTime;
+        }
+
+        public long getLastFlushTime() {
+            return lastFlushTime;
+        }
+
+        public long getLastFlushDuration() {
+            return lastFlushDuration;
+        }
+
+        public long getFlushCount() {
+            return flushCount.get();
         }
 
+        public long getFlushFailureCount() {
+            return flushFailureCount.get();
+        }
+
+        public long getFlushInterval() {
+            return FLUSH_INTERVAL;
+        }
+
+        public long getMaxPendingChanges() {
+            return MAX_PENDING_CHANGES;
+        }
+    }
+
+    /**
+     * Counts the uses and applies the changes handed over by the {@link CredentialUseDispatcher}.
+     */
+    @Extension
+    public static final class CredentialUsageAccounting implements CredentialUseConsumer {
+
+        @Override
+        public void onUse(CredentialUseEvent event) {
+            getCredentialUsageReport().increment(event);
+        }
+
+        @Override
+        public void onUsageChange(UsageEvent usageChange) {
+            getCredentialUsageReport().applyUsageChange(usageChange);
+        }
+    }
+
+    /**
+     * Writes changed usage counters to disk in the background.
+     */
+    @Extension
+    public static final class CredentialUsagesFlusher extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.SECONDS.toMillis(FLUSH_INTERVAL);
+        }
+
+        @Override
+        protected void doRun() {
+            getCredentialUsageReport().flush();
+        }
+    }
+
+    /**
+     * Enforces the usage retention limits in the background.
+     */
+    @Extension
+    public static final class CredentialUsageEvictor extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(EVICTION_INTERVAL);
+        }
+
+        @Override
+        protected void doRun() {
+            getCredentialUsageReport().evict();
+        }
+    }
+
+    /**
+     * Writes the usage counters not written yet when Jenkins stops.
+     */
+    @Terminator
+    public static void flushOnShutdown() throws InterruptedException {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            CredentialUsageDescriptor descriptor = (CredentialUsageDescriptor) jenkins.getDescriptorOrDie(CredentialUsages.class);
+            // Count the uses still queued so they are written as well
+            CredentialUseDispatcher.get().stop();
+            descriptor.flush();
+            descriptor.getUsagePersistence().close();
+        }
     }
 
 }
@@ -0,0 +1,15 @@
+package io.jenkins.plugins.enhanced.credentials;
+
+/**
+ * How the matching {@link CredentialRule}s are turned into an access decision.
+ */
+public enum EvaluationMode {
+    /**
+     * Access is allowed if any allow rule matches, a matching deny rule always wins.
+     */
+    ANY_MATCH,
+    /**
+     * Rules are evaluated by descending priority, the first rule matching both the credential and the item decides.
+     */
+    FIRST_MATCH
+}
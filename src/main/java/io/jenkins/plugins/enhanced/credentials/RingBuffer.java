@@ -0,0 +1,87 @@
+package io.jenkins.plugins.enhanced.credentials;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue with many producers and a single consumer, carrying access decisions to the audit log and
+ * credential uses to the usage accounting.
+ * <p>
+ * Every slot carries a sequence number telling whether it is free for the producer claiming that position or filled
+ * for the consumer, so producers only contend on a single compare-and-set and never block. {@link #offer} fails
+ * instead of waiting when the buffer is full.
+ */
+public final class RingBuffer<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> events;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Next position to consume, only written by the consumer.
+     */
+    private volatile long head;
+
+    /**
+     * Creates a buffer holding at least {@code capacity} events, the capacity is rounded up to a power of two.
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.events = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds the event, returns false if the buffer is full. Safe to call from any thread.
+     */
+    public boolean offer(T event) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events.lazySet(index, event);
+                    // Publishes the event to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The slot still holds an event from the previous lap
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest event, returns {@code null} if there is none. Must only be called by one consumer at a time.
+     */
+    public T poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        T event = events.get(index);
+        events.lazySet(index, null);
+        // Frees the slot for the producer of the next lap
+        sequences.set(index, head + mask + 1);
+        head++;
+        return event;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of events waiting to be consumed, only an estimate while producers are active.
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head, mask + 1));
+    }
+}
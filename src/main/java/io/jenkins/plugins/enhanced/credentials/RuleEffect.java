@@ -0,0 +1,9 @@
+package io.jenkins.plugins.enhanced.credentials;
+
+/**
+ * What a {@link CredentialRule} does when both its credential and item patterns match.
+ */
+public enum RuleEffect {
+    ALLOW,
+    DENY
+}
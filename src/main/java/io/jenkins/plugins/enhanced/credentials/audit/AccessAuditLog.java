@@ -0,0 +1,356 @@
+package io.jenkins.plugins.enhanced.credentials.audit;
+
+import hudson.init.Terminator;
+import io.jenkins.plugins.enhanced.credentials.RingBuffer;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Structured audit log of access decisions.
+ * <p>
+ * Decisions are captured into an {@link RingBuffer} without any formatting and written as JSON lines by
+ * a background thread to {@code JENKINS_HOME/enhanced-credentials/audit/decisions.log}, which is rotated by size.
+ * Deny decisions are always recorded, allow decisions are sampled. A decision is dropped and counted when the buffer
+ * is full, the caller is never blocked.
+ */
+public final class AccessAuditLog {
+
+    private static final Logger LOGGER = Logger.getLogger(AccessAuditLog.class.getName());
+
+    private static final String PROPERTY_PREFIX = AccessAuditLog.class.getName();
+
+    static final boolean ENABLED = SystemProperties.getBoolean(PROPERTY_PREFIX + ".enabled", true);
+
+    static final int BUFFER_CAPACITY = SystemProperties.getInteger(PROPERTY_PREFIX + ".bufferCapacity", 8192);
+
+    /**
+     * One in how many allow decisions is recorded, 1 records all of them and 0 none.
+     */
+    static final int ALLOW_SAMPLE_EVERY = SystemProperties.getInteger(PROPERTY_PREFIX + ".allowSampleEvery", 1);
+
+    static final long MAX_FILE_SIZE = SystemProperties.getLong(PROPERTY_PREFIX + ".maxFileSize", 10L * 1024 * 1024);
+
+    static final int MAX_FILES = SystemProperties.getInteger(PROPERTY_PREFIX + ".maxFiles", 5);
+
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static final AccessAuditLog INSTANCE = new AccessAuditLog(BUFFER_CAPACITY, ALLOW_SAMPLE_EVERY, null, MAX_FILE_SIZE, MAX_FILES);
+
+    private final RingBuffer<AccessDecisionEvent> buffer;
+    private final int allowSampleEvery;
+    private final long maxFileSize;
+    private final int maxFiles;
+    /**
+     * Held while writing buffered events, which only one thread may do at a time.
+     */
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private final LongAdder recordedCount = new LongAdder();
+    private final LongAdder sampledOutCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong writeFailureCount = new AtomicLong();
+
+    private volatile Thread writerThread;
+    private volatile boolean stopping;
+    /**
+     * Set while the writer thread parks on an empty buffer, so the next decision wakes it up.
+     */
+    private volatile boolean writerIdle;
+    private volatile File logFile;
+    private OutputStream output;
+    private long logFileSize;
+
+    /**
+     * Creates an audit log writing to the given file, or to the one in {@code JENKINS_HOME} if {@code null}. Without
+     * Jenkins there is no writer thread and buffered decisions are only written by {@link #drain()}.
+     */
+    public AccessAuditLog(int bufferCapacity, int allowSampleEvery, File logFile, long maxFileSize, int maxFiles) {
+        this.buffer = new RingBuffer<>(bufferCapacity);
+        this.allowSampleEvery = allowSampleEvery;
+        this.logFile = logFile;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    public static AccessAuditLog get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Captures the decision, returns immediately whether or not it is written.
+     */
+    public void record(String credentialId, String itemName, boolean allowed, boolean cached, long ruleGeneration) {
+        if (!ENABLED) {
+            return;
+        }
+        if (allowed && !isSampled()) {
+            sampledOutCount.increment();
+            return;
+        }
+        if (buffer.offer(new AccessDecisionEvent(System.currentTimeMillis(), credentialId, itemName, allowed, cached, ruleGeneration))) {
+            recordedCount.increment();
+            startWriterIfNeeded();
+            if (writerIdle) {
+                // The buffer was empty, don't leave the decision waiting for the idle wait to time out
+                writerIdle = false;
+                LockSupport.unpark(writerThread);
+            }
+        } else {
+            droppedCount.increment();
+        }
+    }
+
+    private boolean isSampled() {
+        return allowSampleEvery == 1 || (allowSampleEvery > 1 && ThreadLocalRandom.current().nextInt(allowSampleEvery) == 0);
+    }
+
+    private void startWriterIfNeeded() {
+        if (writerThread != null) {
+            return;
+        }
+        // Without Jenkins there is nowhere to write to, don't take the lock on every decision
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+        synchronized (this) {
+            if (writerThread != null || stopping) {
+                return;
+            }
+            if (logFile == null) {
+                logFile = new File(jenkins.getRootDir(), "enhanced-credentials/audit/decisions.log");
+            }
+            Thread thread = new Thread(this::writeLoop, "Credential access audit writer");
+            thread.setDaemon(true);
+            thread.start();
+            writerThread = thread;
+            LOGGER.fine(String.format("Started writing access decisions to %s", logFile));
+        }
+    }
+
+    private void writeLoop() {
+        while (!stopping) {
+            if (drain() == 0) {
+                writerIdle = true;
+                // A decision buffered before the flag was set is not followed by an unpark, look once more
+                if (buffer.size() == 0) {
+                    LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+                }
+                writerIdle = false;
+                if (Thread.interrupted()) {
+                    break;
+                }
+            }
+        }
+        drain();
+        writerLock.lock();
+        try {
+            closeOutput();
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all buffered events on the calling thread, returns the number of events consumed.
+     */
+    public int drain() {
+        writerLock.lock();
+        try {
+            int drained = 0;
+            StringBuilder line = new StringBuilder(256);
+            for (AccessDecisionEvent event = buffer.poll(); event != null; event = buffer.poll()) {
+                drained++;
+                line.setLength(0);
+                appendJson(line, event);
+                try {
+                    write(line.toString().getBytes(StandardCharsets.UTF_8));
+                    writtenCount.incrementAndGet();
+                } catch (IOException e) {
+                    writeFailureCount.incrementAndGet();
+                    LOGGER.log(Level.FINE, String.format("Failed to write access decision to %s", logFile), e);
+                    closeOutput();
+                }
+            }
+            if (drained > 0 && output != null) {
+                try {
+                    output.flush();
+                } catch (IOException e) {
+                    writeFailureCount.incrementAndGet();
+                    LOGGER.log(Level.FINE, String.format("Failed to flush %s", logFile), e);
+                    closeOutput();
+                }
+            }
+            return drained;
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private void write(byte[] line) throws IOException {
+        if (output == null) {
+            openOutput();
+        }
+        if (logFileSize > 0 && logFileSize + line.length > maxFileSize) {
+            closeOutput();
+            rotate();
+            openOutput();
+        }
+        output.write(line);
+        logFileSize += line.length;
+    }
+
+    private void openOutput() throws IOException {
+        Files.createDirectories(logFile.getParentFile().toPath());
+        logFileSize = logFile.length();
+        output = new BufferedOutputStream(new FileOutputStream(logFile, true));
+    }
+
+    private void closeOutput() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, String.format("Failed to close %s", logFile), e);
+        }
+        output = null;
+    }
+
+    /**
+     * Shifts decisions.log to decisions.log.1, decisions.log.1 to decisions.log.2 and so on, the oldest file is dropped.
+     */
+    private void rotate() throws IOException {
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File source = i == 1 ? logFile : new File(logFile.getPath() + "." + (i - 1));
+            if (source.exists()) {
+                Files.move(source.toPath(), new File(logFile.getPath() + "." + i).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles <= 1) {
+            Files.deleteIfExists(logFile.toPath());
+        }
+    }
+
+    static void appendJson(StringBuilder line, AccessDecisionEvent event) {
+        line.append("{\"timestamp\":\"").append(Instant.ofEpochMilli(event.getTimestamp()))
+                .append("\",\"decision\":\"").append(event.isAllowed() ? "ALLOW" : "DENY")
+                .append("\",\"credentialId\":");
+        appendJsonString(line, event.getCredentialId());
+        line.append(",\"item\":");
+        appendJsonString(line, event.getItemName());
+        line.append(",\"cached\":").append(event.isCached())
+                .append(",\"ruleGeneration\":").append(event.getRuleGeneration())
+                .append("}\n");
+    }
+
+    private static void appendJsonString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Writes the remaining events and stops the writer.
+     */
+    @Terminator
+    public static void shutdown() throws InterruptedException {
+        INSTANCE.stop();
+    }
+
+    void stop() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            stopping = true;
+            thread = writerThread;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public int getAllowSampleEvery() {
+        return allowSampleEvery;
+    }
+
+    public int getBufferCapacity() {
+        return buffer.getCapacity();
+    }
+
+    public int getBufferedCount() {
+        return buffer.size();
+    }
+
+    public long getRecordedCount() {
+        return recordedCount.sum();
+    }
+
+    public long getSampledOutCount() {
+        return sampledOutCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getWriteFailureCount() {
+        return writeFailureCount.get();
+    }
+}
@@ -0,0 +1,47 @@
+package io.jenkins.plugins.enhanced.credentials.audit;
+
+/**
+ * A single access decision, captured as is and only formatted by the audit writer.
+ */
+public final class AccessDecisionEvent {
+
+    private final long timestamp;
+    private final String credentialId;
+    private final String itemName;
+    private final boolean allowed;
+    private final boolean cached;
+    private final long ruleGeneration;
+
+    public AccessDecisionEvent(long timestamp, String credentialId, String itemName, boolean allowed, boolean cached, long ruleGeneration) {
+        this.timestamp = timestamp;
+        this.credentialId = credentialId;
+        this.itemName = itemName;
+        this.allowed = allowed;
+        this.cached = cached;
+        this.ruleGeneration = ruleGeneration;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getCredentialId() {
+        return credentialId;
+    }
+
+    public String getItemName() {
+        return itemName;
+    }
+
+    public boolean isAllowed() {
+        return allowed;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    public long getRuleGeneration() {
+        return ruleGeneration;
+    }
+}
@@ -0,0 +1,216 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link Pattern} together with its {@link PatternKind}, literal shaped patterns are matched without the regex engine.
+ */
+public final class ClassifiedPattern {
+
+    private final Pattern pattern;
+    private final PatternKind kind;
+    /**
+     * Literal parts of the pattern, separated by {@code .*}. Holds the literal for {@link PatternKind#EXACT},
+     * the prefix for {@link PatternKind#PREFIX} and all parts for {@link PatternKind#GLOB}.
+     */
+    private final List<String> literals;
+    private final boolean leadingWildcard;
+    private final boolean trailingWildcard;
+    /**
+     * Literal every input matching the pattern starts with.
+     */
+    private final String literalPrefix;
+    /**
+     * Matcher of a {@link PatternKind#REGEX} pattern, built on first use. It matches in linear time unless the automaton
+     * can't express the pattern.
+     */
+    private volatile MultiPatternMatcher regexMatcher;
+
+    private ClassifiedPattern(Pattern pattern, PatternKind kind, List<String> literals, boolean leadingWildcard, boolean trailingWildcard, String literalPrefix) {
+        this.pattern = pattern;
+        this.kind = kind;
+        this.literals = Collections.unmodifiableList(literals);
+        this.leadingWildcard = leadingWildcard;
+        this.trailingWildcard = trailingWildcard;
+        this.literalPrefix = literalPrefix;
+    }
+
+    public static ClassifiedPattern classify(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return regex(pattern, "");
+        }
+        List<PatternNode> nodes = new ArrayList<>();
+        try {
+            flatten(PatternParser.parse(pattern.pattern()), nodes);
+        } catch (UnsupportedPatternException e) {
+            return regex(pattern, "");
+        }
+        StringBuilder literalPrefix = new StringBuilder();
+        for (PatternNode node : nodes) {
+            if (!(node instanceof PatternNode.Chars) || ((PatternNode.Chars) node).codePointSet.singleCodePoint() < 0) {
+                break;
+            }
+            literalPrefix.appendCodePoint(((PatternNode.Chars) node).codePointSet.singleCodePoint());
+        }
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean leadingWildcard = false;
+        boolean trailingWildcard = false;
+        int wildcards = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            PatternNode node = nodes.get(i);
+            if (isWildcard(node)) {
+                if (i == 0) {
+                    leadingWildcard = true;
+                } else if (literal.length() > 0) {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                }
+                trailingWildcard = true;
+                wildcards++;
+            } else if (node instanceof PatternNode.Chars && ((PatternNode.Chars) node).codePointSet.singleCodePoint() >= 0) {
+                literal.appendCodePoint(((PatternNode.Chars) node).codePointSet.singleCodePoint());
+                trailingWildcard = false;
+            } else {
+                return regex(pattern, literalPrefix.toString());
+            }
+        }
+        if (literal.length() > 0 || literals.isEmpty()) {
+            literals.add(literal.toString());
+        }
+        if (wildcards == 0) {
+            return new ClassifiedPattern(pattern, PatternKind.EXACT, literals, false, false, literalPrefix.toString());
+        }
+        if (wildcards == 1 && trailingWildcard && !leadingWildcard) {
+            return new ClassifiedPattern(pattern, PatternKind.PREFIX, literals, false, true, literalPrefix.toString());
+        }
+        if (wildcards == 1 && leadingWildcard && trailingWildcard) {
+            // Only ".*" itself, a prefix of the empty string
+            return new ClassifiedPattern(pattern, PatternKind.PREFIX, literals, false, true, literalPrefix.toString());
+        }
+        return new ClassifiedPattern(pattern, PatternKind.GLOB, literals, leadingWildcard, trailingWildcard, literalPrefix.toString());
+    }
+
+    private static ClassifiedPattern regex(Pattern pattern, String literalPrefix) {
+        return new ClassifiedPattern(pattern, PatternKind.REGEX, Collections.emptyList(), false, false, literalPrefix);
+    }
+
+    private static void flatten(PatternNode node, List<PatternNode> nodes) {
+        if (node instanceof PatternNode.Concat) {
+            for (PatternNode child : ((PatternNode.Concat) node).nodes) {
+                flatten(child, nodes);
+            }
+        } else if (node != PatternNode.EMPTY) {
+            nodes.add(node);
+        }
+    }
+
+    private static boolean isWildcard(PatternNode node) {
+        if (!(node instanceof PatternNode.Repeat)) {
+            return false;
+        }
+        PatternNode.Repeat repeat = (PatternNode.Repeat) node;
+        return repeat.min == 0 && repeat.max == PatternNode.Repeat.UNBOUNDED
+                && repeat.node instanceof PatternNode.Chars && CodePointSet.DOT.equals(((PatternNode.Chars) repeat.node).codePointSet);
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public PatternKind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the literal of an {@link PatternKind#EXACT} pattern or the prefix of a {@link PatternKind#PREFIX} pattern.
+     */
+    public String getLiteral() {
+        return literals.isEmpty() ? null : literals.get(0);
+    }
+
+    /**
+     * Returns the literal every input matching this pattern starts with, it is empty if there is no such literal.
+     */
+    public String getLiteralPrefix() {
+        return literalPrefix;
+    }
+
+    /**
+     * Returns true if the pattern matches the whole input.
+     *
+     * @throws RegexBudgetExceededException if a pattern the automaton can't express exceeds the {@link RegexBudget}
+     */
+    public boolean matches(String input) {
+        switch (kind) {
+            case EXACT:
+                return input.equals(literals.get(0));
+            case PREFIX:
+                return input.startsWith(literals.get(0)) && lastLineTerminator(input) < literals.get(0).length();
+            case GLOB:
+                if (lastLineTerminator(input) >= 0) {
+                    // Line terminators may only appear inside the literals, leave this rare case to the regex engine
+                    return RegexBudget.matches(pattern, input);
+                }
+                return matchesGlob(input);
+            default:
+                return matchesRegex(input);
+        }
+    }
+
+    private boolean matchesRegex(String input) {
+        MultiPatternMatcher matcher = regexMatcher;
+        if (matcher == null) {
+            matcher = MultiPatternMatcher.compile(Collections.singletonList(pattern));
+            regexMatcher = matcher;
+        }
+        return matcher.match(input).get(0);
+    }
+
+    private boolean matchesGlob(String input) {
+        int start = 0;
+        int end = input.length();
+        int first = 0;
+        int last = literals.size() - 1;
+        if (!leadingWildcard) {
+            if (!input.startsWith(literals.get(0))) {
+                return false;
+            }
+            start = literals.get(0).length();
+            first++;
+        }
+        if (!trailingWildcard && first <= last) {
+            if (!input.endsWith(literals.get(last)) || end - literals.get(last).length() < start) {
+                return false;
+            }
+            end -= literals.get(last).length();
+            last--;
+        } else if (!trailingWildcard && start != end) {
+            return false;
+        }
+        for (int i = first; i <= last; i++) {
+            int found = input.indexOf(literals.get(i), start);
+            if (found < 0 || found + literals.get(i).length() > end) {
+                return false;
+            }
+            start = found + literals.get(i).length();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the last character which {@code .} doesn't match, or -1 if there is none.
+     */
+    static int lastLineTerminator(CharSequence input) {
+        for (int i = input.length() - 1; i >= 0; i--) {
+            char c = input.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == 0x2028 || c == 0x2029) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,114 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of code points, stored as sorted and disjoint inclusive ranges.
+ */
+final class CodePointSet {
+
+    static final CodePointSet DIGIT = range('0', '9');
+    static final CodePointSet WORD = union(union(range('a', 'z'), range('A', 'Z')), union(DIGIT, of('_')));
+    static final CodePointSet SPACE = union(of(' '), range('\t', '\r'));
+    /**
+     * Equivalent of {@code .} of {@link java.util.regex.Pattern} without {@code DOTALL}, any code point except line terminators.
+     */
+    static final CodePointSet DOT = union(union(of('\n'), of('\r')), union(of(0x85), range(0x2028, 0x2029))).complement();
+
+    private final int[] ranges;
+
+    private CodePointSet(int[] ranges) {
+        this.ranges = ranges;
+    }
+
+    static CodePointSet of(int codePoint) {
+        return new CodePointSet(new int[]{codePoint, codePoint});
+    }
+
+    static CodePointSet range(int from, int to) {
+        return new CodePointSet(new int[]{from, to});
+    }
+
+    static CodePointSet union(CodePointSet first, CodePointSet second) {
+        int[] all = new int[first.ranges.length + second.ranges.length];
+        System.arraycopy(first.ranges, 0, all, 0, first.ranges.length);
+        System.arraycopy(second.ranges, 0, all, first.ranges.length, second.ranges.length);
+        return normalize(all);
+    }
+
+    private static CodePointSet normalize(int[] pairs) {
+        int count = pairs.length / 2;
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = ((long) pairs[2 * i] << 32) | (pairs[2 * i + 1] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(sorted);
+        int[] merged = new int[pairs.length];
+        int size = 0;
+        for (long range : sorted) {
+            int from = (int) (range >> 32);
+            int to = (int) range;
+            if (size > 0 && from <= merged[size - 1] + 1) {
+                merged[size - 1] = Math.max(merged[size - 1], to);
+            } else {
+                merged[size++] = from;
+                merged[size++] = to;
+            }
+        }
+        return new CodePointSet(Arrays.copyOf(merged, size));
+    }
+
+    CodePointSet complement() {
+        int[] complement = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                complement[size++] = next;
+                complement[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_CODE_POINT) {
+            complement[size++] = next;
+            complement[size++] = Character.MAX_CODE_POINT;
+        }
+        return new CodePointSet(Arrays.copyOf(complement, size));
+    }
+
+    boolean contains(int codePoint) {
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (codePoint < ranges[2 * middle]) {
+                high = middle - 1;
+            } else if (codePoint > ranges[2 * middle + 1]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the only code point of this set or -1 if the set has zero or more than one code points.
+     */
+    int singleCodePoint() {
+        if (ranges.length == 2 && ranges[0] == ranges[1]) {
+            return ranges[0];
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CodePointSet && Arrays.equals(ranges, ((CodePointSet) other).ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+}
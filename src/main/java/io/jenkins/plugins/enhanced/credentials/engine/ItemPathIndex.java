@@ -0,0 +1,93 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tree of item full name path segments, finds the item patterns which may match an item without evaluating them.
+ * <p>
+ * A pattern is attached to the folder its literal prefix ends in, e.g. {@code team-a/backend/.*} to {@code team-a/backend}
+ * and {@code deploy-.*} to the root. Only items in that folder or below can match the pattern, so a lookup collects the
+ * patterns attached to the item's ancestor folders.
+ */
+public final class ItemPathIndex {
+
+    private static final int[] NO_INDEXES = new int[0];
+
+    private final SegmentNode root;
+    private final int anchoredPatternCount;
+
+    private ItemPathIndex(SegmentNode root, int anchoredPatternCount) {
+        this.root = root;
+        this.anchoredPatternCount = anchoredPatternCount;
+    }
+
+    /**
+     * Indexes the patterns, the index of a pattern in the list is its index in the lookup results.
+     * A {@code null} pattern is never a candidate.
+     */
+    public static ItemPathIndex compile(List<ClassifiedPattern> patterns) {
+        SegmentNode root = new SegmentNode();
+        int anchoredPatternCount = 0;
+        for (int i = 0; i < patterns.size(); i++) {
+            ClassifiedPattern pattern = patterns.get(i);
+            if (pattern == null) {
+                continue;
+            }
+            String literalPrefix = pattern.getLiteralPrefix();
+            SegmentNode node = root;
+            int start = 0;
+            for (int end = literalPrefix.indexOf('/'); end >= 0; end = literalPrefix.indexOf('/', start)) {
+                node = node.children.computeIfAbsent(literalPrefix.substring(start, end), k -> new SegmentNode());
+                start = end + 1;
+            }
+            if (node != root) {
+                anchoredPatternCount++;
+            }
+            node.patternIndexes = append(node.patternIndexes, i);
+        }
+        return new ItemPathIndex(root, anchoredPatternCount);
+    }
+
+    private static int[] append(int[] indexes, int index) {
+        int[] appended = Arrays.copyOf(indexes, indexes.length + 1);
+        appended[indexes.length] = index;
+        return appended;
+    }
+
+    /**
+     * Returns the indexes of the patterns attached to the ancestor folders of the item, only these can match it.
+     */
+    public BitSet candidates(String itemFullName) {
+        BitSet candidates = new BitSet();
+        SegmentNode node = root;
+        int start = 0;
+        while (node != null) {
+            for (int index : node.patternIndexes) {
+                candidates.set(index);
+            }
+            int end = itemFullName.indexOf('/', start);
+            if (end < 0) {
+                break;
+            }
+            node = node.children.get(itemFullName.substring(start, end));
+            start = end + 1;
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the number of patterns attached below the root, i.e. patterns limited to a folder.
+     */
+    public int getAnchoredPatternCount() {
+        return anchoredPatternCount;
+    }
+
+    private static final class SegmentNode {
+        final Map<String, SegmentNode> children = new HashMap<>();
+        int[] patternIndexes = NO_INDEXES;
+    }
+}
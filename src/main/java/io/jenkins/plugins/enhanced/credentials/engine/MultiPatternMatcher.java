@@ -0,0 +1,242 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Matches an input against many patterns at once and returns the indexes of all patterns fully matching the input.
+ * <p>
+ * Patterns are merged into a single automaton which is converted to a deterministic one lazily while inputs are matched,
+ * so a match costs one transition per character regardless of the number of patterns once the automaton is warmed up.
+ * The number of deterministic states is bounded, the cache is dropped and rebuilt if the bound is reached.
+ * Patterns the automaton can't express, see {@link PatternParser}, are matched one by one with {@link Pattern} within
+ * the {@link RegexBudget}.
+ */
+public final class MultiPatternMatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(MultiPatternMatcher.class.getName());
+
+    static final int MAX_STATES_PER_PATTERN = 10_000;
+
+    static final int MAX_DFA_STATES = 4_096;
+
+    private static final int ASCII = 128;
+
+    private final int patternCount;
+    private final Nfa nfa;
+    private final int[] startStates;
+    private final int automatonPatternCount;
+    private final int[] fallbackIndexes;
+    private final Pattern[] fallbackPatterns;
+
+    private volatile DfaCache dfaCache;
+
+    private MultiPatternMatcher(int patternCount, Nfa nfa, int[] startStates, int automatonPatternCount, int[] fallbackIndexes, Pattern[] fallbackPatterns) {
+        this.patternCount = patternCount;
+        this.nfa = nfa;
+        this.startStates = startStates;
+        this.automatonPatternCount = automatonPatternCount;
+        this.fallbackIndexes = fallbackIndexes;
+        this.fallbackPatterns = fallbackPatterns;
+        this.dfaCache = this.newDfaCache();
+    }
+
+    /**
+     * Compiles the patterns, the index of a pattern in the list is its index in the match results.
+     * A {@code null} pattern never matches.
+     */
+    public static MultiPatternMatcher compile(List<Pattern> patterns) {
+        Nfa nfa = new Nfa();
+        int[] startStates = new int[patterns.size()];
+        int startCount = 0;
+        List<Integer> fallbackIndexes = new ArrayList<>();
+        List<Pattern> fallbackPatterns = new ArrayList<>();
+        for (int i = 0; i < patterns.size(); i++) {
+            Pattern pattern = patterns.get(i);
+            if (pattern == null) {
+                continue;
+            }
+            try {
+                startStates[startCount] = addPattern(nfa, pattern, i);
+                startCount++;
+            } catch (UnsupportedPatternException e) {
+                LOGGER.fine(String.format("Falling back to regular expression matching: %s", e.getMessage()));
+                fallbackIndexes.add(i);
+                fallbackPatterns.add(pattern);
+            }
+        }
+        return new MultiPatternMatcher(
+                patterns.size(),
+                nfa,
+                Arrays.copyOf(startStates, startCount),
+                startCount,
+                fallbackIndexes.stream().mapToInt(Integer::intValue).toArray(),
+                fallbackPatterns.toArray(new Pattern[0]));
+    }
+
+    private static int addPattern(Nfa nfa, Pattern pattern, int patternIndex) throws UnsupportedPatternException {
+        if (pattern.flags() != 0) {
+            throw new UnsupportedPatternException(String.format("Pattern:%s has flags", pattern.pattern()));
+        }
+        return nfa.addPattern(PatternParser.parse(pattern.pattern()), patternIndex, MAX_STATES_PER_PATTERN);
+    }
+
+    /**
+     * Checks that the automaton can express the pattern, i.e. that it is matched in linear time.
+     *
+     * @throws UnsupportedPatternException with the reason if it can't
+     */
+    public static void checkSupported(Pattern pattern) throws UnsupportedPatternException {
+        addPattern(new Nfa(), pattern, 0);
+    }
+
+    /**
+     * Returns the indexes of the patterns which match the whole input.
+     *
+     * @throws RegexBudgetExceededException if a pattern the automaton can't express exceeds the {@link RegexBudget}
+     */
+    public BitSet match(CharSequence input) {
+        BitSet matches = new BitSet(patternCount);
+        if (automatonPatternCount > 0) {
+            DfaCache cache = this.dfaCache;
+            DfaState state = cache.start;
+            int length = input.length();
+            for (int i = 0; i < length && !state.isDead(); ) {
+                int codePoint = Character.codePointAt(input, i);
+                i += Character.charCount(codePoint);
+                state = this.step(state, codePoint);
+            }
+            matches.or(state.accepting);
+        }
+        for (int i = 0; i < fallbackPatterns.length; i++) {
+            if (RegexBudget.matches(fallbackPatterns[i], input)) {
+                matches.set(fallbackIndexes[i]);
+            }
+        }
+        return matches;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Returns the number of patterns matched by the merged automaton.
+     */
+    public int getAutomatonPatternCount() {
+        return automatonPatternCount;
+    }
+
+    /**
+     * Returns the number of patterns matched one by one with {@link Pattern}.
+     */
+    public int getFallbackPatternCount() {
+        return fallbackPatterns.length;
+    }
+
+    private DfaState step(DfaState state, int codePoint) {
+        DfaState next = codePoint < ASCII ? state.asciiTransitions.get(codePoint) : state.transitions.get(codePoint);
+        if (next == null) {
+            next = this.computeTransition(state, codePoint);
+        }
+        return next;
+    }
+
+    private synchronized DfaState computeTransition(DfaState state, int codePoint) {
+        int[] targets = new int[state.nfaStates.length];
+        int count = 0;
+        for (int nfaState : state.nfaStates) {
+            if (nfa.kind(nfaState) == Nfa.CHARS && nfa.accepts(nfaState, codePoint)) {
+                targets[count++] = nfa.firstTarget(nfaState);
+            }
+        }
+        DfaState next = this.intern(nfa.closure(targets, count));
+        if (codePoint < ASCII) {
+            state.asciiTransitions.set(codePoint, next);
+        } else {
+            state.transitions.put(codePoint, next);
+        }
+        return next;
+    }
+
+    private DfaState intern(int[] nfaStates) {
+        DfaCache cache = this.dfaCache;
+        StateKey key = new StateKey(nfaStates);
+        DfaState state = cache.states.get(key);
+        if (state == null) {
+            if (cache.states.size() >= MAX_DFA_STATES) {
+                LOGGER.fine(String.format("Automaton cache reached %d states, resetting", MAX_DFA_STATES));
+                cache = this.newDfaCache();
+                this.dfaCache = cache;
+            }
+            state = this.newDfaState(nfaStates);
+            cache.states.put(key, state);
+        }
+        return state;
+    }
+
+    private DfaCache newDfaCache() {
+        DfaCache cache = new DfaCache();
+        int[] nfaStates = nfa.closure(startStates, startStates.length);
+        cache.start = this.newDfaState(nfaStates);
+        cache.states.put(new StateKey(nfaStates), cache.start);
+        return cache;
+    }
+
+    private DfaState newDfaState(int[] nfaStates) {
+        BitSet accepting = new BitSet(patternCount);
+        for (int nfaState : nfaStates) {
+            if (nfa.kind(nfaState) == Nfa.MATCH) {
+                accepting.set(nfa.patternIndex(nfaState));
+            }
+        }
+        return new DfaState(nfaStates, accepting);
+    }
+
+    private static final class DfaCache {
+        final ConcurrentHashMap<StateKey, DfaState> states = new ConcurrentHashMap<>();
+        DfaState start;
+    }
+
+    private static final class DfaState {
+        final int[] nfaStates;
+        final BitSet accepting;
+        final AtomicReferenceArray<DfaState> asciiTransitions = new AtomicReferenceArray<>(ASCII);
+        final ConcurrentHashMap<Integer, DfaState> transitions = new ConcurrentHashMap<>();
+
+        DfaState(int[] nfaStates, BitSet accepting) {
+            this.nfaStates = nfaStates;
+            this.accepting = accepting;
+        }
+
+        boolean isDead() {
+            return nfaStates.length == 0;
+        }
+    }
+
+    private static final class StateKey {
+        private final int[] nfaStates;
+        private final int hashCode;
+
+        StateKey(int[] nfaStates) {
+            this.nfaStates = nfaStates;
+            this.hashCode = Arrays.hashCode(nfaStates);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof StateKey && Arrays.equals(nfaStates, ((StateKey) other).nfaStates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.Arrays;
+
+/**
+ * Thompson automaton holding any number of patterns, every pattern ends in its own match state.
+ */
+final class Nfa {
+
+    static final int CHARS = 0;
+    static final int SPLIT = 1;
+    static final int MATCH = 2;
+
+    private static final int NONE = -1;
+
+    private int[] kinds = new int[64];
+    private int[] firstTargets = new int[64];
+    private int[] secondTargets = new int[64];
+    private int[] patternIndexes = new int[64];
+    private CodePointSet[] codePointSets = new CodePointSet[64];
+    private int size;
+
+    private int[] marks = new int[0];
+    private int[] stack = new int[0];
+    private int[] result = new int[0];
+    private int generation;
+
+    int size() {
+        return size;
+    }
+
+    int kind(int state) {
+        return kinds[state];
+    }
+
+    int firstTarget(int state) {
+        return firstTargets[state];
+    }
+
+    int secondTarget(int state) {
+        return secondTargets[state];
+    }
+
+    int patternIndex(int state) {
+        return patternIndexes[state];
+    }
+
+    boolean accepts(int state, int codePoint) {
+        return codePointSets[state].contains(codePoint);
+    }
+
+    /**
+     * Adds the pattern to the automaton and returns its start state.
+     * If the pattern exceeds the state limit, the automaton is left unchanged.
+     */
+    int addPattern(PatternNode node, int patternIndex, int maxStates) throws UnsupportedPatternException {
+        int mark = size;
+        try {
+            int match = addState(MATCH, NONE, NONE, null);
+            patternIndexes[match] = patternIndex;
+            return compile(node, match, mark + maxStates);
+        } catch (UnsupportedPatternException e) {
+            truncate(mark);
+            throw e;
+        }
+    }
+
+    private int compile(PatternNode node, int next, int limit) throws UnsupportedPatternException {
+        if (size >= limit) {
+            throw new UnsupportedPatternException("Pattern needs too many automaton states");
+        }
+        if (node instanceof PatternNode.Chars) {
+            return addState(CHARS, next, NONE, ((PatternNode.Chars) node).codePointSet);
+        } else if (node instanceof PatternNode.Concat) {
+            int state = next;
+            PatternNode.Concat concat = (PatternNode.Concat) node;
+            for (int i = concat.nodes.size() - 1; i >= 0; i--) {
+                state = compile(concat.nodes.get(i), state, limit);
+            }
+            return state;
+        } else if (node instanceof PatternNode.Alternate) {
+            PatternNode.Alternate alternate = (PatternNode.Alternate) node;
+            int state = compile(alternate.nodes.get(alternate.nodes.size() - 1), next, limit);
+            for (int i = alternate.nodes.size() - 2; i >= 0; i--) {
+                state = addState(SPLIT, compile(alternate.nodes.get(i), next, limit), state, null);
+            }
+            return state;
+        } else if (node instanceof PatternNode.Repeat) {
+            PatternNode.Repeat repeat = (PatternNode.Repeat) node;
+            int state = next;
+            if (repeat.max == PatternNode.Repeat.UNBOUNDED) {
+                int loop = addState(SPLIT, NONE, next, null);
+                // The arrays may grow while compiling the body, so it must be compiled before the assignment
+                int body = compile(repeat.node, loop, limit);
+                firstTargets[loop] = body;
+                state = loop;
+            } else {
+                for (int i = 0; i < repeat.max - repeat.min; i++) {
+                    state = addState(SPLIT, compile(repeat.node, state, limit), next, null);
+                }
+            }
+            for (int i = 0; i < repeat.min; i++) {
+                state = compile(repeat.node, state, limit);
+            }
+            return state;
+        }
+        return next;
+    }
+
+    private int addState(int kind, int firstTarget, int secondTarget, CodePointSet codePointSet) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            firstTargets = Arrays.copyOf(firstTargets, capacity);
+            secondTargets = Arrays.copyOf(secondTargets, capacity);
+            patternIndexes = Arrays.copyOf(patternIndexes, capacity);
+            codePointSets = Arrays.copyOf(codePointSets, capacity);
+        }
+        kinds[size] = kind;
+        firstTargets[size] = firstTarget;
+        secondTargets[size] = secondTarget;
+        patternIndexes[size] = NONE;
+        codePointSets[size] = codePointSet;
+        return size++;
+    }
+
+    private void truncate(int mark) {
+        Arrays.fill(codePointSets, mark, size, null);
+        size = mark;
+    }
+
+    /**
+     * Adds the states reachable from the given states without consuming input to the result, only character and match states are kept.
+     * The result is sorted so it can be used as the identity of a deterministic state.
+     * Scratch buffers are shared, so callers must not call this concurrently.
+     */
+    int[] closure(int[] states, int count) {
+        if (marks.length < size) {
+            marks = new int[size];
+            stack = new int[size];
+            result = new int[size];
+            generation = 0;
+        }
+        if (++generation == 0) {
+            Arrays.fill(marks, 0);
+            generation = 1;
+        }
+        int resultSize = 0;
+        int stackSize = 0;
+        for (int i = 0; i < count; i++) {
+            if (marks[states[i]] != generation) {
+                marks[states[i]] = generation;
+                stack[stackSize++] = states[i];
+            }
+        }
+        while (stackSize > 0) {
+            int state = stack[--stackSize];
+            if (kinds[state] == SPLIT) {
+                int first = firstTargets[state];
+                int second = secondTargets[state];
+                if (first != NONE && marks[first] != generation) {
+                    marks[first] = generation;
+                    stack[stackSize++] = first;
+                }
+                if (second != NONE && marks[second] != generation) {
+                    marks[second] = generation;
+                    stack[stackSize++] = second;
+                }
+            } else {
+                result[resultSize++] = state;
+            }
+        }
+        int[] sorted = Arrays.copyOf(result, resultSize);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
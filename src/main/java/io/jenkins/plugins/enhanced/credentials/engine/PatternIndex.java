@@ -0,0 +1,166 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Finds all patterns matching an input, using the cheapest structure for each {@link PatternKind}.
+ * <p>
+ * {@link PatternKind#EXACT} patterns are looked up in a hash map, {@link PatternKind#PREFIX} patterns are found by walking
+ * a trie with the input, and only {@link PatternKind#GLOB} and {@link PatternKind#REGEX} patterns are left to the
+ * {@link MultiPatternMatcher}.
+ * <p>
+ * {@link PatternKind#GLOB} and {@link PatternKind#REGEX} patterns starting with a literal shared by only a few patterns
+ * are kept out of the {@link MultiPatternMatcher} as well. They are found through a second trie of their literal
+ * prefixes and matched one by one, so thousands of such patterns don't blow up the automaton.
+ */
+public final class PatternIndex {
+
+    private static final int[] NO_INDEXES = new int[0];
+
+    /**
+     * Maximum number of patterns sharing a literal prefix to be matched one by one, more go to the automaton.
+     */
+    static final int MAX_PREFIX_FILTERED_PATTERNS = 16;
+
+    private final int patternCount;
+    private final Map<String, int[]> exactIndexes;
+    private final TrieNode prefixTrie;
+    private final TrieNode filteredTrie;
+    private final ClassifiedPattern[] patterns;
+    private final MultiPatternMatcher patternMatcher;
+    private final Map<PatternKind, Integer> kindCounts;
+
+    private PatternIndex(int patternCount, Map<String, int[]> exactIndexes, TrieNode prefixTrie, TrieNode filteredTrie,
+                         ClassifiedPattern[] patterns, MultiPatternMatcher patternMatcher, Map<PatternKind, Integer> kindCounts) {
+        this.patternCount = patternCount;
+        this.exactIndexes = exactIndexes;
+        this.prefixTrie = prefixTrie;
+        this.filteredTrie = filteredTrie;
+        this.patterns = patterns;
+        this.patternMatcher = patternMatcher;
+        this.kindCounts = Collections.unmodifiableMap(kindCounts);
+    }
+
+    /**
+     * Indexes the patterns, the index of a pattern in the list is its index in the match results.
+     * A {@code null} pattern never matches.
+     */
+    public static PatternIndex compile(List<ClassifiedPattern> patterns) {
+        Map<String, int[]> exactIndexes = new HashMap<>();
+        TrieNode prefixTrie = new TrieNode();
+        TrieNode filteredTrie = new TrieNode();
+        List<Pattern> matcherPatterns = new ArrayList<>();
+        Map<String, Integer> literalPrefixCounts = new HashMap<>();
+        for (ClassifiedPattern pattern : patterns) {
+            if (pattern != null && (pattern.getKind() == PatternKind.GLOB || pattern.getKind() == PatternKind.REGEX)) {
+                literalPrefixCounts.merge(pattern.getLiteralPrefix(), 1, Integer::sum);
+            }
+        }
+        Map<PatternKind, Integer> kindCounts = new EnumMap<>(PatternKind.class);
+        for (PatternKind kind : PatternKind.values()) {
+            kindCounts.put(kind, 0);
+        }
+        for (int i = 0; i < patterns.size(); i++) {
+            ClassifiedPattern pattern = patterns.get(i);
+            Pattern matcherPattern = null;
+            if (pattern != null) {
+                kindCounts.merge(pattern.getKind(), 1, Integer::sum);
+                switch (pattern.getKind()) {
+                    case EXACT:
+                        exactIndexes.put(pattern.getLiteral(), append(exactIndexes.getOrDefault(pattern.getLiteral(), NO_INDEXES), i));
+                        break;
+                    case PREFIX:
+                        addToTrie(prefixTrie, pattern.getLiteral(), i);
+                        break;
+                    default:
+                        String literalPrefix = pattern.getLiteralPrefix();
+                        if (!literalPrefix.isEmpty() && literalPrefixCounts.get(literalPrefix) <= MAX_PREFIX_FILTERED_PATTERNS) {
+                            addToTrie(filteredTrie, literalPrefix, i);
+                        } else {
+                            matcherPattern = pattern.getPattern();
+                        }
+                }
+            }
+            matcherPatterns.add(matcherPattern);
+        }
+        return new PatternIndex(patterns.size(), exactIndexes, prefixTrie, filteredTrie, patterns.toArray(new ClassifiedPattern[0]),
+                MultiPatternMatcher.compile(matcherPatterns), kindCounts);
+    }
+
+    private static void addToTrie(TrieNode trie, String literal, int index) {
+        TrieNode node = trie;
+        for (char c : literal.toCharArray()) {
+            node = node.children.computeIfAbsent(c, k -> new TrieNode());
+        }
+        node.patternIndexes = append(node.patternIndexes, index);
+    }
+
+    private static int[] append(int[] indexes, int index) {
+        int[] appended = Arrays.copyOf(indexes, indexes.length + 1);
+        appended[indexes.length] = index;
+        return appended;
+    }
+
+    /**
+     * Returns the indexes of the patterns which match the whole input.
+     */
+    public BitSet match(String input) {
+        BitSet matches = patternMatcher.match(input);
+        for (int index : exactIndexes.getOrDefault(input, NO_INDEXES)) {
+            matches.set(index);
+        }
+        // A prefix pattern matches if the rest of the input has no line terminators, as ".*" doesn't match them
+        int lastLineTerminator = ClassifiedPattern.lastLineTerminator(input);
+        TrieNode node = prefixTrie;
+        for (int depth = 0; node != null; depth++) {
+            if (depth > lastLineTerminator) {
+                for (int index : node.patternIndexes) {
+                    matches.set(index);
+                }
+            }
+            node = depth < input.length() ? node.children.get(input.charAt(depth)) : null;
+        }
+        // Patterns whose literal prefix starts the input are matched one by one
+        node = filteredTrie;
+        for (int depth = 0; node != null; depth++) {
+            for (int index : node.patternIndexes) {
+                if (patterns[index].matches(input)) {
+                    matches.set(index);
+                }
+            }
+            node = depth < input.length() ? node.children.get(input.charAt(depth)) : null;
+        }
+        return matches;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Returns the number of patterns for each {@link PatternKind}.
+     */
+    public Map<PatternKind, Integer> getKindCounts() {
+        return kindCounts;
+    }
+
+    /**
+     * Returns the number of patterns which can only be matched one by one with {@link Pattern}.
+     */
+    public int getFallbackPatternCount() {
+        return patternMatcher.getFallbackPatternCount();
+    }
+
+    private static final class TrieNode {
+        final Map<Character, TrieNode> children = new HashMap<>();
+        int[] patternIndexes = NO_INDEXES;
+    }
+}
@@ -0,0 +1,23 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+/**
+ * Shape of a rule pattern, decides how the pattern is matched.
+ */
+public enum PatternKind {
+    /**
+     * A literal, e.g. {@code deploy-key-prod}.
+     */
+    EXACT,
+    /**
+     * A literal followed by {@code .*}, e.g. {@code team-a/.*}.
+     */
+    PREFIX,
+    /**
+     * Literals separated by {@code .*}, e.g. {@code team-.*-prod}.
+     */
+    GLOB,
+    /**
+     * Any other regular expression.
+     */
+    REGEX
+}
@@ -0,0 +1,70 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Syntax tree of a pattern parsed by {@link PatternParser}.
+ */
+abstract class PatternNode {
+
+    static final PatternNode EMPTY = new Empty();
+
+    /**
+     * Matches the empty string.
+     */
+    static final class Empty extends PatternNode {
+        private Empty() {
+        }
+    }
+
+    /**
+     * Matches a single code point of the set.
+     */
+    static final class Chars extends PatternNode {
+        final CodePointSet codePointSet;
+
+        Chars(CodePointSet codePointSet) {
+            this.codePointSet = codePointSet;
+        }
+    }
+
+    /**
+     * Matches the nodes one after another.
+     */
+    static final class Concat extends PatternNode {
+        final List<PatternNode> nodes;
+
+        Concat(List<PatternNode> nodes) {
+            this.nodes = Collections.unmodifiableList(nodes);
+        }
+    }
+
+    /**
+     * Matches any of the nodes.
+     */
+    static final class Alternate extends PatternNode {
+        final List<PatternNode> nodes;
+
+        Alternate(List<PatternNode> nodes) {
+            this.nodes = Collections.unmodifiableList(nodes);
+        }
+    }
+
+    /**
+     * Matches the node between min and max times, max is {@link #UNBOUNDED} for no upper limit.
+     */
+    static final class Repeat extends PatternNode {
+        static final int UNBOUNDED = -1;
+
+        final PatternNode node;
+        final int min;
+        final int max;
+
+        Repeat(PatternNode node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+    }
+}
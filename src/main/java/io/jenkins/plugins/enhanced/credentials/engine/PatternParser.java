@@ -0,0 +1,314 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the subset of {@link java.util.regex.Pattern} syntax which can be expressed by a finite automaton.
+ * <p>
+ * Patterns are expected to be valid for {@link java.util.regex.Pattern} already and to be used for full matches,
+ * so a leading {@code ^} and a trailing {@code $} are accepted and ignored. Back references, look-arounds, boundaries,
+ * flags, possessive quantifiers, nested character classes and named classes are rejected with an
+ * {@link UnsupportedPatternException}.
+ */
+final class PatternParser {
+
+    static final int MAX_REPEAT = 100;
+
+    private final String pattern;
+    private int index;
+
+    private PatternParser(String pattern) {
+        this.pattern = pattern;
+    }
+
+    static PatternNode parse(String pattern) throws UnsupportedPatternException {
+        PatternParser parser = new PatternParser(pattern);
+        if (pattern.startsWith("^")) {
+            parser.index++;
+        }
+        PatternNode node = parser.parseAlternation();
+        if (parser.index < pattern.length()) {
+            throw parser.unsupported("unexpected character");
+        }
+        return node;
+    }
+
+    private PatternNode parseAlternation() throws UnsupportedPatternException {
+        List<PatternNode> alternatives = new ArrayList<>();
+        alternatives.add(parseConcat());
+        while (index < pattern.length() && pattern.charAt(index) == '|') {
+            index++;
+            alternatives.add(parseConcat());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new PatternNode.Alternate(alternatives);
+    }
+
+    private PatternNode parseConcat() throws UnsupportedPatternException {
+        List<PatternNode> nodes = new ArrayList<>();
+        while (index < pattern.length() && pattern.charAt(index) != '|' && pattern.charAt(index) != ')') {
+            PatternNode node = parseQuantified();
+            if (node != PatternNode.EMPTY) {
+                nodes.add(node);
+            }
+        }
+        if (nodes.isEmpty()) {
+            return PatternNode.EMPTY;
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new PatternNode.Concat(nodes);
+    }
+
+    private PatternNode parseQuantified() throws UnsupportedPatternException {
+        boolean quote = pattern.startsWith("\\Q", index);
+        PatternNode atom = parseAtom();
+        if (index >= pattern.length()) {
+            return atom;
+        }
+        int min;
+        int max;
+        char quantifier = pattern.charAt(index);
+        if (quantifier == '*') {
+            index++;
+            min = 0;
+            max = PatternNode.Repeat.UNBOUNDED;
+        } else if (quantifier == '+') {
+            index++;
+            min = 1;
+            max = PatternNode.Repeat.UNBOUNDED;
+        } else if (quantifier == '?') {
+            index++;
+            min = 0;
+            max = 1;
+        } else if (quantifier == '{') {
+            index++;
+            min = parseNumber();
+            max = min;
+            if (index < pattern.length() && pattern.charAt(index) == ',') {
+                index++;
+                max = index < pattern.length() && pattern.charAt(index) == '}' ? PatternNode.Repeat.UNBOUNDED : parseNumber();
+            }
+            if (index >= pattern.length() || pattern.charAt(index) != '}') {
+                throw unsupported("malformed repetition");
+            }
+            index++;
+            if (min > MAX_REPEAT || max > MAX_REPEAT || (max != PatternNode.Repeat.UNBOUNDED && max < min)) {
+                throw unsupported("repetition is too large");
+            }
+        } else {
+            return atom;
+        }
+        if (quote) {
+            // A quantifier after a quotation applies to its last character only
+            throw unsupported("quantified quotation");
+        }
+        if (index < pattern.length()) {
+            char modifier = pattern.charAt(index);
+            if (modifier == '?') {
+                // Reluctant quantifiers don't change the result of a full match
+                index++;
+            } else if (modifier == '+') {
+                throw unsupported("possessive quantifier");
+            }
+        }
+        if (index < pattern.length() && "*+?{".indexOf(pattern.charAt(index)) >= 0) {
+            throw unsupported("nested quantifier");
+        }
+        return new PatternNode.Repeat(atom, min, max);
+    }
+
+    private int parseNumber() throws UnsupportedPatternException {
+        int start = index;
+        while (index < pattern.length() && isDigit(pattern.charAt(index)) && index - start < 6) {
+            index++;
+        }
+        if (start == index || (index < pattern.length() && isDigit(pattern.charAt(index)))) {
+            throw unsupported("malformed repetition");
+        }
+        return Integer.parseInt(pattern.substring(start, index));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private PatternNode parseAtom() throws UnsupportedPatternException {
+        int codePoint = pattern.codePointAt(index);
+        switch (codePoint) {
+            case '(':
+                index++;
+                if (index < pattern.length() && pattern.charAt(index) == '?') {
+                    if (index + 1 < pattern.length() && pattern.charAt(index + 1) == ':') {
+                        index += 2;
+                    } else {
+                        throw unsupported("special group");
+                    }
+                }
+                PatternNode group = parseAlternation();
+                if (index >= pattern.length() || pattern.charAt(index) != ')') {
+                    throw unsupported("unclosed group");
+                }
+                index++;
+                return group;
+            case '[':
+                return new PatternNode.Chars(parseClass());
+            case '.':
+                index++;
+                return new PatternNode.Chars(CodePointSet.DOT);
+            case '$':
+                if (index == pattern.length() - 1) {
+                    index++;
+                    return PatternNode.EMPTY;
+                }
+                throw unsupported("anchor");
+            case '\\':
+                if (index + 1 < pattern.length() && pattern.charAt(index + 1) == 'Q') {
+                    return parseQuote();
+                }
+                return new PatternNode.Chars(parseEscape());
+            case '^':
+                throw unsupported("anchor");
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw unsupported("dangling quantifier");
+            default:
+                index += Character.charCount(codePoint);
+                return new PatternNode.Chars(CodePointSet.of(codePoint));
+        }
+    }
+
+    private PatternNode parseQuote() {
+        index += 2;
+        int end = pattern.indexOf("\\E", index);
+        String quoted = end < 0 ? pattern.substring(index) : pattern.substring(index, end);
+        index = end < 0 ? pattern.length() : end + 2;
+        List<PatternNode> nodes = new ArrayList<>();
+        quoted.codePoints().forEach(codePoint -> nodes.add(new PatternNode.Chars(CodePointSet.of(codePoint))));
+        if (nodes.isEmpty()) {
+            return PatternNode.EMPTY;
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new PatternNode.Concat(nodes);
+    }
+
+    private CodePointSet parseClass() throws UnsupportedPatternException {
+        index++;
+        boolean negated = false;
+        if (index < pattern.length() && pattern.charAt(index) == '^') {
+            negated = true;
+            index++;
+        }
+        int start = index;
+        CodePointSet codePointSet = null;
+        while (true) {
+            if (index >= pattern.length()) {
+                throw unsupported("unclosed character class");
+            }
+            int codePoint = pattern.codePointAt(index);
+            if (codePoint == ']' && index > start) {
+                index++;
+                break;
+            }
+            if (codePoint == '[' || codePoint == ']' || pattern.startsWith("&&", index)) {
+                throw unsupported("nested character class");
+            }
+            CodePointSet item;
+            if (codePoint == '\\') {
+                item = parseEscape();
+            } else {
+                index += Character.charCount(codePoint);
+                item = CodePointSet.of(codePoint);
+            }
+            if (index < pattern.length() && pattern.charAt(index) == '-'
+                    && index + 1 < pattern.length() && pattern.charAt(index + 1) != ']') {
+                int from = item.singleCodePoint();
+                index++;
+                CodePointSet to = pattern.charAt(index) == '\\' ? parseEscape() : parseClassLiteral();
+                if (from < 0 || to.singleCodePoint() < from) {
+                    throw unsupported("malformed range");
+                }
+                item = CodePointSet.range(from, to.singleCodePoint());
+            } else if (codePoint == '-' && index - 1 > start && index < pattern.length() && pattern.charAt(index) != ']') {
+                throw unsupported("ambiguous '-' in character class");
+            }
+            codePointSet = codePointSet == null ? item : CodePointSet.union(codePointSet, item);
+        }
+        return negated ? codePointSet.complement() : codePointSet;
+    }
+
+    private CodePointSet parseClassLiteral() throws UnsupportedPatternException {
+        int codePoint = pattern.codePointAt(index);
+        if (codePoint == '[' || codePoint == ']' || codePoint == '-' || codePoint == '&') {
+            throw unsupported("malformed range");
+        }
+        index += Character.charCount(codePoint);
+        return CodePointSet.of(codePoint);
+    }
+
+    private CodePointSet parseEscape() throws UnsupportedPatternException {
+        index++;
+        if (index >= pattern.length()) {
+            throw unsupported("trailing backslash");
+        }
+        int codePoint = pattern.codePointAt(index);
+        index += Character.charCount(codePoint);
+        switch (codePoint) {
+            case 'd':
+                return CodePointSet.DIGIT;
+            case 'D':
+                return CodePointSet.DIGIT.complement();
+            case 'w':
+                return CodePointSet.WORD;
+            case 'W':
+                return CodePointSet.WORD.complement();
+            case 's':
+                return CodePointSet.SPACE;
+            case 'S':
+                return CodePointSet.SPACE.complement();
+            case 't':
+                return CodePointSet.of('\t');
+            case 'n':
+                return CodePointSet.of('\n');
+            case 'r':
+                return CodePointSet.of('\r');
+            case 'f':
+                return CodePointSet.of('\f');
+            case 'a':
+                return CodePointSet.of(0x07);
+            case 'e':
+                return CodePointSet.of(0x1B);
+            case 'x':
+                return CodePointSet.of(parseHex(2));
+            case 'u':
+                return CodePointSet.of(parseHex(4));
+            default:
+                if (Character.isLetterOrDigit(codePoint)) {
+                    throw unsupported("escape sequence");
+                }
+                return CodePointSet.of(codePoint);
+        }
+    }
+
+    private int parseHex(int length) throws UnsupportedPatternException {
+        if (index + length > pattern.length()) {
+            throw unsupported("malformed hexadecimal escape");
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = Character.digit(pattern.charAt(index + i), 16);
+            if (digit < 0) {
+                throw unsupported("malformed hexadecimal escape");
+            }
+            value = value * 16 + digit;
+        }
+        index += length;
+        if (Character.isSurrogate((char) value)) {
+            throw unsupported("surrogate escape");
+        }
+        return value;
+    }
+
+    private UnsupportedPatternException unsupported(String reason) {
+        return new UnsupportedPatternException(pattern, index, reason);
+    }
+}
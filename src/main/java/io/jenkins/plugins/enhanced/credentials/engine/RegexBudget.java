@@ -0,0 +1,73 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import jenkins.util.SystemProperties;
+
+import java.util.regex.Pattern;
+
+/**
+ * Bounds the work {@link Pattern} may do for patterns the automaton can't express.
+ * <p>
+ * {@link Pattern} backtracks, so a pattern like {@code (a+)+$} takes exponential time on some inputs. Every character
+ * read by the regex engine counts as a step and matching is aborted with a {@link RegexBudgetExceededException} once the
+ * budget is used up.
+ */
+public final class RegexBudget {
+
+    /**
+     * Maximum number of characters the regex engine may read for a single match.
+     */
+    static final int MAX_STEPS = SystemProperties.getInteger(RegexBudget.class.getName() + ".maxSteps", 1_000_000);
+
+    private RegexBudget() {
+    }
+
+    /**
+     * Returns true if the pattern matches the whole input.
+     *
+     * @throws RegexBudgetExceededException if matching takes more than the budget
+     */
+    public static boolean matches(Pattern pattern, CharSequence input) {
+        return matches(pattern, input, MAX_STEPS);
+    }
+
+    static boolean matches(Pattern pattern, CharSequence input, int maxSteps) {
+        return pattern.matcher(new BudgetedCharSequence(pattern, input, maxSteps)).matches();
+    }
+
+    private static final class BudgetedCharSequence implements CharSequence {
+
+        private final Pattern pattern;
+        private final CharSequence input;
+        private final int maxSteps;
+        private int steps;
+
+        BudgetedCharSequence(Pattern pattern, CharSequence input, int maxSteps) {
+            this.pattern = pattern;
+            this.input = input;
+            this.maxSteps = maxSteps;
+        }
+
+        @Override
+        public int length() {
+            return input.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++steps > maxSteps) {
+                throw new RegexBudgetExceededException(pattern, maxSteps);
+            }
+            return input.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return input.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return input.toString();
+        }
+    }
+}
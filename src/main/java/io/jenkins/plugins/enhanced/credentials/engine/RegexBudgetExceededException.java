@@ -0,0 +1,13 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+import java.util.regex.Pattern;
+
+/**
+ * Thrown when matching a pattern with {@link Pattern} takes more steps than {@link RegexBudget} allows.
+ */
+public class RegexBudgetExceededException extends RuntimeException {
+
+    public RegexBudgetExceededException(Pattern pattern, int maxSteps) {
+        super(String.format("Pattern:%s exceeded the budget of %d steps", pattern.pattern(), maxSteps));
+    }
+}
@@ -0,0 +1,15 @@
+package io.jenkins.plugins.enhanced.credentials.engine;
+
+/**
+ * Thrown when a pattern uses a construct which can't be expressed by the automaton of {@link MultiPatternMatcher}.
+ */
+public class UnsupportedPatternException extends Exception {
+
+    public UnsupportedPatternException(String pattern, int index, String reason) {
+        super(String.format("Pattern:%s is not supported at index %d: %s", pattern, index, reason));
+    }
+
+    public UnsupportedPatternException(String message) {
+        super(message);
+    }
+}
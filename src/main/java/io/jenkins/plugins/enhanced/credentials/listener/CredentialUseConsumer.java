@@ -0,0 +1,20 @@
+package io.jenkins.plugins.enhanced.credentials.listener;
+
+import hudson.ExtensionPoint;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+
+/**
+ * Receives credential uses from the {@link CredentialUseDispatcher} in the background, after access was enforced.
+ * <p>
+ * Consumers are called from a single thread at a time, one event after the other, and must not block.
+ */
+public interface CredentialUseConsumer extends ExtensionPoint {
+
+    void onUse(CredentialUseEvent event);
+
+    /**
+     * Receives a change to the usage of a renamed or deleted item or node, after the uses queued before it.
+     */
+    default void onUsageChange(UsageEvent usageChange) {
+    }
+}
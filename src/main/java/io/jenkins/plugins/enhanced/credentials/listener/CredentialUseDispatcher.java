@@ -0,0 +1,388 @@
+package io.jenkins.plugins.enhanced.credentials.listener;
+
+import hudson.ExtensionList;
+import io.jenkins.plugins.enhanced.credentials.RingBuffer;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands credential uses to the {@link CredentialUseConsumer} extensions in the background.
+ * <p>
+ * Events are put into a bounded {@link RingBuffer} by the thread using the credential and delivered to
+ * all consumers, in the order they were queued, by a dedicated consumer thread, a virtual thread where the JVM
+ * supports them. What happens when the queue is full is set by the {@link OverflowPolicy}.
+ * <p>
+ * Changes to the usage of renamed or deleted items and nodes go through the same queue, so they apply after the uses
+ * queued before them without delivering those on the thread making the change. Changes are never dropped.
+ */
+public final class CredentialUseDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialUseDispatcher.class.getName());
+
+    private static final String PROPERTY_PREFIX = CredentialUseDispatcher.class.getName();
+
+    /**
+     * What a thread using a credential does when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until the consumer made room, no use is lost but builds are slowed down while the queue is full.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest queued use to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the use which doesn't fit.
+         */
+        DROP_NEWEST
+    }
+
+    static final int QUEUE_CAPACITY = SystemProperties.getInteger(PROPERTY_PREFIX + ".queueCapacity", 65536);
+
+    static final OverflowPolicy OVERFLOW_POLICY = parseOverflowPolicy(SystemProperties.getString(PROPERTY_PREFIX + ".overflowPolicy", OverflowPolicy.DROP_NEWEST.name()));
+
+    static final boolean VIRTUAL_THREAD = SystemProperties.getBoolean(PROPERTY_PREFIX + ".virtualThread", true);
+
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final long BLOCK_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final CredentialUseDispatcher INSTANCE = new CredentialUseDispatcher(QUEUE_CAPACITY, OVERFLOW_POLICY);
+
+    private final RingBuffer<CredentialUseEvent> queue;
+    private final OverflowPolicy overflowPolicy;
+    /**
+     * Consumers to deliver to, {@code null} for the {@link CredentialUseConsumer} extensions.
+     */
+    private final List<? extends CredentialUseConsumer> consumers;
+    /**
+     * Held while polling the queue, which only one thread may do at a time.
+     */
+    private final ReentrantLock consumerLock = new ReentrantLock();
+    private final LongAdder dispatchedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+    private final LongAdder enqueueNanos = new LongAdder();
+    private final AtomicLong maxEnqueueNanos = new AtomicLong();
+    private final AtomicLong consumedCount = new AtomicLong();
+    private final AtomicLong consumerFailureCount = new AtomicLong();
+
+    private volatile Thread consumerThread;
+    private volatile boolean virtualConsumerThread;
+    private volatile boolean stopping;
+    /**
+     * Set while the consumer thread parks on an empty queue, so the next use wakes it up.
+     */
+    private volatile boolean consumerIdle;
+
+    CredentialUseDispatcher(int queueCapacity, OverflowPolicy overflowPolicy) {
+        this(queueCapacity, overflowPolicy, null);
+    }
+
+    /**
+     * Creates a dispatcher delivering to the given consumers instead of the {@link CredentialUseConsumer} extensions.
+     */
+    public CredentialUseDispatcher(int queueCapacity, OverflowPolicy overflowPolicy, List<? extends CredentialUseConsumer> consumers) {
+        this.queue = new RingBuffer<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.consumers = consumers;
+    }
+
+    public static CredentialUseDispatcher get() {
+        return INSTANCE;
+    }
+
+    private static OverflowPolicy parseOverflowPolicy(String value) {
+        try {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning(String.format("Unknown overflow policy:%s, using %s", value, OverflowPolicy.DROP_NEWEST));
+            return OverflowPolicy.DROP_NEWEST;
+        }
+    }
+
+    /**
+     * Queues the event for the consumers, only waits if the queue is full and the policy is {@link OverflowPolicy#BLOCK}.
+     */
+    public void dispatch(CredentialUseEvent event) {
+        if (consumerThread == null) {
+            startConsumerIfNeeded();
+        }
+        dispatchedCount.increment();
+        long startNanos = System.nanoTime();
+        if (!enqueue(event)) {
+            droppedCount.increment();
+        } else {
+            wakeConsumer();
+        }
+        long latencyNanos = System.nanoTime() - startNanos;
+        enqueueNanos.add(latencyNanos);
+        long maxNanos = maxEnqueueNanos.get();
+        while (latencyNanos > maxNanos && !maxEnqueueNanos.compareAndSet(maxNanos, latencyNanos)) {
+            maxNanos = maxEnqueueNanos.get();
+        }
+        if (stopping) {
+            // There is no consumer thread anymore
+            drain();
+        }
+    }
+
+    /**
+     * Queues the change to the usage for the consumers, waits for room if the queue is full whatever the policy.
+     */
+    public void dispatchUsageChange(UsageEvent usageChange) {
+        if (consumerThread == null) {
+            startConsumerIfNeeded();
+        }
+        // Dropping a change would leave usage under names which are gone
+        enqueueWaiting(CredentialUseEvent.ofUsageChange(usageChange));
+        wakeConsumer();
+        if (stopping) {
+            drain();
+        }
+    }
+
+    private void wakeConsumer() {
+        if (consumerIdle) {
+            // The queue was empty, don't leave the event waiting for the idle wait to time out
+            consumerIdle = false;
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    private boolean enqueue(CredentialUseEvent event) {
+        if (queue.offer(event)) {
+            return true;
+        }
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                do {
+                    // While the consumer holds the lock it is making room anyway
+                    if (consumerLock.tryLock()) {
+                        try {
+                            CredentialUseEvent oldest = queue.poll();
+                            if (oldest != null && oldest.getUsageChange() != null) {
+                                // Changes are never dropped, deliver it instead
+                                deliver(oldest, consumers());
+                            } else if (oldest != null) {
+                                droppedCount.increment();
+                            }
+                        } finally {
+                            consumerLock.unlock();
+                        }
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                } while (!queue.offer(event));
+                return true;
+            case BLOCK:
+                blockedCount.increment();
+                enqueueWaiting(event);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void enqueueWaiting(CredentialUseEvent event) {
+        while (!queue.offer(event)) {
+            if (consumerThread == null || stopping) {
+                // Nobody else makes room
+                drain();
+            } else {
+                LockSupport.parkNanos(this, BLOCK_WAIT_NANOS);
+            }
+        }
+    }
+
+    private void startConsumerIfNeeded() {
+        // Consumers are extensions, without Jenkins there is nobody to deliver to
+        if (Jenkins.getInstanceOrNull() == null) {
+            return;
+        }
+        synchronized (this) {
+            if (consumerThread != null || stopping) {
+                return;
+            }
+            Thread thread = newConsumerThread();
+            thread.start();
+            consumerThread = thread;
+            LOGGER.fine(String.format("Started %s credential use consumer thread", virtualConsumerThread ? "virtual" : "platform"));
+        }
+    }
+
+    private Thread newConsumerThread() {
+        String name = "Credential use consumer";
+        if (VIRTUAL_THREAD) {
+            // Thread.ofVirtual() is only available from Java 21 on, the plugin is built for older versions
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class).invoke(builder, name);
+                Thread thread = (Thread) builderType.getMethod("unstarted", Runnable.class).invoke(builder, (Runnable) this::consumeLoop);
+                virtualConsumerThread = true;
+                return thread;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Virtual threads are not available, using a platform thread", e);
+            }
+        }
+        Thread thread = new Thread(this::consumeLoop, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void consumeLoop() {
+        while (!stopping) {
+            if (drain() == 0) {
+                consumerIdle = true;
+                // A use queued before the flag was set is not followed by an unpark, look once more
+                if (queue.size() == 0) {
+                    LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+                }
+                consumerIdle = false;
+                if (Thread.interrupted()) {
+                    break;
+                }
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Delivers all queued events on the calling thread, returns the number of events delivered.
+     */
+    public int drain() {
+        consumerLock.lock();
+        try {
+            CredentialUseEvent event = queue.poll();
+            if (event == null) {
+                return 0;
+            }
+            List<? extends CredentialUseConsumer> consumers = consumers();
+            int drained = 0;
+            for (; event != null; event = queue.poll()) {
+                drained++;
+                deliver(event, consumers);
+            }
+            return drained;
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    private List<? extends CredentialUseConsumer> consumers() {
+        return this.consumers != null ? this.consumers : ExtensionList.lookup(CredentialUseConsumer.class);
+    }
+
+    /**
+     * Delivers the event to the consumers, must only be called holding the consumer lock.
+     */
+    private void deliver(CredentialUseEvent event, List<? extends CredentialUseConsumer> consumers) {
+        UsageEvent usageChange = event.getUsageChange();
+        for (CredentialUseConsumer consumer : consumers) {
+            try {
+                if (usageChange != null) {
+                    consumer.onUsageChange(usageChange);
+                } else {
+                    consumer.onUse(event);
+                }
+            } catch (RuntimeException e) {
+                consumerFailureCount.incrementAndGet();
+                LOGGER.log(Level.WARNING, String.format("Consumer:%s failed on use of Credential:%s", consumer.getClass().getName(), event.getCredentialId()), e);
+            }
+        }
+        if (usageChange == null) {
+            consumedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Delivers the remaining events and stops the consumer thread, later events are delivered by the thread using
+     * the credential.
+     */
+    public void stop() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            stopping = true;
+            thread = consumerThread;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        drain();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getQueueCapacity() {
+        return queue.getCapacity();
+    }
+
+    /**
+     * Number of uses and changes waiting for the consumers, not counted by the usage report yet.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public boolean isVirtualConsumerThread() {
+        return virtualConsumerThread;
+    }
+
+    /**
+     * Number of uses dispatched, including the dropped ones.
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.sum();
+    }
+
+    /**
+     * Number of uses which were never delivered because the queue was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Number of uses which had to wait for room in the queue.
+     */
+    public long getBlockedCount() {
+        return blockedCount.sum();
+    }
+
+    public long getConsumedCount() {
+        return consumedCount.get();
+    }
+
+    public long getConsumerFailureCount() {
+        return consumerFailureCount.get();
+    }
+
+    /**
+     * Average time in nanoseconds the thread using a credential spent queueing the use.
+     */
+    public long getAverageEnqueueLatency() {
+        long count = dispatchedCount.sum();
+        return count == 0 ? 0 : enqueueNanos.sum() / count;
+    }
+
+    public long getMaxEnqueueLatency() {
+        return maxEnqueueNanos.get();
+    }
+}
@@ -0,0 +1,86 @@
+package io.jenkins.plugins.enhanced.credentials.listener;
+
+import hudson.model.Item;
+import hudson.model.Node;
+import hudson.model.Run;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+
+/**
+ * A single use of a credential, with the id resolved once and only the names kept so no build or item is retained
+ * while the event waits for its consumers. Changes to the usage of renamed or deleted items and nodes are queued as
+ * events as well, so they apply after the uses queued before them.
+ */
+public final class CredentialUseEvent {
+
+    private final long timestamp;
+    private final String credentialId;
+    private final String itemName;
+    private final String nodeName;
+    private final int buildNumber;
+    private final UsageEvent usageChange;
+
+    public CredentialUseEvent(long timestamp, String credentialId, String itemName, String nodeName, int buildNumber) {
+        this(timestamp, credentialId, itemName, nodeName, buildNumber, null);
+    }
+
+    private CredentialUseEvent(long timestamp, String credentialId, String itemName, String nodeName, int buildNumber, UsageEvent usageChange) {
+        this.timestamp = timestamp;
+        this.credentialId = credentialId;
+        this.itemName = itemName;
+        this.nodeName = nodeName;
+        this.buildNumber = buildNumber;
+        this.usageChange = usageChange;
+    }
+
+    static CredentialUseEvent ofUsageChange(UsageEvent usageChange) {
+        return new CredentialUseEvent(usageChange.getTimestamp(), usageChange.getCredentialId(), null, null, UsageEvent.NO_BUILD_NUMBER, usageChange);
+    }
+
+    public static CredentialUseEvent of(String credentialId, Run<?, ?> run) {
+        return new CredentialUseEvent(System.currentTimeMillis(), credentialId, run.getParent().getFullName(), null, run.getNumber());
+    }
+
+    public static CredentialUseEvent of(String credentialId, Item item) {
+        return new CredentialUseEvent(System.currentTimeMillis(), credentialId, item.getFullName(), null, UsageEvent.NO_BUILD_NUMBER);
+    }
+
+    public static CredentialUseEvent of(String credentialId, Node node) {
+        return new CredentialUseEvent(System.currentTimeMillis(), credentialId, null, node.getNodeName(), UsageEvent.NO_BUILD_NUMBER);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getCredentialId() {
+        return credentialId;
+    }
+
+    /**
+     * Full name of the item, or of the job of the build, using the credential, {@code null} for a node.
+     */
+    public String getItemName() {
+        return itemName;
+    }
+
+    /**
+     * Name of the node using the credential, {@code null} for an item or a build.
+     */
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    /**
+     * Number of the build using the credential, {@link UsageEvent#NO_BUILD_NUMBER} if not used by a build.
+     */
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    /**
+     * The change to the usage carried instead of a use, {@code null} for a use.
+     */
+    public UsageEvent getUsageChange() {
+        return usageChange;
+    }
+}
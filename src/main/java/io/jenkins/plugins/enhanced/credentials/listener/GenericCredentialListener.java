@@ -4,8 +4,8 @@ import com.cloudbees.plugins.credentials.Credentials;
 import com.cloudbees.plugins.credentials.CredentialsUseListener;
 import hudson.Extension;
 import hudson.model.*;
+import io.jenkins.plugins.enhanced.credentials.CredentialIdResolver;
 import io.jenkins.plugins.enhanced.credentials.CredentialRuleSupporter;
-import io.jenkins.plugins.enhanced.credentials.CredentialUsages;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 
 import java.util.ArrayList;
@@ -13,7 +13,8 @@ import java.util.List;
 import java.util.logging.Logger;
 
 /**
- * Credential Listener for restriction credentials usage
+ * Credential Listener for restriction credentials usage, the only listener for credential uses. Access is enforced
+ * on the calling thread, every use is then handed to the {@link CredentialUseDispatcher} for accounting.
  */
 public class GenericCredentialListener {
 
@@ -26,48 +27,49 @@ public class GenericCredentialListener {
 
         private CredentialRuleSupporter credentialRuleSupporter = new CredentialRuleSupporter();
 
-        private void error(Credentials c, String buildUrl) {
+        private void error(String credentialId, String buildUrl) {
             // Get task listener for the build and print log into the build
             TaskListener taskListener = GenericRunListener.getTaskListener(buildUrl);
             LOGGER.fine(String.format("Found Task Listener:%s for Build Url:%s", taskListener.toString(), buildUrl));
-            taskListener.error(String.format("Access to credential is blocked. Failing the build..", credentialRuleSupporter.callGetId(c)));
+            taskListener.error(String.format("Access to credential is blocked. Failing the build..", credentialId));
         }
 
         @Override
         public void onUse(Credentials c, Run run) {
+            String credentialId = CredentialIdResolver.resolveId(c);
             // Check if run is from Free Style Build
             if (run instanceof FreeStyleBuild) {
                 FreeStyleBuild freeStyleBuild = (FreeStyleBuild) run;
                 // Check if parent job has access to the credential
-                if (!credentialRuleSupporter.checkProjectHasAccessForCredential(c, freeStyleBuild.getProject())) {
-                    LOGGER.fine(String.format("Credential:%s doesn't have access for Project:%s - Stopping build..", CredentialRuleSupporter.callGetId(c),freeStyleBuild.getProject().getUrl()));
-                    error(c, freeStyleBuild.getUrl());
+                if (!credentialRuleSupporter.checkItemHasAccessForCredential(credentialId, freeStyleBuild.getProject().getFullName())) {
+                    LOGGER.fine(String.format("Credential:%s doesn't have access for Project:%s - Stopping build..", credentialId, freeStyleBuild.getProject().getUrl()));
+                    error(credentialId, freeStyleBuild.getUrl());
                     freeStyleBuildsToStop.add(freeStyleBuild);
                 }
             }
             else if (run instanceof WorkflowRun) {
                 WorkflowRun workflowRun = (WorkflowRun) run;
-                if (!credentialRuleSupporter.checkJobHasAccessForCredential(c, workflowRun.getParent())) {
-                    LOGGER.fine(String.format("Credential:%s doesn't have access for Project:%s - Stopping build..", CredentialRuleSupporter.callGetId(c),workflowRun.getParent().getUrl()));
-                    error(c, workflowRun.getUrl());
+                if (!credentialRuleSupporter.checkItemHasAccessForCredential(credentialId, workflowRun.getParent().getFullName())) {
+                    LOGGER.fine(String.format("Credential:%s doesn't have access for Project:%s - Stopping build..", credentialId, workflowRun.getParent().getUrl()));
+                    error(credentialId, workflowRun.getUrl());
                     credentialRuleSupporter.tryStoppingWorkflowRun(workflowRun);
                 }
 
             } else {
                 LOGGER.warning(String.format("No implementation found for Run Class:%s", run.getClass().getName()));
             }
+            // Accounting happens in the background, after the access was enforced
+            CredentialUseDispatcher.get().dispatch(CredentialUseEvent.of(credentialId, run));
         }
 
         @Override
         public void onUse(Credentials c, Node node) {
-            //Increment credential usage
-            CredentialUsages.incrementCredentialUsage(c,node);
+            CredentialUseDispatcher.get().dispatch(CredentialUseEvent.of(CredentialIdResolver.resolveId(c), node));
         }
 
         @Override
         public void onUse(Credentials c, Item item) {
-            // Increment credentials usage
-            CredentialUsages.incrementCredentialUsage(c,item);
+            CredentialUseDispatcher.get().dispatch(CredentialUseEvent.of(CredentialIdResolver.resolveId(c), item));
         }
     }
 
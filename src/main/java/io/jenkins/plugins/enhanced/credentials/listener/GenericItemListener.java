@@ -0,0 +1,36 @@
+package io.jenkins.plugins.enhanced.credentials.listener;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import io.jenkins.plugins.enhanced.credentials.CredentialDecisionCache;
+import io.jenkins.plugins.enhanced.credentials.CredentialUsages;
+
+import java.util.logging.Logger;
+
+/**
+ * Item Listener for keeping item related data in sync with renamed, moved and deleted items
+ */
+public class GenericItemListener {
+
+    private static final Logger LOGGER = Logger.getLogger(GenericItemListener.class.getName());
+
+    @Extension
+    public static class GenericCredentialItemListener extends ItemListener {
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            LOGGER.fine(String.format("Item %s is moved to %s", oldFullName, newFullName));
+            CredentialDecisionCache.get().invalidateItem(oldFullName);
+            CredentialUsages.renameItemUsage(oldFullName, newFullName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            LOGGER.fine(String.format("Item %s is deleted", item.getFullName()));
+            CredentialDecisionCache.get().invalidateItem(item.getFullName());
+            CredentialUsages.deleteItemUsage(item.getFullName());
+        }
+    }
+
+}
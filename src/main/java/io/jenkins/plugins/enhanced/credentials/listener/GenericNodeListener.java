@@ -0,0 +1,27 @@
+package io.jenkins.plugins.enhanced.credentials.listener;
+
+import hudson.Extension;
+import hudson.model.Node;
+import io.jenkins.plugins.enhanced.credentials.CredentialUsages;
+import jenkins.model.NodeListener;
+
+import java.util.logging.Logger;
+
+/**
+ * Node Listener for keeping node related data in sync with deleted nodes, including cloud agents
+ */
+public class GenericNodeListener {
+
+    private static final Logger LOGGER = Logger.getLogger(GenericNodeListener.class.getName());
+
+    @Extension
+    public static class GenericCredentialNodeListener extends NodeListener {
+
+        @Override
+        protected void onDeleted(Node node) {
+            LOGGER.fine(String.format("Node %s is deleted", node.getNodeName()));
+            CredentialUsages.deleteNodeUsage(node.getNodeName());
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Count-Min Sketch estimate of the counts of values, kept in {@value #DEPTH} rows of {@code width} counters.
+ * <p>
+ * An estimate is never below the real count and exceeds it by at most {@code e / width} of the total count with a
+ * probability of {@code 1 - e^-DEPTH}, about 98%.
+ */
+public final class CountMinSketch {
+
+    static final int DEPTH = 4;
+
+    private final int width;
+    private final long[] counts;
+    private long totalCount;
+
+    /**
+     * Creates a sketch with at least {@code width} counters per row, the width is rounded up to a power of two.
+     */
+    public CountMinSketch(int width) {
+        this.width = Integer.highestOneBit(Math.max(2, width) - 1) << 1;
+        this.counts = new long[DEPTH * this.width];
+    }
+
+    /**
+     * Adds to the count of a value by its 64 bit hash, which must be well mixed.
+     */
+    public synchronized void add(long hash, long count) {
+        totalCount += count;
+        for (int row = 0; row < DEPTH; row++) {
+            counts[row * width + index(hash, row)] += count;
+        }
+    }
+
+    public synchronized long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counts[row * width + index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * One index per row from the two halves of the hash, as in Kirsch and Mitzenmacher.
+     */
+    private int index(long hash, int row) {
+        int low = (int) hash;
+        int high = (int) (hash >>> 32);
+        return (low + row * high) & (width - 1);
+    }
+
+    /**
+     * Most an estimate exceeds the real count by, with a probability of {@code 1 - e^-DEPTH}.
+     */
+    public synchronized long getError() {
+        return (long) Math.ceil(Math.E / width * totalCount);
+    }
+
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public synchronized void writeTo(DataOutputStream output) throws IOException {
+        output.writeInt(width);
+        output.writeLong(totalCount);
+        for (long count : counts) {
+            output.writeLong(count);
+        }
+    }
+
+    public static CountMinSketch readFrom(DataInputStream input) throws IOException {
+        int width = input.readInt();
+        if (width < 2 || Integer.bitCount(width) != 1 || width > 1 << 20) {
+            throw new IOException(String.format("Invalid Count-Min Sketch width %d", width));
+        }
+        CountMinSketch sketch = new CountMinSketch(width);
+        sketch.totalCount = input.readLong();
+        for (int i = 0; i < sketch.counts.length; i++) {
+            sketch.counts[i] = input.readLong();
+        }
+        return sketch;
+    }
+}
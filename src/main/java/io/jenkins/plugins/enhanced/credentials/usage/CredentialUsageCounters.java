@@ -0,0 +1,348 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import io.jenkins.plugins.enhanced.credentials.CredentialUsage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Live usage counters of a single credential, safe to increment from any number of threads.
+ * <p>
+ * Counters per item and node are kept in {@link UsageCounterTable}s by the id of the name in the
+ * {@link NameDictionary} shared by all credentials.
+ * <p>
+ * Once the credential was used by more distinct items and nodes than the {@link UsageSketch} threshold, the counters
+ * per item and node are folded into sketches and only estimated from then on. The total stays exact.
+ */
+public final class CredentialUsageCounters {
+
+    private final String credentialId;
+    private final UsageCounter totalUsage = new UsageCounter();
+    private final NameDictionary names;
+    private final UsageCounterTable itemUsage = new UsageCounterTable();
+    private final UsageCounterTable nodeUsage = new UsageCounterTable();
+    private final UsageHistory history = new UsageHistory();
+    private final TopUsage topItems = new TopUsage();
+    private final TopUsage topNodes = new TopUsage();
+    private volatile String lastUsedItem;
+    private volatile UsageSketch itemSketch;
+    private volatile UsageSketch nodeSketch;
+
+    public CredentialUsageCounters(String credentialId, NameDictionary names) {
+        this.credentialId = credentialId;
+        this.names = names;
+    }
+
+    public String getCredentialId() {
+        return credentialId;
+    }
+
+    public long getTotalUsageCount() {
+        return totalUsage.getCount();
+    }
+
+    /**
+     * Count and first and last use over all items and nodes.
+     */
+    public UsageCounter getTotalUsage() {
+        return totalUsage;
+    }
+
+    /**
+     * Full name of the item of the last use, {@code null} if last used by a node or not known.
+     */
+    public String getLastUsedItem() {
+        return lastUsedItem;
+    }
+
+    public void incrementItemUsage(String itemName, long timestamp, int buildNumber) {
+        topItems.add(itemName, 1);
+        UsageSketch sketch = itemSketch;
+        if (sketch != null) {
+            sketch.add(itemName, 1);
+        } else {
+            itemUsage.recordUse(names.intern(itemName), timestamp, buildNumber);
+            estimateIfExceeded();
+        }
+        if (totalUsage.recordUse(timestamp, buildNumber)) {
+            lastUsedItem = itemName;
+        }
+        history.record(timestamp, 1);
+    }
+
+    public void incrementNodeUsage(String nodeName, long timestamp) {
+        topNodes.add(nodeName, 1);
+        UsageSketch sketch = nodeSketch;
+        if (sketch != null) {
+            sketch.add(nodeName, 1);
+        } else {
+            nodeUsage.recordUse(names.intern(nodeName), timestamp, UsageEvent.NO_BUILD_NUMBER);
+            estimateIfExceeded();
+        }
+        if (totalUsage.recordUse(timestamp, UsageEvent.NO_BUILD_NUMBER)) {
+            lastUsedItem = null;
+        }
+        history.record(timestamp, 1);
+    }
+
+    /**
+     * Moves the usage of the item to its new name. Estimated usage can't be moved, only the top usage is.
+     */
+    public void renameItemUsage(String itemName, String newItemName) {
+        rename(itemUsage, topItems, itemName, newItemName);
+        if (itemName.equals(lastUsedItem)) {
+            lastUsedItem = newItemName;
+        }
+    }
+
+    public void renameNodeUsage(String nodeName, String newNodeName) {
+        rename(nodeUsage, topNodes, nodeName, newNodeName);
+    }
+
+    private void rename(UsageCounterTable usage, TopUsage topUsage, String name, String newName) {
+        int nameId = names.getId(name);
+        if (nameId != NameDictionary.UNKNOWN_ID) {
+            usage.remove(nameId, (id, count, firstUsed, lastUsed, lastBuildNumber) -> usage.add(names.intern(newName), count, firstUsed, lastUsed, lastBuildNumber));
+        }
+        topUsage.rename(name, newName);
+    }
+
+    /**
+     * Drops the usage of the item, the total usage keeps it.
+     */
+    public void removeItemUsage(String itemName) {
+        remove(itemUsage, topItems, itemName);
+    }
+
+    public void removeNodeUsage(String nodeName) {
+        remove(nodeUsage, topNodes, nodeName);
+    }
+
+    private void remove(UsageCounterTable usage, TopUsage topUsage, String name) {
+        int nameId = names.getId(name);
+        if (nameId != NameDictionary.UNKNOWN_ID) {
+            usage.remove(nameId, (id, count, firstUsed, lastUsed, lastBuildNumber) -> {
+            });
+        }
+        topUsage.remove(name);
+    }
+
+    /**
+     * Folds the usage of the item into the {@link UsageRetention#OTHER_ITEMS} usage, the total usage is unchanged.
+     */
+    public void evictItemUsage(String itemName) {
+        rename(itemUsage, topItems, itemName, UsageRetention.OTHER_ITEMS);
+    }
+
+    public void evictNodeUsage(String nodeName) {
+        rename(nodeUsage, topNodes, nodeName, UsageRetention.OTHER_NODES);
+    }
+
+    /**
+     * Usage over time, only covers uses counted since the usage history exists.
+     */
+    public UsageHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Adds usage read back from disk, which is not added to the top users, see {@link #rebuildTopUsage()}.
+     */
+    public void addItemUsage(String itemName, long count, long firstUsed, long lastUsed, int lastBuildNumber) {
+        UsageSketch sketch = itemSketch;
+        if (sketch != null) {
+            sketch.add(itemName, count);
+        } else {
+            itemUsage.add(names.intern(itemName), count, firstUsed, lastUsed, lastBuildNumber);
+            estimateIfExceeded();
+        }
+        if (totalUsage.add(count, firstUsed, lastUsed, lastBuildNumber)) {
+            lastUsedItem = itemName;
+        }
+    }
+
+    public void addNodeUsage(String nodeName, long count, long firstUsed, long lastUsed) {
+        UsageSketch sketch = nodeSketch;
+        if (sketch != null) {
+            sketch.add(nodeName, count);
+        } else {
+            nodeUsage.add(names.intern(nodeName), count, firstUsed, lastUsed, UsageEvent.NO_BUILD_NUMBER);
+            estimateIfExceeded();
+        }
+        if (totalUsage.add(count, firstUsed, lastUsed, UsageEvent.NO_BUILD_NUMBER)) {
+            lastUsedItem = null;
+        }
+    }
+
+    /**
+     * The items using the credential the most, by descending count.
+     */
+    public List<TopUsage.Entry> getTopItems() {
+        return topItems.getEntries();
+    }
+
+    /**
+     * The nodes using the credential the most, by descending count.
+     */
+    public List<TopUsage.Entry> getTopNodes() {
+        return topNodes.getEntries();
+    }
+
+    public TopUsage getTopItemUsage() {
+        return topItems;
+    }
+
+    public TopUsage getTopNodeUsage() {
+        return topNodes;
+    }
+
+    /**
+     * Fills the top users from the exact counters, for usage read back from disk without them.
+     */
+    public void rebuildTopUsage() {
+        topItems.rebuild(this::forEachItemUsage);
+        topNodes.rebuild(this::forEachNodeUsage);
+    }
+
+    private void estimateIfExceeded() {
+        if (UsageSketch.isExceeded(itemUsage.size() + nodeUsage.size())) {
+            estimate(new UsageSketch(), new UsageSketch());
+        }
+    }
+
+    /**
+     * Switches to the given sketches and folds the counters per item and node into them. A use racing with the switch
+     * may be missing from the estimates, never from the total.
+     */
+    private synchronized void estimate(UsageSketch items, UsageSketch nodes) {
+        if (itemSketch != null) {
+            return;
+        }
+        // Uses from now on go to the sketches
+        itemSketch = items;
+        nodeSketch = nodes;
+        itemUsage.forEach((nameId, count, firstUsed, lastUsed, lastBuildNumber) -> items.add(names.getName(nameId), count));
+        nodeUsage.forEach((nameId, count, firstUsed, lastUsed, lastBuildNumber) -> nodes.add(names.getName(nameId), count));
+        itemUsage.clear();
+        nodeUsage.clear();
+    }
+
+    /**
+     * Restores estimated usage read back from disk, the total is the usage of all items and nodes in the sketches.
+     */
+    public void addEstimatedUsage(UsageSketch items, UsageSketch nodes, long count, long firstUsed, long lastUsed, int lastBuildNumber, String lastUsedItem) {
+        estimate(items, nodes);
+        if (totalUsage.add(count, firstUsed, lastUsed, lastBuildNumber)) {
+            this.lastUsedItem = lastUsedItem;
+        }
+    }
+
+    /**
+     * Whether the usage per item and node is estimated instead of counted.
+     */
+    public boolean isEstimated() {
+        return itemSketch != null;
+    }
+
+    /**
+     * Estimated usage by items, {@code null} while counted exactly.
+     */
+    public UsageSketch getItemSketch() {
+        return itemSketch;
+    }
+
+    /**
+     * Estimated usage by nodes, {@code null} while counted exactly.
+     */
+    public UsageSketch getNodeSketch() {
+        return nodeSketch;
+    }
+
+    /**
+     * Exact usage by the item, {@code null} if not used by it or if usage is estimated.
+     */
+    public UsageCounter getItemUsage(String itemName) {
+        return getUsage(itemUsage, itemName);
+    }
+
+    /**
+     * Exact usage by the node, {@code null} if not used by it or if usage is estimated.
+     */
+    public UsageCounter getNodeUsage(String nodeName) {
+        return getUsage(nodeUsage, nodeName);
+    }
+
+    private UsageCounter getUsage(UsageCounterTable usage, String name) {
+        int nameId = names.getId(name);
+        return nameId == NameDictionary.UNKNOWN_ID ? null : usage.get(nameId);
+    }
+
+    public void forEachItemUsage(UsageVisitor visitor) {
+        forEachUsage(itemUsage, visitor);
+    }
+
+    public void forEachNodeUsage(UsageVisitor visitor) {
+        forEachUsage(nodeUsage, visitor);
+    }
+
+    private void forEachUsage(UsageCounterTable usage, UsageVisitor visitor) {
+        usage.forEach((nameId, count, firstUsed, lastUsed, lastBuildNumber) -> visitor.visit(names.getName(nameId), count, firstUsed, lastUsed, lastBuildNumber));
+    }
+
+    /**
+     * Number of distinct items using the credential, estimated if usage is estimated.
+     */
+    public long getItemCount() {
+        UsageSketch sketch = itemSketch;
+        return sketch != null ? sketch.estimateDistinctCount() : itemUsage.size();
+    }
+
+    /**
+     * Number of distinct nodes using the credential, estimated if usage is estimated.
+     */
+    public long getNodeCount() {
+        UsageSketch sketch = nodeSketch;
+        return sketch != null ? sketch.estimateDistinctCount() : nodeUsage.size();
+    }
+
+    /**
+     * Number of exact counters by item and node, 0 if usage is estimated.
+     */
+    public int getCounterCount() {
+        return itemUsage.size() + nodeUsage.size();
+    }
+
+    /**
+     * Returns the counters as a detached {@link CredentialUsage}, counters incremented meanwhile may or may not be included.
+     */
+    public CredentialUsage toCredentialUsage() {
+        CredentialUsage credentialUsage = new CredentialUsage(credentialId);
+        credentialUsage.setItemUsage(toIntegerMap(this::forEachItemUsage));
+        credentialUsage.setNodeUsage(toIntegerMap(this::forEachNodeUsage));
+        credentialUsage.setTotalUsageCount(toInteger(totalUsage.getCount()));
+        return credentialUsage;
+    }
+
+    public static CredentialUsageCounters fromCredentialUsage(String credentialId, CredentialUsage credentialUsage, NameDictionary names) {
+        CredentialUsageCounters counters = new CredentialUsageCounters(credentialId, names);
+        if (credentialUsage.getItemUsage() != null) {
+            credentialUsage.getItemUsage().forEach((name, count) -> counters.addItemUsage(name, count, UsageCounter.UNKNOWN, UsageCounter.UNKNOWN, UsageEvent.NO_BUILD_NUMBER));
+        }
+        if (credentialUsage.getNodeUsage() != null) {
+            credentialUsage.getNodeUsage().forEach((name, count) -> counters.addNodeUsage(name, count, UsageCounter.UNKNOWN, UsageCounter.UNKNOWN));
+        }
+        counters.rebuildTopUsage();
+        return counters;
+    }
+
+    private static HashMap<String, Integer> toIntegerMap(Consumer<UsageVisitor> forEach) {
+        HashMap<String, Integer> integerMap = new HashMap<>();
+        forEach.accept((name, count, firstUsed, lastUsed, lastBuildNumber) -> integerMap.put(name, toInteger(count)));
+        return integerMap;
+    }
+
+    private static Integer toInteger(long count) {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+}
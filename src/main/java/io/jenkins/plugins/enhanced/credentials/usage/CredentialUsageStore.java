@@ -0,0 +1,170 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import io.jenkins.plugins.enhanced.credentials.CredentialUsage;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory usage counters of all credentials.
+ * <p>
+ * Changes are applied by the usage accounting one at a time and read from any thread, clearing swaps in an empty map
+ * so readers never see a half cleared one. Changes are counted so that the persistence can tell whether and how much
+ * is left to write.
+ */
+public final class CredentialUsageStore {
+
+    private volatile ConcurrentHashMap<String, CredentialUsageCounters> counters;
+    private volatile NameDictionary names = new NameDictionary();
+    private volatile long changeCount;
+
+    public CredentialUsageStore(Map<String, CredentialUsage> credentialUsageMap) {
+        this.counters = toCounters(credentialUsageMap, names);
+    }
+
+    public void incrementItemUsage(String credentialId, String itemName, long timestamp, int buildNumber) {
+        countersFor(credentialId).incrementItemUsage(itemName, timestamp, buildNumber);
+        changeCount++;
+    }
+
+    public void incrementNodeUsage(String credentialId, String nodeName, long timestamp) {
+        countersFor(credentialId).incrementNodeUsage(nodeName, timestamp);
+        changeCount++;
+    }
+
+    /**
+     * Applies a usage event as it happens or when it is replayed from the journal.
+     */
+    public void apply(UsageEvent event) {
+        switch (event.getType()) {
+            case ITEM:
+                incrementItemUsage(event.getCredentialId(), event.getName(), event.getTimestamp(), event.getBuildNumber());
+                break;
+            case NODE:
+                incrementNodeUsage(event.getCredentialId(), event.getName(), event.getTimestamp());
+                break;
+            case CLEAR:
+                clear();
+                break;
+            case RENAME_ITEM:
+                forAllCounters(counters -> counters.renameItemUsage(event.getName(), event.getNewName()));
+                break;
+            case RENAME_NODE:
+                forAllCounters(counters -> counters.renameNodeUsage(event.getName(), event.getNewName()));
+                break;
+            case REMOVE_ITEM:
+                forAllCounters(counters -> counters.removeItemUsage(event.getName()));
+                break;
+            case REMOVE_NODE:
+                forAllCounters(counters -> counters.removeNodeUsage(event.getName()));
+                break;
+            case EVICT_ITEM:
+                evict(event.getCredentialId(), counters -> counters.evictItemUsage(event.getName()));
+                break;
+            case EVICT_NODE:
+                evict(event.getCredentialId(), counters -> counters.evictNodeUsage(event.getName()));
+                break;
+        }
+    }
+
+    /**
+     * Applies a rename or removal to the counters of every credential, an item or node may use any of them.
+     */
+    private void forAllCounters(Consumer<CredentialUsageCounters> change) {
+        counters.values().forEach(change);
+        changeCount++;
+    }
+
+    private void evict(String credentialId, Consumer<CredentialUsageCounters> eviction) {
+        CredentialUsageCounters credentialCounters = counters.get(credentialId);
+        if (credentialCounters != null) {
+            eviction.accept(credentialCounters);
+        }
+        changeCount++;
+    }
+
+    public void addItemUsage(String credentialId, String itemName, long count, long firstUsed, long lastUsed, int lastBuildNumber) {
+        countersFor(credentialId).addItemUsage(itemName, count, firstUsed, lastUsed, lastBuildNumber);
+        changeCount++;
+    }
+
+    public void addNodeUsage(String credentialId, String nodeName, long count, long firstUsed, long lastUsed) {
+        countersFor(credentialId).addNodeUsage(nodeName, count, firstUsed, lastUsed);
+        changeCount++;
+    }
+
+    public void addEstimatedUsage(String credentialId, UsageSketch items, UsageSketch nodes, long count, long firstUsed, long lastUsed, int lastBuildNumber, String lastUsedItem) {
+        countersFor(credentialId).addEstimatedUsage(items, nodes, count, firstUsed, lastUsed, lastBuildNumber, lastUsedItem);
+        changeCount++;
+    }
+
+    private CredentialUsageCounters countersFor(String credentialId) {
+        ConcurrentHashMap<String, CredentialUsageCounters> counters = this.counters;
+        CredentialUsageCounters credentialCounters = counters.get(credentialId);
+        if (credentialCounters == null) {
+            NameDictionary names = this.names;
+            // Credential ids are interned too, they are often used as item or node names of other credentials as well
+            credentialCounters = counters.computeIfAbsent(credentialId, id -> new CredentialUsageCounters(names.getName(names.intern(id)), names));
+        }
+        return credentialCounters;
+    }
+
+    /**
+     * Drops all counters.
+     */
+    public void clear() {
+        this.names = new NameDictionary();
+        this.counters = new ConcurrentHashMap<>();
+        changeCount++;
+    }
+
+    /**
+     * Total number of changes made so far, grows monotonically.
+     */
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    public CredentialUsageCounters getCounters(String credentialId) {
+        return counters.get(credentialId);
+    }
+
+    public Collection<CredentialUsageCounters> getAllCounters() {
+        return counters.values();
+    }
+
+    /**
+     * Number of exact counters by item and node over all credentials.
+     */
+    public long getCounterCount() {
+        long counterCount = 0;
+        for (CredentialUsageCounters credentialCounters : counters.values()) {
+            counterCount += credentialCounters.getCounterCount();
+        }
+        return counterCount;
+    }
+
+    /**
+     * Returns a detached copy of all counters.
+     */
+    public HashMap<String, CredentialUsage> snapshot() {
+        HashMap<String, CredentialUsage> snapshot = new HashMap<>();
+        for (CredentialUsageCounters credentialCounters : counters.values()) {
+            snapshot.put(credentialCounters.getCredentialId(), credentialCounters.toCredentialUsage());
+        }
+        return snapshot;
+    }
+
+    private static ConcurrentHashMap<String, CredentialUsageCounters> toCounters(Map<String, CredentialUsage> credentialUsageMap, NameDictionary names) {
+        ConcurrentHashMap<String, CredentialUsageCounters> counters = new ConcurrentHashMap<>();
+        if (credentialUsageMap != null) {
+            for (Map.Entry<String, CredentialUsage> entry : credentialUsageMap.entrySet()) {
+                counters.put(entry.getKey(), CredentialUsageCounters.fromCredentialUsage(entry.getKey(), entry.getValue(), names));
+            }
+        }
+        return counters;
+    }
+}
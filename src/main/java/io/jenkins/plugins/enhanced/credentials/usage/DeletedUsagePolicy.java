@@ -0,0 +1,23 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+/**
+ * What happens to the usage of an item or node once it is deleted.
+ */
+public enum DeletedUsagePolicy {
+    /**
+     * Keep the usage under the name of the deleted item or node.
+     */
+    KEEP,
+    /**
+     * Drop the usage, it is still counted in the total usage of the credential.
+     */
+    REMOVE,
+    /**
+     * Add the usage to the usage of all deleted items or nodes, so the credential lists them as one.
+     */
+    ARCHIVE;
+
+    public static final String DELETED_ITEMS = "(deleted items)";
+
+    public static final String DELETED_NODES = "(deleted nodes)";
+}
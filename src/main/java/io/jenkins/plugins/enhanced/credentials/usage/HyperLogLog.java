@@ -0,0 +1,97 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * HyperLogLog estimate of a number of distinct values, kept in {@code 2^precision} registers of one byte.
+ * <p>
+ * The relative standard error of the estimate is {@code 1.04 / sqrt(2^precision)}, small counts are estimated by
+ * linear counting.
+ */
+public final class HyperLogLog {
+
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 16;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(String.format("Precision %d is not between %d and %d", precision, MIN_PRECISION, MAX_PRECISION));
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value by its 64 bit hash, which must be well mixed.
+     */
+    public synchronized void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The guard bit caps the rank where the remaining bits are all zero
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public synchronized long estimate() {
+        int registerCount = registers.length;
+        double sum = 0;
+        int zeroRegisters = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeroRegisters++;
+            }
+        }
+        double estimate = alpha(registerCount) * registerCount * registerCount / sum;
+        if (estimate <= 2.5 * registerCount && zeroRegisters > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int registerCount) {
+        switch (registerCount) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / registerCount);
+        }
+    }
+
+    /**
+     * Relative standard error of {@link #estimate()}.
+     */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public int getSize() {
+        return registers.length;
+    }
+
+    public synchronized void writeTo(DataOutputStream output) throws IOException {
+        output.writeByte(precision);
+        output.write(registers);
+    }
+
+    public static HyperLogLog readFrom(DataInputStream input) throws IOException {
+        int precision = input.readByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException(String.format("Invalid HyperLogLog precision %d", precision));
+        }
+        HyperLogLog hyperLogLog = new HyperLogLog(precision);
+        input.readFully(hyperLogLog.registers);
+        return hyperLogLog;
+    }
+}
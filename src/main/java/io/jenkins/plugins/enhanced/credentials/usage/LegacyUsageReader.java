@@ -0,0 +1,113 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams the usage counters out of the descriptor XML written before the usage journal, without deserializing the
+ * whole map first. Only the counts per item and node are read, the totals are their sums.
+ * <p>
+ * The XML is nested as XStream writes a {@code HashMap<String, CredentialUsage>}:
+ * {@code credentialUsageMap/entry/(string, CredentialUsage/(itemUsage|nodeUsage)/entry/(string, int))}.
+ */
+public final class LegacyUsageReader {
+
+    private static final String USAGE_MAP = "credentialUsageMap";
+    private static final String ITEM_USAGE = "itemUsage";
+    private static final String NODE_USAGE = "nodeUsage";
+    private static final String KEY = "string";
+    private static final String COUNT = "int";
+
+    /**
+     * Depth of the elements below the root, which is at depth 1.
+     */
+    private static final int CREDENTIAL_DEPTH = 3;
+    private static final int CREDENTIAL_ID_DEPTH = 4;
+    private static final int USAGE_DEPTH = 5;
+    private static final int USAGE_ENTRY_DEPTH = 7;
+
+    private LegacyUsageReader() {
+    }
+
+    /**
+     * Adds the usage in the XML file to the store, returns the number of credentials with usage.
+     */
+    public static int read(File xmlFile, CredentialUsageStore credentialUsageStore) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream input = new BufferedInputStream(new FileInputStream(xmlFile))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(input);
+            try {
+                return read(reader, credentialUsageStore);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException(String.format("Failed to read usage data from %s", xmlFile), e);
+        }
+    }
+
+    private static int read(XMLStreamReader reader, CredentialUsageStore credentialUsageStore) throws XMLStreamException {
+        int credentials = 0;
+        int depth = 0;
+        boolean inUsageMap = false;
+        String credentialId = null;
+        String usage = null;
+        String name = null;
+        boolean credentialUsed = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String element = reader.getLocalName();
+                if (depth == 2) {
+                    inUsageMap = USAGE_MAP.equals(element);
+                } else if (!inUsageMap) {
+                    continue;
+                } else if (depth == CREDENTIAL_ID_DEPTH && credentialId == null && KEY.equals(element)) {
+                    // Reading the text ends the element as well
+                    credentialId = reader.getElementText();
+                    depth--;
+                } else if (depth == USAGE_DEPTH && (ITEM_USAGE.equals(element) || NODE_USAGE.equals(element))) {
+                    usage = element;
+                } else if (depth == USAGE_ENTRY_DEPTH && usage != null && credentialId != null && KEY.equals(element)) {
+                    name = reader.getElementText();
+                    depth--;
+                } else if (depth == USAGE_ENTRY_DEPTH && usage != null && credentialId != null && name != null && COUNT.equals(element)) {
+                    long count = Long.parseLong(reader.getElementText().trim());
+                    depth--;
+                    if (ITEM_USAGE.equals(usage)) {
+                        credentialUsageStore.addItemUsage(credentialId, name, count, UsageCounter.UNKNOWN, UsageCounter.UNKNOWN, UsageEvent.NO_BUILD_NUMBER);
+                    } else {
+                        credentialUsageStore.addNodeUsage(credentialId, name, count, UsageCounter.UNKNOWN, UsageCounter.UNKNOWN);
+                    }
+                    credentialUsed = true;
+                    name = null;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (inUsageMap && depth == USAGE_DEPTH) {
+                    usage = null;
+                } else if (inUsageMap && depth == CREDENTIAL_DEPTH) {
+                    if (credentialUsed) {
+                        credentials++;
+                    }
+                    credentialId = null;
+                    credentialUsed = false;
+                } else if (depth == 2) {
+                    inUsageMap = false;
+                }
+                depth--;
+            }
+        }
+        credentialUsageStore.getAllCounters().forEach(CredentialUsageCounters::rebuildTopUsage);
+        return credentials;
+    }
+}
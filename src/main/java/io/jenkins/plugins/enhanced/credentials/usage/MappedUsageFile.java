@@ -0,0 +1,508 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import jenkins.util.SystemProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Usage counters kept in fixed size records of a memory-mapped file, one record per credential and item or node.
+ * <p>
+ * Records are addressed by the ids of the credential and the name in a dictionary which is appended to its own file
+ * before a new id is used. Counting a use updates the record in place, the OS writes the mapped pages back, so nothing
+ * is buffered by the plugin and the counters survive a crash of the controller as they are. Only the usage per item
+ * and node is kept, neither the usage history nor the top usage, which is rebuilt when the counters are read.
+ * <p>
+ * Records of renamed, removed or evicted items and nodes are freed and reused by new records. Records are written by the single
+ * usage accounting thread, access is simply synchronized.
+ */
+public final class MappedUsageFile implements UsagePersistence {
+
+    private static final Logger LOGGER = Logger.getLogger(MappedUsageFile.class.getName());
+
+    private static final String PROPERTY_PREFIX = MappedUsageFile.class.getName();
+
+    /**
+     * Number of records mapped at once, the file grows by this many records.
+     */
+    static final int REGION_RECORDS = Math.max(64, SystemProperties.getInteger(PROPERTY_PREFIX + ".regionRecords", 32768));
+
+    /**
+     * Whether every flush forces the mapped records to disk instead of leaving the write-back to the OS.
+     */
+    static final boolean FORCE = SystemProperties.getBoolean(PROPERTY_PREFIX + ".force", false);
+
+    private static final String COUNTERS_FILE = "counters.bin";
+    private static final String NAMES_FILE = "names.bin";
+
+    private static final int MAGIC = 0x4543554d;
+    private static final int VERSION = 1;
+
+    static final int RECORD_SIZE = 40;
+    /**
+     * Id of the credential plus one, 0 marks the first unused record.
+     */
+    private static final int CREDENTIAL = 0;
+    private static final int NAME = 4;
+    private static final int KIND = 8;
+    private static final int LAST_BUILD_NUMBER = 12;
+    private static final int COUNT = 16;
+    private static final int FIRST_USED = 24;
+    private static final int LAST_USED = 32;
+
+    /**
+     * Kind of a record whose usage was removed or moved, the record is reused.
+     */
+    private static final int KIND_FREE = 0;
+    private static final int KIND_ITEM = 1;
+    private static final int KIND_NODE = 2;
+
+    private final File directory;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    /**
+     * Record number by credential, name and kind, see {@link #key(int, int, int)}.
+     */
+    private final Map<Long, Integer> records = new HashMap<>();
+    private final ArrayDeque<Integer> freeRecords = new ArrayDeque<>();
+    private NameDictionary names = new NameDictionary();
+    private FileChannel counters;
+    private FileChannel namesOutput;
+    /**
+     * Number of the first unused record, record 0 is the header.
+     */
+    private int recordCount = 1;
+    private int recordedEventCount;
+    private int failedEventCount;
+    private long writtenEventCount;
+
+    public MappedUsageFile(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !new File(directory, COUNTERS_FILE).exists();
+    }
+
+    /**
+     * Writes the exact usage per item and node, usage which is only estimated can't be written as records.
+     */
+    @Override
+    public synchronized void writeInitialSnapshot(CredentialUsageStore credentialUsageStore) throws IOException {
+        if (!isEmpty()) {
+            throw new IllegalStateException(String.format("Mapped usage file in %s is not empty", directory));
+        }
+        open();
+        IOException[] failure = new IOException[1];
+        for (CredentialUsageCounters credentialCounters : credentialUsageStore.getAllCounters()) {
+            String credentialId = credentialCounters.getCredentialId();
+            if (credentialCounters.isEstimated()) {
+                LOGGER.warning(String.format("Usage of Credential:%s is estimated and is not written to %s", credentialId, directory));
+                continue;
+            }
+            credentialCounters.forEachItemUsage((name, count, firstUsed, lastUsed, lastBuildNumber) -> {
+                if (failure[0] == null) {
+                    try {
+                        add(KIND_ITEM, credentialId, name, count, firstUsed, lastUsed, lastBuildNumber);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            credentialCounters.forEachNodeUsage((name, count, firstUsed, lastUsed, lastBuildNumber) -> {
+                if (failure[0] == null) {
+                    try {
+                        add(KIND_NODE, credentialId, name, count, firstUsed, lastUsed, UsageEvent.NO_BUILD_NUMBER);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        force();
+    }
+
+    /**
+     * Reads the dictionary and the records, records of names missing from the dictionary are skipped.
+     */
+    @Override
+    public synchronized CredentialUsageStore recover() throws IOException {
+        open();
+        CredentialUsageStore credentialUsageStore = new CredentialUsageStore(Collections.emptyMap());
+        int skippedRecords = 0;
+        long fileSize = counters.size();
+        int record = 1;
+        for (; (long) (record + 1) * RECORD_SIZE <= fileSize; record++) {
+            ByteBuffer region = region(record);
+            int offset = offset(record);
+            int credential = region.getInt(offset + CREDENTIAL) - 1;
+            if (credential < 0) {
+                break;
+            }
+            int name = region.getInt(offset + NAME);
+            int kind = region.getInt(offset + KIND);
+            if (kind == KIND_FREE) {
+                freeRecords.push(record);
+                continue;
+            }
+            if (credential >= names.size() || name < 0 || name >= names.size() || (kind != KIND_ITEM && kind != KIND_NODE)) {
+                skippedRecords++;
+                continue;
+            }
+            records.put(key(credential, name, kind), record);
+            String credentialId = names.getName(credential);
+            long count = region.getLong(offset + COUNT);
+            long firstUsed = region.getLong(offset + FIRST_USED);
+            long lastUsed = region.getLong(offset + LAST_USED);
+            if (kind == KIND_ITEM) {
+                credentialUsageStore.addItemUsage(credentialId, names.getName(name), count, firstUsed, lastUsed, region.getInt(offset + LAST_BUILD_NUMBER));
+            } else {
+                credentialUsageStore.addNodeUsage(credentialId, names.getName(name), count, firstUsed, lastUsed);
+            }
+        }
+        recordCount = record;
+        credentialUsageStore.getAllCounters().forEach(CredentialUsageCounters::rebuildTopUsage);
+        if (skippedRecords > 0) {
+            LOGGER.warning(String.format("Skipped %d usage records of names missing from %s", skippedRecords, new File(directory, NAMES_FILE)));
+        }
+        LOGGER.fine(String.format("Recovered %d usage records and %d names from %s", recordCount - 1 - freeRecords.size(), names.size(), directory));
+        return credentialUsageStore;
+    }
+
+    /**
+     * Updates the record of the event in place, an event which can't be written fails the next {@link #flush()}.
+     */
+    @Override
+    public synchronized void record(UsageEvent event) {
+        try {
+            open();
+            switch (event.getType()) {
+                case ITEM:
+                    add(KIND_ITEM, event.getCredentialId(), event.getName(), 1, event.getTimestamp(), event.getTimestamp(), event.getBuildNumber());
+                    break;
+                case NODE:
+                    add(KIND_NODE, event.getCredentialId(), event.getName(), 1, event.getTimestamp(), event.getTimestamp(), UsageEvent.NO_BUILD_NUMBER);
+                    break;
+                case CLEAR:
+                    clear();
+                    break;
+                case RENAME_ITEM:
+                    move(KIND_ITEM, event.getName(), event.getNewName());
+                    break;
+                case RENAME_NODE:
+                    move(KIND_NODE, event.getName(), event.getNewName());
+                    break;
+                case REMOVE_ITEM:
+                    move(KIND_ITEM, event.getName(), null);
+                    break;
+                case REMOVE_NODE:
+                    move(KIND_NODE, event.getName(), null);
+                    break;
+                case EVICT_ITEM:
+                    evict(KIND_ITEM, event.getCredentialId(), event.getName(), UsageRetention.OTHER_ITEMS);
+                    break;
+                case EVICT_NODE:
+                    evict(KIND_NODE, event.getCredentialId(), event.getName(), UsageRetention.OTHER_NODES);
+                    break;
+            }
+            recordedEventCount++;
+        } catch (IOException | RuntimeException e) {
+            failedEventCount++;
+            LOGGER.log(Level.FINE, String.format("Failed to write usage of Credential:%s to %s", event.getCredentialId(), directory), e);
+        }
+    }
+
+    private void add(int kind, String credentialId, String name, long count, long firstUsed, long lastUsed, int lastBuildNumber) throws IOException {
+        int credential = idOf(credentialId);
+        int nameId = idOf(name);
+        Integer record = records.get(key(credential, nameId, kind));
+        ByteBuffer region;
+        int offset;
+        if (record == null) {
+            record = freeRecords.isEmpty() ? recordCount++ : freeRecords.pop();
+            region = region(record);
+            offset = offset(record);
+            region.putInt(offset + NAME, nameId);
+            region.putInt(offset + LAST_BUILD_NUMBER, UsageEvent.NO_BUILD_NUMBER);
+            region.putLong(offset + COUNT, 0);
+            region.putLong(offset + FIRST_USED, UsageCounter.UNKNOWN);
+            region.putLong(offset + LAST_USED, UsageCounter.UNKNOWN);
+            // Kind and credential go last, they mark the record as used
+            region.putInt(offset + KIND, kind);
+            region.putInt(offset + CREDENTIAL, credential + 1);
+            records.put(key(credential, nameId, kind), record);
+        } else {
+            region = region(record);
+            offset = offset(record);
+        }
+        region.putLong(offset + COUNT, region.getLong(offset + COUNT) + count);
+        long recordFirstUsed = region.getLong(offset + FIRST_USED);
+        if (firstUsed != UsageCounter.UNKNOWN && (recordFirstUsed == UsageCounter.UNKNOWN || firstUsed < recordFirstUsed)) {
+            region.putLong(offset + FIRST_USED, firstUsed);
+        }
+        if (lastUsed != UsageCounter.UNKNOWN && lastUsed >= region.getLong(offset + LAST_USED)) {
+            region.putLong(offset + LAST_USED, lastUsed);
+            region.putInt(offset + LAST_BUILD_NUMBER, lastBuildNumber);
+        }
+    }
+
+    /**
+     * Moves the records of the name of all credentials to the new name, or frees them if there is no new name.
+     */
+    private void move(int kind, String name, String newName) throws IOException {
+        int nameId = names.getId(name);
+        if (nameId == NameDictionary.UNKNOWN_ID) {
+            return;
+        }
+        List<Integer> movedRecords = new ArrayList<>();
+        for (Iterator<Integer> iterator = records.values().iterator(); iterator.hasNext(); ) {
+            int record = iterator.next();
+            ByteBuffer region = region(record);
+            int offset = offset(record);
+            if (region.getInt(offset + NAME) == nameId && region.getInt(offset + KIND) == kind) {
+                movedRecords.add(record);
+                iterator.remove();
+            }
+        }
+        for (int record : movedRecords) {
+            move(record, kind, newName);
+        }
+    }
+
+    /**
+     * Moves the record of the name of a single credential to the bucket name.
+     */
+    private void evict(int kind, String credentialId, String name, String bucketName) throws IOException {
+        int credential = names.getId(credentialId);
+        int nameId = names.getId(name);
+        if (credential == NameDictionary.UNKNOWN_ID || nameId == NameDictionary.UNKNOWN_ID) {
+            return;
+        }
+        Integer record = records.remove(key(credential, nameId, kind));
+        if (record != null) {
+            move(record, kind, bucketName);
+        }
+    }
+
+    private void move(int record, int kind, String newName) throws IOException {
+        ByteBuffer region = region(record);
+        int offset = offset(record);
+        String credentialId = names.getName(region.getInt(offset + CREDENTIAL) - 1);
+        long count = region.getLong(offset + COUNT);
+        long firstUsed = region.getLong(offset + FIRST_USED);
+        long lastUsed = region.getLong(offset + LAST_USED);
+        int lastBuildNumber = region.getInt(offset + LAST_BUILD_NUMBER);
+        // The credential stays set, so the record doesn't end the records when they are read
+        region.putInt(offset + KIND, KIND_FREE);
+        freeRecords.push(record);
+        if (newName != null) {
+            add(kind, credentialId, newName, count, firstUsed, lastUsed, lastBuildNumber);
+        }
+    }
+
+    /**
+     * Returns the id of the name, appending it to the dictionary file first if it is new.
+     */
+    private int idOf(String name) throws IOException {
+        int id = names.getId(name);
+        if (id != NameDictionary.UNKNOWN_ID) {
+            return id;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length() + 2);
+        new DataOutputStream(bytes).writeUTF(name);
+        ByteBuffer entry = ByteBuffer.wrap(bytes.toByteArray());
+        while (entry.hasRemaining()) {
+            namesOutput.write(entry);
+        }
+        return names.intern(name);
+    }
+
+    private void clear() throws IOException {
+        for (int record = 1; record < recordCount; record++) {
+            ByteBuffer region = region(record);
+            int offset = offset(record);
+            for (int i = 0; i < RECORD_SIZE; i += Long.BYTES) {
+                region.putLong(offset + i, 0);
+            }
+        }
+        records.clear();
+        freeRecords.clear();
+        recordCount = 1;
+        namesOutput.truncate(0);
+        names = new NameDictionary();
+    }
+
+    /**
+     * Returns the number of events recorded since the last flush. Records are already in the mapped file, they are only
+     * forced to disk if {@code force} is set.
+     */
+    @Override
+    public synchronized int flush() throws IOException {
+        int recorded = recordedEventCount;
+        int failed = failedEventCount;
+        recordedEventCount = 0;
+        failedEventCount = 0;
+        if (FORCE) {
+            force();
+        }
+        writtenEventCount += recorded;
+        if (failed > 0) {
+            throw new IOException(String.format("Failed to write %d usage events to %s", failed, directory));
+        }
+        return recorded;
+    }
+
+    private void force() throws IOException {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+        if (namesOutput != null) {
+            namesOutput.force(false);
+        }
+    }
+
+    /**
+     * Forces the records to disk and closes the files, the mapped regions are released by the garbage collector.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            force();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, String.format("Failed to force the usage records in %s to disk", directory), e);
+        }
+        closeQuietly(counters);
+        closeQuietly(namesOutput);
+        counters = null;
+        namesOutput = null;
+        regions.clear();
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, String.format("Failed to close a usage file in %s", directory), e);
+        }
+    }
+
+    private void open() throws IOException {
+        if (counters != null) {
+            return;
+        }
+        Files.createDirectories(directory.toPath());
+        File namesFile = new File(directory, NAMES_FILE);
+        names = new NameDictionary();
+        records.clear();
+        freeRecords.clear();
+        recordCount = 1;
+        long validNamesSize = namesFile.exists() ? readNames(namesFile) : 0;
+        namesOutput = FileChannel.open(namesFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Drop a name torn by a crash, its id was never used
+        namesOutput.truncate(validNamesSize);
+        namesOutput.position(validNamesSize);
+        counters = FileChannel.open(new File(directory, COUNTERS_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = region(0);
+        if (header.getInt(0) == 0) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, RECORD_SIZE);
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+            IOException failure = new IOException(String.format("%s is not a usage file of version %d", new File(directory, COUNTERS_FILE), VERSION));
+            close();
+            throw failure;
+        }
+    }
+
+    /**
+     * Interns the names in the order of the file, returns the size of the complete entries.
+     */
+    private long readNames(File namesFile) throws IOException {
+        byte[] content = Files.readAllBytes(namesFile.toPath());
+        ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+        DataInputStream input = new DataInputStream(bytes);
+        long validSize = 0;
+        while (bytes.available() > 0) {
+            try {
+                names.intern(input.readUTF());
+            } catch (EOFException | UTFDataFormatException e) {
+                break;
+            }
+            validSize = content.length - bytes.available();
+        }
+        return validSize;
+    }
+
+    /**
+     * Returns the mapped region holding the record, mapping it and growing the file if needed.
+     */
+    private ByteBuffer region(int record) throws IOException {
+        int region = record / REGION_RECORDS;
+        while (regions.size() <= region) {
+            long regionSize = (long) REGION_RECORDS * RECORD_SIZE;
+            regions.add(counters.map(FileChannel.MapMode.READ_WRITE, regions.size() * regionSize, regionSize));
+        }
+        return regions.get(region);
+    }
+
+    private static int offset(int record) {
+        return (record % REGION_RECORDS) * RECORD_SIZE;
+    }
+
+    private static long key(int credential, int name, int kind) {
+        return ((long) credential << 32) | ((long) name << 1) | (kind == KIND_NODE ? 1 : 0);
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Number of used records, one per credential and item or node.
+     */
+    public synchronized int getRecordCount() {
+        return recordCount - 1 - freeRecords.size();
+    }
+
+    public synchronized int getNameCount() {
+        return names.size();
+    }
+
+    /**
+     * Size in bytes of the mapped regions.
+     */
+    public synchronized long getMappedSize() {
+        return (long) regions.size() * REGION_RECORDS * RECORD_SIZE;
+    }
+
+    public synchronized long getWrittenEventCount() {
+        return writtenEventCount;
+    }
+}
@@ -0,0 +1,471 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Usage of credentials on other controllers, kept as grow-only counters per controller so usage exchanged between
+ * controllers can be merged in any order, any number of times.
+ * <p>
+ * Each controller owns its own counters, a merge keeps the higher count and the later last use of every counter of
+ * every controller, so merging a file again changes nothing and files can be passed on from controller to controller.
+ * The counters of a controller only grow within an epoch. A controller whose usage shrinks, as it is cleared or usage
+ * is renamed, removed or evicted, starts a new epoch, and merging counters of a newer epoch replaces the older ones.
+ * Exported files hold the counters of the exporting controller and of all controllers merged into it. They are read
+ * and written as streams, one counter at a time.
+ * <p>
+ * The counters of each controller are kept in a file of the same format, rewritten after a merge changed them.
+ */
+public final class MergedUsage {
+
+    private static final Logger LOGGER = Logger.getLogger(MergedUsage.class.getName());
+
+    private static final int MAGIC = 0x45435558;
+    private static final int VERSION = 2;
+    /**
+     * Version without epochs, its counters are read as of epoch 0.
+     */
+    private static final int VERSION_WITHOUT_EPOCH = 1;
+    private static final byte END = 0;
+    private static final byte CONTROLLER = 1;
+    private static final byte CREDENTIAL = 2;
+    private static final byte TOTAL = 3;
+    private static final byte ITEM = 4;
+    private static final byte NODE = 5;
+
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String LOCAL_EPOCH_FILE = "epoch";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    /**
+     * Counters by controller, a controller's counters are replaced by a merge but never changed.
+     */
+    private final Map<String, ControllerUsage> controllers = new TreeMap<>();
+    /**
+     * Held by a merge, so merges of the same controller don't replace each other's counters.
+     */
+    private final Object mergeLock = new Object();
+    private long localEpoch;
+    private boolean localEpochChanged;
+
+    public MergedUsage(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the counters of the controllers merged so far, a file which can't be read is skipped.
+     */
+    public void load() {
+        File epochFile = new File(directory, LOCAL_EPOCH_FILE);
+        if (epochFile.exists()) {
+            synchronized (this) {
+                try (DataInputStream input = new DataInputStream(new FileInputStream(epochFile))) {
+                    localEpoch = input.readLong();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, String.format("Failed to read the usage epoch from %s, starting a new one", epochFile), e);
+                    localEpoch = System.currentTimeMillis();
+                }
+            }
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            try (InputStream input = new FileInputStream(file)) {
+                merge(null, input);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Failed to read merged usage from %s", file), e);
+            }
+        }
+    }
+
+    /**
+     * Starts a new epoch of the local counters after they shrank, so other controllers drop the counters they merged
+     * before instead of keeping their higher counts. Must be called after the shrinking change is applied. The epoch
+     * is written to disk by the next {@link #persistLocalEpoch()}.
+     */
+    public synchronized void startLocalEpoch() {
+        localEpoch = Math.max(localEpoch + 1, System.currentTimeMillis());
+        localEpochChanged = true;
+    }
+
+    /**
+     * Writes the local epoch to disk if it changed since it was last written.
+     */
+    public synchronized void persistLocalEpoch() throws IOException {
+        if (!localEpochChanged) {
+            return;
+        }
+        Files.createDirectories(directory.toPath());
+        File epochFile = new File(directory, LOCAL_EPOCH_FILE);
+        File temporaryFile = new File(directory, LOCAL_EPOCH_FILE + ".tmp");
+        try (FileOutputStream fileOutput = new FileOutputStream(temporaryFile)) {
+            DataOutputStream output = new DataOutputStream(fileOutput);
+            output.writeLong(localEpoch);
+            output.flush();
+            fileOutput.getChannel().force(true);
+        }
+        Files.move(temporaryFile.toPath(), epochFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        localEpochChanged = false;
+    }
+
+    public synchronized long getLocalEpoch() {
+        return localEpoch;
+    }
+
+    /**
+     * Writes the local counters under the id of this controller along with the counters of all merged controllers.
+     * The local epoch is written to disk first, and the output is written without holding the lock.
+     */
+    public void export(String localControllerId, CredentialUsageStore localUsage, OutputStream output) throws IOException {
+        long exportedEpoch;
+        List<ControllerUsage> mergedControllers;
+        synchronized (this) {
+            // Exporting an epoch lost by a restart would make other controllers skip the later exports
+            persistLocalEpoch();
+            exportedEpoch = localEpoch;
+            mergedControllers = new ArrayList<>(controllers.values());
+        }
+        GZIPOutputStream compressedOutput = new GZIPOutputStream(output, BUFFER_SIZE);
+        DataOutputStream exchange = writeHeader(compressedOutput, localControllerId);
+        exchange.writeByte(CONTROLLER);
+        exchange.writeUTF(localControllerId);
+        exchange.writeLong(exportedEpoch);
+        for (CredentialUsageCounters counters : localUsage.getAllCounters()) {
+            UsageCounter totalUsage = counters.getTotalUsage();
+            exchange.writeByte(CREDENTIAL);
+            exchange.writeUTF(counters.getCredentialId());
+            writeCounter(exchange, TOTAL, null, totalUsage.getCount(), totalUsage.getLastUsed());
+            IOException[] failure = new IOException[1];
+            counters.forEachItemUsage((name, count, firstUsed, lastUsed, lastBuildNumber) -> failure[0] = writeCounter(exchange, ITEM, name, count, lastUsed, failure[0]));
+            counters.forEachNodeUsage((name, count, firstUsed, lastUsed, lastBuildNumber) -> failure[0] = writeCounter(exchange, NODE, name, count, lastUsed, failure[0]));
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        for (ControllerUsage controller : mergedControllers) {
+            if (!controller.controllerId.equals(localControllerId)) {
+                controller.writeTo(exchange);
+            }
+        }
+        exchange.writeByte(END);
+        exchange.flush();
+        compressedOutput.finish();
+    }
+
+    /**
+     * Merges exported counters, returns the number of counters which changed. Counters of this controller are skipped,
+     * its own counters are always the latest, as are counters of an older epoch than the merged ones. Controllers with changed counters are written to disk, unless there is
+     * no local controller id, as when loading.
+     * <p>
+     * Counters are merged into copies of the controllers, which replace them only once the whole export was read, so
+     * a truncated or corrupt export changes nothing.
+     */
+    public int merge(String localControllerId, InputStream input) throws IOException {
+        synchronized (mergeLock) {
+            DataInputStream exchange = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new BufferedInputStream(input, BUFFER_SIZE), BUFFER_SIZE), BUFFER_SIZE));
+            if (exchange.readInt() != MAGIC) {
+                throw new IOException("Not a credential usage export");
+            }
+            int version = exchange.readInt();
+            if (version != VERSION && version != VERSION_WITHOUT_EPOCH) {
+                throw new IOException(String.format("Unsupported credential usage export version %d", version));
+            }
+            exchange.readUTF();
+            exchange.readLong();
+            int changedCounters = 0;
+            Map<String, ControllerUsage> stagedControllers = new HashMap<>();
+            Set<ControllerUsage> changedControllers = new HashSet<>();
+            ControllerUsage controller = null;
+            Map<String, long[]> credential = null;
+            String credentialId = null;
+            for (byte entry = exchange.readByte(); entry != END; entry = exchange.readByte()) {
+                switch (entry) {
+                    case CONTROLLER:
+                        String controllerId = exchange.readUTF();
+                        long epoch = version == VERSION_WITHOUT_EPOCH ? 0 : exchange.readLong();
+                        controller = controllerId.equals(localControllerId) ? null : stagedControllers.computeIfAbsent(controllerId, this::copyController);
+                        if (controller != null && epoch > controller.epoch) {
+                            // The controller's usage shrank since, its older counters may be higher than the current ones
+                            controller.credentials.clear();
+                            controller.epoch = epoch;
+                            changedControllers.add(controller);
+                        } else if (controller != null && epoch < controller.epoch) {
+                            controller = null;
+                        }
+                        credentialId = null;
+                        credential = null;
+                        break;
+                    case CREDENTIAL:
+                        credentialId = exchange.readUTF();
+                        credential = controller != null ? controller.credentials.computeIfAbsent(credentialId, id -> new HashMap<>()) : null;
+                        break;
+                    case TOTAL:
+                    case ITEM:
+                    case NODE:
+                        String key = entry == TOTAL ? "" : (entry == ITEM ? "i" : "n") + exchange.readUTF();
+                        long count = exchange.readLong();
+                        long lastUsed = exchange.readLong();
+                        if (credentialId == null) {
+                            throw new IOException("Counter outside of a credential");
+                        }
+                        if (credential != null && maximize(credential, key, count, lastUsed)) {
+                            changedCounters++;
+                            changedControllers.add(controller);
+                        }
+                        break;
+                    default:
+                        throw new IOException(String.format("Unknown entry %d in credential usage export", entry));
+                }
+            }
+            for (ControllerUsage changedController : changedControllers) {
+                if (localControllerId != null) {
+                    changedController.lastMerged = System.currentTimeMillis();
+                    save(changedController);
+                }
+                synchronized (this) {
+                    controllers.put(changedController.controllerId, changedController);
+                }
+            }
+            return changedCounters;
+        }
+    }
+
+    /**
+     * Copy of the merged counters of the controller to merge into, empty if not merged yet.
+     */
+    private ControllerUsage copyController(String controllerId) {
+        ControllerUsage copy = new ControllerUsage(controllerId);
+        synchronized (this) {
+            ControllerUsage controller = controllers.get(controllerId);
+            if (controller != null) {
+                copy.epoch = controller.epoch;
+                copy.lastMerged = controller.lastMerged;
+                controller.credentials.forEach((credentialId, credential) -> {
+                    Map<String, long[]> counters = new HashMap<>();
+                    credential.forEach((key, counter) -> counters.put(key, counter.clone()));
+                    copy.credentials.put(credentialId, counters);
+                });
+            }
+        }
+        return copy;
+    }
+
+    private static boolean maximize(Map<String, long[]> credential, String key, long count, long lastUsed) {
+        long[] counter = credential.get(key);
+        if (counter == null) {
+            credential.put(key, new long[]{count, lastUsed});
+            return true;
+        }
+        boolean changed = false;
+        if (count > counter[0]) {
+            counter[0] = count;
+            changed = true;
+        }
+        if (lastUsed > counter[1]) {
+            counter[1] = lastUsed;
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void save(ControllerUsage controller) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File file = new File(directory, fileName(controller.controllerId));
+        File temporaryFile = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream fileOutput = new FileOutputStream(temporaryFile)) {
+            GZIPOutputStream compressedOutput = new GZIPOutputStream(fileOutput, BUFFER_SIZE);
+            DataOutputStream exchange = writeHeader(compressedOutput, controller.controllerId);
+            controller.writeTo(exchange);
+            exchange.writeByte(END);
+            exchange.flush();
+            compressedOutput.finish();
+            fileOutput.getChannel().force(true);
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * File name safe for any controller id, the hex of its UTF-8 bytes.
+     */
+    private static String fileName(String controllerId) {
+        StringBuilder fileName = new StringBuilder();
+        for (byte b : controllerId.getBytes(StandardCharsets.UTF_8)) {
+            fileName.append(String.format("%02x", b));
+        }
+        return fileName.append(FILE_SUFFIX).toString();
+    }
+
+    private static DataOutputStream writeHeader(OutputStream output, String controllerId) throws IOException {
+        DataOutputStream exchange = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        exchange.writeInt(MAGIC);
+        exchange.writeInt(VERSION);
+        exchange.writeUTF(controllerId);
+        exchange.writeLong(System.currentTimeMillis());
+        return exchange;
+    }
+
+    private static void writeCounter(DataOutputStream exchange, byte entry, String name, long count, long lastUsed) throws IOException {
+        exchange.writeByte(entry);
+        if (entry != TOTAL) {
+            exchange.writeUTF(name);
+        }
+        exchange.writeLong(count);
+        exchange.writeLong(lastUsed);
+    }
+
+    private static IOException writeCounter(DataOutputStream exchange, byte entry, String name, long count, long lastUsed, IOException failure) {
+        if (failure != null) {
+            return failure;
+        }
+        try {
+            writeCounter(exchange, entry, name, count, lastUsed);
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * The controllers merged so far, by id.
+     */
+    public synchronized List<Controller> getControllers() {
+        List<Controller> result = new ArrayList<>();
+        for (ControllerUsage controller : controllers.values()) {
+            long totalUsage = 0;
+            for (Map<String, long[]> credential : controller.credentials.values()) {
+                long[] total = credential.get("");
+                totalUsage += total != null ? total[0] : 0;
+            }
+            result.add(new Controller(controller.controllerId, controller.credentials.size(), totalUsage, controller.lastMerged));
+        }
+        return result;
+    }
+
+    /**
+     * Total usage of each credential over the merged controllers, by descending usage.
+     */
+    public synchronized List<Map.Entry<String, Long>> getTotalUsage() {
+        Map<String, Long> totalUsage = new HashMap<>();
+        for (ControllerUsage controller : controllers.values()) {
+            controller.credentials.forEach((credentialId, credential) -> {
+                long[] total = credential.get("");
+                totalUsage.merge(credentialId, total != null ? total[0] : 0, Long::sum);
+            });
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(totalUsage.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+        return entries;
+    }
+
+    /**
+     * Total usage of the credential over the merged controllers, without this controller.
+     */
+    public synchronized long getTotalUsage(String credentialId) {
+        long totalUsage = 0;
+        for (ControllerUsage controller : controllers.values()) {
+            Map<String, long[]> credential = controller.credentials.get(credentialId);
+            long[] total = credential != null ? credential.get("") : null;
+            totalUsage += total != null ? total[0] : 0;
+        }
+        return totalUsage;
+    }
+
+    /**
+     * Counters of one controller by credential, keyed {@code ""} for the total, {@code i<name>} for items and
+     * {@code n<name>} for nodes, each holding the count and the last use.
+     */
+    private static final class ControllerUsage {
+
+        private final String controllerId;
+        private final Map<String, Map<String, long[]>> credentials = new HashMap<>();
+        private long epoch;
+        private long lastMerged;
+
+        ControllerUsage(String controllerId) {
+            this.controllerId = controllerId;
+        }
+
+        void writeTo(DataOutputStream exchange) throws IOException {
+            exchange.writeByte(CONTROLLER);
+            exchange.writeUTF(controllerId);
+            exchange.writeLong(epoch);
+            for (Map.Entry<String, Map<String, long[]>> credential : credentials.entrySet()) {
+                exchange.writeByte(CREDENTIAL);
+                exchange.writeUTF(credential.getKey());
+                for (Map.Entry<String, long[]> counter : credential.getValue().entrySet()) {
+                    String key = counter.getKey();
+                    byte entry = key.isEmpty() ? TOTAL : key.charAt(0) == 'i' ? ITEM : NODE;
+                    writeCounter(exchange, entry, key.isEmpty() ? null : key.substring(1), counter.getValue()[0], counter.getValue()[1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Summary of the usage merged from one controller.
+     */
+    public static final class Controller {
+
+        private final String controllerId;
+        private final int credentialCount;
+        private final long totalUsageCount;
+        private final long lastMerged;
+
+        Controller(String controllerId, int credentialCount, long totalUsageCount, long lastMerged) {
+            this.controllerId = controllerId;
+            this.credentialCount = credentialCount;
+            this.totalUsageCount = totalUsageCount;
+            this.lastMerged = lastMerged;
+        }
+
+        public String getControllerId() {
+            return controllerId;
+        }
+
+        public int getCredentialCount() {
+            return credentialCount;
+        }
+
+        public long getTotalUsageCount() {
+            return totalUsageCount;
+        }
+
+        /**
+         * Time of the last merge which changed the usage, 0 if not merged since the start.
+         */
+        public long getLastMerged() {
+            return lastMerged;
+        }
+
+        public Date getLastMergedDate() {
+            return lastMerged == 0 ? null : new Date(lastMerged);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns item, node and credential names to dense int ids, shared by the counters of all credentials so every name
+ * is held once however many credentials it used.
+ * <p>
+ * Looking up a known name doesn't lock or allocate, only a new name takes the lock. Ids are only valid within the
+ * dictionary and are never written to disk, names are.
+ */
+public final class NameDictionary {
+
+    static final int UNKNOWN_ID = -1;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    /**
+     * Returns the id of the name, adding it if it is new.
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    private synchronized int add(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        names[size] = name;
+        // Publishes the name, whoever sees the id sees the name
+        ids.put(name, size);
+        return size++;
+    }
+
+    /**
+     * Returns the id of the name, {@link #UNKNOWN_ID} if it was never interned.
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : UNKNOWN_ID;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,283 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import hudson.model.Item;
+import hudson.model.ModelObject;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import io.jenkins.plugins.enhanced.credentials.CredentialIdResolver;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background scan of all credential stores for credentials without a recorded use in a number of days.
+ * <p>
+ * The scan walks the stores of Jenkins and of every item one context at a time on the {@link Timer}, results are
+ * published as they are found and the scan can be cancelled at any point. Only one scan is started at a time.
+ * <p>
+ * A cancelled or failed scan is resumed by the next one over the same number of days: contexts and stores it already
+ * scanned are skipped and the stale credentials it found are only checked again against the recorded uses.
+ */
+public final class StaleCredentialScan implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(StaleCredentialScan.class.getName());
+
+    private static volatile StaleCredentialScan latestScan;
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    private final int days;
+    private final long startTime;
+    private final long cutoffTime;
+    private final CredentialUsageStore credentialUsageStore;
+    private final List<StaleCredential> staleCredentials = new CopyOnWriteArrayList<>();
+    // The cursor, only used by the thread running the scan
+    private final Set<String> scannedContexts;
+    private final Set<CredentialsStore> scannedStores;
+    private final List<StaleCredential> resumedStaleCredentials;
+    private volatile State state = State.RUNNING;
+    private volatile boolean cancelled;
+    private volatile int scannedContextCount;
+    private volatile int scannedCredentialCount;
+    private volatile long endTime;
+
+    /**
+     * Creates a scan which is {@link #run()} by the caller, {@link #start} runs it in the background.
+     */
+    public StaleCredentialScan(int days, CredentialUsageStore credentialUsageStore) {
+        this.days = days;
+        this.startTime = System.currentTimeMillis();
+        this.cutoffTime = startTime - TimeUnit.DAYS.toMillis(days);
+        this.credentialUsageStore = credentialUsageStore;
+        this.scannedContexts = new HashSet<>();
+        this.scannedStores = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.resumedStaleCredentials = Collections.emptyList();
+    }
+
+    /**
+     * Creates a scan which continues where a finished scan stopped. Credentials added since to the contexts it scanned
+     * are only found by a new scan.
+     */
+    public StaleCredentialScan(StaleCredentialScan stoppedScan) {
+        if (stoppedScan.isRunning()) {
+            throw new IllegalArgumentException("Can't resume a running scan");
+        }
+        this.days = stoppedScan.days;
+        this.startTime = System.currentTimeMillis();
+        this.cutoffTime = startTime - TimeUnit.DAYS.toMillis(days);
+        this.credentialUsageStore = stoppedScan.credentialUsageStore;
+        this.scannedContexts = new HashSet<>(stoppedScan.scannedContexts);
+        this.scannedStores = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.scannedStores.addAll(stoppedScan.scannedStores);
+        this.resumedStaleCredentials = new ArrayList<>(stoppedScan.staleCredentials);
+        this.scannedContextCount = stoppedScan.scannedContextCount;
+        this.scannedCredentialCount = stoppedScan.scannedCredentialCount;
+    }
+
+    /**
+     * Starts a scan unless one is running, returns the running scan. A cancelled or failed scan over the same number of
+     * days is resumed.
+     */
+    public static synchronized StaleCredentialScan start(int days, CredentialUsageStore credentialUsageStore) {
+        StaleCredentialScan scan = latestScan;
+        if (scan != null && scan.getState() == State.RUNNING) {
+            return scan;
+        }
+        if (scan != null && (scan.getState() == State.CANCELLED || scan.getState() == State.FAILED)
+                && scan.days == days && scan.credentialUsageStore == credentialUsageStore) {
+            scan = new StaleCredentialScan(scan);
+        } else {
+            scan = new StaleCredentialScan(days, credentialUsageStore);
+        }
+        latestScan = scan;
+        Timer.get().submit(scan);
+        return scan;
+    }
+
+    /**
+     * The running or the last finished scan, {@code null} if none was started.
+     */
+    public static StaleCredentialScan getLatest() {
+        return latestScan;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        LOGGER.fine(String.format("Scanning for credentials unused for %d days from %d scanned contexts", days, scannedContexts.size()));
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            // Uses recorded since the stopped scan are not in its results
+            for (StaleCredential staleCredential : resumedStaleCredentials) {
+                StaleCredential stillStale = findStale(staleCredential.getCredentialId(), staleCredential.getStoreContext(), staleCredential.getType());
+                if (stillStale != null) {
+                    staleCredentials.add(stillStale);
+                }
+            }
+            Jenkins jenkins = Jenkins.get();
+            scanContext(jenkins, jenkins.getFullName());
+            for (Item item : jenkins.allItems(Item.class)) {
+                if (cancelled) {
+                    break;
+                }
+                scanContext(item, item.getFullName());
+            }
+            state = cancelled ? State.CANCELLED : State.COMPLETED;
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to scan for stale credentials", e);
+            state = State.FAILED;
+        } finally {
+            endTime = System.currentTimeMillis();
+        }
+        LOGGER.fine(String.format("Stale credential scan %s after %d contexts, %d of %d credentials are stale",
+                state, scannedContextCount, staleCredentials.size(), scannedCredentialCount));
+    }
+
+    private void scanContext(ModelObject context, String fullName) {
+        if (cancelled || scannedContexts.contains(fullName)) {
+            return;
+        }
+        // Stores of parent folders and of Jenkins are returned for every item below them
+        for (CredentialsStore store : CredentialsProvider.lookupStores(context)) {
+            if (cancelled) {
+                // Scanned again when resumed
+                return;
+            }
+            if (scannedStores.contains(store)) {
+                continue;
+            }
+            // A store is only part of the cursor once fully scanned, a failed scan scans it again when resumed
+            List<StaleCredential> storeStaleCredentials = new ArrayList<>();
+            int storeCredentialCount = 0;
+            for (Domain domain : store.getDomains()) {
+                for (Credentials credentials : store.getCredentials(domain)) {
+                    scanCredentials(store, credentials, storeStaleCredentials);
+                    storeCredentialCount++;
+                }
+            }
+            staleCredentials.addAll(storeStaleCredentials);
+            scannedCredentialCount += storeCredentialCount;
+            scannedStores.add(store);
+        }
+        scannedContexts.add(fullName);
+        scannedContextCount++;
+    }
+
+    private void scanCredentials(CredentialsStore store, Credentials credentials, List<StaleCredential> storeStaleCredentials) {
+        String credentialId;
+        try {
+            credentialId = CredentialIdResolver.resolveId(credentials);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Skipping credential without id", e);
+            return;
+        }
+        StaleCredential staleCredential = findStale(credentialId, store.getContextDisplayName(), credentials.getClass().getSimpleName());
+        if (staleCredential != null) {
+            storeStaleCredentials.add(staleCredential);
+        }
+    }
+
+    private StaleCredential findStale(String credentialId, String storeContext, String type) {
+        CredentialUsageCounters counters = credentialUsageStore.getCounters(credentialId);
+        long lastUsed = counters != null ? counters.getTotalUsage().getLastUsed() : UsageCounter.UNKNOWN;
+        // Used before last use times were recorded, can't tell
+        if (lastUsed == UsageCounter.UNKNOWN && counters != null && counters.getTotalUsageCount() > 0) {
+            return null;
+        }
+        return lastUsed < cutoffTime ? new StaleCredential(credentialId, storeContext, type, lastUsed) : null;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public Date getStartDate() {
+        return new Date(startTime);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    public int getScannedContextCount() {
+        return scannedContextCount;
+    }
+
+    public int getScannedCredentialCount() {
+        return scannedCredentialCount;
+    }
+
+    public long getDuration() {
+        return (state == State.RUNNING ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    /**
+     * Stale credentials found so far.
+     */
+    public List<StaleCredential> getStaleCredentials() {
+        return new ArrayList<>(staleCredentials);
+    }
+
+    /**
+     * A credential without a recorded use in the scanned period.
+     */
+    public static final class StaleCredential {
+
+        private final String credentialId;
+        private final String storeContext;
+        private final String type;
+        private final long lastUsed;
+
+        StaleCredential(String credentialId, String storeContext, String type, long lastUsed) {
+            this.credentialId = credentialId;
+            this.storeContext = storeContext;
+            this.type = type;
+            this.lastUsed = lastUsed;
+        }
+
+        public String getCredentialId() {
+            return credentialId;
+        }
+
+        public String getStoreContext() {
+            return storeContext;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Time of the last use, {@code null} if never used.
+         */
+        public Date getLastUsedDate() {
+            return lastUsed == UsageCounter.UNKNOWN ? null : new Date(lastUsed);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import jenkins.util.SystemProperties;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * The items or nodes using a credential the most, tracked with the Space-Saving algorithm.
+ * <p>
+ * Twice as many names as reported are kept in fixed slots. A name not in a slot takes over the slot with the lowest
+ * count and inherits that count as its error, so a count is at most its error too high, and every name used more
+ * than {@code total / slots} times has a slot.
+ */
+public final class TopUsage {
+
+    /**
+     * Number of names reported.
+     */
+    static final int SIZE = Math.max(1, SystemProperties.getInteger(TopUsage.class.getName() + ".size", 20));
+
+    private final String[] names;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int usedSlots;
+
+    public TopUsage() {
+        this.names = new String[2 * SIZE];
+        this.counts = new long[2 * SIZE];
+        this.errors = new long[2 * SIZE];
+    }
+
+    public synchronized void add(String name, long count) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            counts[slot] += count;
+        } else if (usedSlots < names.length) {
+            put(usedSlots++, name, count, 0);
+        } else {
+            int minimum = 0;
+            for (int i = 1; i < usedSlots; i++) {
+                if (counts[i] < counts[minimum]) {
+                    minimum = i;
+                }
+            }
+            slots.remove(names[minimum]);
+            put(minimum, name, counts[minimum] + count, counts[minimum]);
+        }
+    }
+
+    /**
+     * Moves the count of the name to the new name, adding it to the count of the new name if that has a slot.
+     */
+    public synchronized void rename(String name, String newName) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            return;
+        }
+        long count = counts[slot];
+        long error = errors[slot];
+        removeSlot(slot);
+        Integer newSlot = slots.get(newName);
+        if (newSlot != null) {
+            counts[newSlot] += count;
+            errors[newSlot] += error;
+        } else {
+            put(usedSlots++, newName, count, error);
+        }
+    }
+
+    public synchronized void remove(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            removeSlot(slot);
+        }
+    }
+
+    /**
+     * Frees the slot by moving the last used slot into it.
+     */
+    private void removeSlot(int slot) {
+        slots.remove(names[slot]);
+        int last = --usedSlots;
+        if (slot != last) {
+            put(slot, names[last], counts[last], errors[last]);
+        }
+        names[last] = null;
+    }
+
+    private void put(int slot, String name, long count, long error) {
+        names[slot] = name;
+        counts[slot] = count;
+        errors[slot] = error;
+        slots.put(name, slot);
+    }
+
+    /**
+     * The {@code size} names used the most, by descending count.
+     */
+    public List<Entry> getEntries() {
+        Entry[] entries;
+        synchronized (this) {
+            entries = new Entry[usedSlots];
+            for (int i = 0; i < usedSlots; i++) {
+                entries[i] = new Entry(names[i], counts[i], errors[i]);
+            }
+        }
+        Arrays.sort(entries, Comparator.comparingLong(Entry::getCount).reversed());
+        return Arrays.asList(entries).subList(0, Math.min(SIZE, entries.length));
+    }
+
+    /**
+     * Fills the slots from exact counts, e.g. when reading usage which was stored without them. Only needs to look at
+     * each count once and keeps no more than the slots in memory.
+     */
+    public synchronized void rebuild(Consumer<UsageVisitor> forEach) {
+        PriorityQueue<Entry> heaviest = new PriorityQueue<>(names.length + 1, Comparator.comparingLong(Entry::getCount));
+        forEach.accept((name, count, firstUsed, lastUsed, lastBuildNumber) -> {
+            heaviest.add(new Entry(name, count, 0));
+            if (heaviest.size() > names.length) {
+                heaviest.poll();
+            }
+        });
+        slots.clear();
+        usedSlots = 0;
+        for (Entry entry : heaviest) {
+            put(usedSlots++, entry.getName(), entry.getCount(), 0);
+        }
+    }
+
+    public synchronized void writeTo(DataOutputStream output) throws IOException {
+        output.writeInt(usedSlots);
+        for (int i = 0; i < usedSlots; i++) {
+            output.writeUTF(names[i]);
+            output.writeLong(counts[i]);
+            output.writeLong(errors[i]);
+        }
+    }
+
+    /**
+     * Restores the slots written by {@link #writeTo(DataOutputStream)}, the slots are expected to be empty.
+     */
+    public synchronized void readFrom(DataInputStream input) throws IOException {
+        int entries = input.readInt();
+        for (int i = 0; i < entries; i++) {
+            String name = input.readUTF();
+            long count = input.readLong();
+            long error = input.readLong();
+            // More slots than now configured, keep the first ones
+            if (usedSlots < names.length && !slots.containsKey(name)) {
+                put(usedSlots++, name, count, error);
+            }
+        }
+    }
+
+    /**
+     * A name with its count, which is at most {@link #getError()} too high.
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final long count;
+        private final long error;
+
+        Entry(String name, long count, long error) {
+            this.name = name;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * Number of uses the name certainly had.
+         */
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import java.util.Date;
+
+/**
+ * Use count of a credential by one item or node, with the time of the first and the last use.
+ * <p>
+ * Only changed by the usage accounting, one change at a time, and read from any thread.
+ */
+public final class UsageCounter {
+
+    /**
+     * Time of a use which is not known, e.g. for usage counted before times were recorded.
+     */
+    public static final long UNKNOWN = 0;
+
+    private volatile long count;
+    private volatile long firstUsed = UNKNOWN;
+    private volatile long lastUsed = UNKNOWN;
+    private volatile int lastBuildNumber = UsageEvent.NO_BUILD_NUMBER;
+
+    /**
+     * Counts a use, returns whether it is the latest use so far.
+     */
+    public boolean recordUse(long timestamp, int buildNumber) {
+        count++;
+        return recordTimes(timestamp, timestamp, buildNumber);
+    }
+
+    /**
+     * Adds uses read back from disk, times are {@link #UNKNOWN} if they were not recorded. Returns whether the
+     * uses include the latest one so far.
+     */
+    public boolean add(long count, long firstUsed, long lastUsed, int lastBuildNumber) {
+        this.count += count;
+        return recordTimes(firstUsed, lastUsed, lastBuildNumber);
+    }
+
+    private boolean recordTimes(long firstUsed, long lastUsed, int lastBuildNumber) {
+        if (firstUsed != UNKNOWN && (this.firstUsed == UNKNOWN || firstUsed < this.firstUsed)) {
+            this.firstUsed = firstUsed;
+        }
+        if (lastUsed == UNKNOWN || lastUsed < this.lastUsed) {
+            return false;
+        }
+        this.lastUsed = lastUsed;
+        this.lastBuildNumber = lastBuildNumber;
+        return true;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFirstUsed() {
+        return firstUsed;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public Date getFirstUsedDate() {
+        return firstUsed == UNKNOWN ? null : new Date(firstUsed);
+    }
+
+    public Date getLastUsedDate() {
+        return lastUsed == UNKNOWN ? null : new Date(lastUsed);
+    }
+
+    /**
+     * Number of the build of the last use, {@link UsageEvent#NO_BUILD_NUMBER} if not used by a build.
+     */
+    public int getLastBuildNumber() {
+        return lastBuildNumber;
+    }
+}
@@ -0,0 +1,194 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import java.util.Arrays;
+
+/**
+ * Usage counters of a credential by {@link NameDictionary} id, in open addressing arrays with linear probing.
+ * <p>
+ * A counter takes 32 bytes in the arrays, with no object per counter or per name. Counting a use doesn't allocate
+ * unless the table grows. All usage of a credential is counted by the single usage accounting thread, so access is
+ * simply synchronized.
+ */
+public final class UsageCounterTable {
+
+    /**
+     * Receives the counters of a table without a {@link UsageCounter} per counter.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        void visit(int nameId, long count, long firstUsed, long lastUsed, int lastBuildNumber);
+    }
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] nameIds;
+    private long[] counts;
+    private long[] firstUsed;
+    private long[] lastUsed;
+    private int[] lastBuildNumbers;
+    private int size;
+
+    public UsageCounterTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        nameIds = new int[capacity];
+        counts = new long[capacity];
+        firstUsed = new long[capacity];
+        lastUsed = new long[capacity];
+        lastBuildNumbers = new int[capacity];
+        Arrays.fill(nameIds, EMPTY);
+        Arrays.fill(lastBuildNumbers, UsageEvent.NO_BUILD_NUMBER);
+    }
+
+    public synchronized void recordUse(int nameId, long timestamp, int buildNumber) {
+        add(nameId, 1, timestamp, timestamp, buildNumber);
+    }
+
+    /**
+     * Adds uses, times are {@link UsageCounter#UNKNOWN} if they were not recorded.
+     */
+    public synchronized void add(int nameId, long count, long firstUsed, long lastUsed, int lastBuildNumber) {
+        int slot = slotFor(nameId);
+        counts[slot] += count;
+        if (firstUsed != UsageCounter.UNKNOWN && (this.firstUsed[slot] == UsageCounter.UNKNOWN || firstUsed < this.firstUsed[slot])) {
+            this.firstUsed[slot] = firstUsed;
+        }
+        if (lastUsed != UsageCounter.UNKNOWN && lastUsed >= this.lastUsed[slot]) {
+            this.lastUsed[slot] = lastUsed;
+            this.lastBuildNumbers[slot] = lastBuildNumber;
+        }
+    }
+
+    /**
+     * Returns a detached copy of the counter, {@code null} if there is none for the name.
+     */
+    public synchronized UsageCounter get(int nameId) {
+        int slot = find(nameId);
+        if (nameIds[slot] == EMPTY) {
+            return null;
+        }
+        UsageCounter counter = new UsageCounter();
+        counter.add(counts[slot], firstUsed[slot], lastUsed[slot], lastBuildNumbers[slot]);
+        return counter;
+    }
+
+    /**
+     * Removes the counter of the name, then hands it to the visitor, which may add to the table again. Returns whether
+     * there was one.
+     */
+    public synchronized boolean remove(int nameId, Visitor removed) {
+        int slot = find(nameId);
+        if (nameIds[slot] == EMPTY) {
+            return false;
+        }
+        long count = counts[slot];
+        long firstUsed = this.firstUsed[slot];
+        long lastUsed = this.lastUsed[slot];
+        int lastBuildNumber = lastBuildNumbers[slot];
+        // Shift the following counters back into the hole so no probe sequence is cut short
+        int mask = nameIds.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; nameIds[next] != EMPTY; next = (next + 1) & mask) {
+            if (((next - home(nameIds[next])) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+        }
+        nameIds[hole] = EMPTY;
+        counts[hole] = 0;
+        this.firstUsed[hole] = UsageCounter.UNKNOWN;
+        this.lastUsed[hole] = UsageCounter.UNKNOWN;
+        lastBuildNumbers[hole] = UsageEvent.NO_BUILD_NUMBER;
+        size--;
+        // Give the memory of evicted counters back, halving leaves the table a quarter full
+        if (nameIds.length > INITIAL_CAPACITY && 8 * size < nameIds.length) {
+            resize(nameIds.length / 2);
+        }
+        // Only now, a visitor adding to the table may resize it
+        removed.visit(nameId, count, firstUsed, lastUsed, lastBuildNumber);
+        return true;
+    }
+
+    private void move(int from, int to) {
+        nameIds[to] = nameIds[from];
+        counts[to] = counts[from];
+        firstUsed[to] = firstUsed[from];
+        lastUsed[to] = lastUsed[from];
+        lastBuildNumbers[to] = lastBuildNumbers[from];
+    }
+
+    public synchronized void forEach(Visitor visitor) {
+        for (int slot = 0; slot < nameIds.length; slot++) {
+            if (nameIds[slot] != EMPTY) {
+                visitor.visit(nameIds[slot], counts[slot], firstUsed[slot], lastUsed[slot], lastBuildNumbers[slot]);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Number of counters the table has room for before it grows.
+     */
+    public synchronized int capacity() {
+        return nameIds.length / 2;
+    }
+
+    public synchronized void clear() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    private int slotFor(int nameId) {
+        int slot = find(nameId);
+        if (nameIds[slot] == EMPTY) {
+            // Keep the table at most half full so probe sequences stay short
+            if (2 * (size + 1) > nameIds.length) {
+                resize(nameIds.length * 2);
+                slot = find(nameId);
+            }
+            nameIds[slot] = nameId;
+            size++;
+        }
+        return slot;
+    }
+
+    private int find(int nameId) {
+        int mask = nameIds.length - 1;
+        int slot = home(nameId);
+        while (nameIds[slot] != EMPTY && nameIds[slot] != nameId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int home(int nameId) {
+        // Ids are dense, spread them so neighbours don't form long runs
+        return (nameId * 0x9E3779B9) & (nameIds.length - 1);
+    }
+
+    private void resize(int capacity) {
+        int[] oldNameIds = nameIds;
+        long[] oldCounts = counts;
+        long[] oldFirstUsed = firstUsed;
+        long[] oldLastUsed = lastUsed;
+        int[] oldLastBuildNumbers = lastBuildNumbers;
+        allocate(capacity);
+        for (int oldSlot = 0; oldSlot < oldNameIds.length; oldSlot++) {
+            if (oldNameIds[oldSlot] != EMPTY) {
+                int slot = find(oldNameIds[oldSlot]);
+                nameIds[slot] = oldNameIds[oldSlot];
+                counts[slot] = oldCounts[oldSlot];
+                firstUsed[slot] = oldFirstUsed[oldSlot];
+                lastUsed[slot] = oldLastUsed[oldSlot];
+                lastBuildNumbers[slot] = oldLastBuildNumbers[oldSlot];
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+/**
+ * A single change of the usage data, as written to the {@link UsageJournal}.
+ */
+public final class UsageEvent {
+
+    public static final int NO_BUILD_NUMBER = -1;
+
+    /**
+     * Written by its ordinal, new types go last.
+     */
+    public enum Type {
+        ITEM,
+        NODE,
+        CLEAR,
+        /**
+         * Moves the usage of an item of all credentials to a new name, merging it with usage under the new name.
+         */
+        RENAME_ITEM,
+        RENAME_NODE,
+        /**
+         * Drops the usage of an item of all credentials, the total usage of the credentials is kept.
+         */
+        REMOVE_ITEM,
+        REMOVE_NODE,
+        /**
+         * Folds the usage of an item of a single credential into its {@link UsageRetention#OTHER_ITEMS} usage.
+         */
+        EVICT_ITEM,
+        EVICT_NODE
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final String credentialId;
+    private final String name;
+    private final String newName;
+    private final int buildNumber;
+
+    public UsageEvent(Type type, long timestamp, String credentialId, String name, int buildNumber) {
+        this(type, timestamp, credentialId, name, null, buildNumber);
+    }
+
+    private UsageEvent(Type type, long timestamp, String credentialId, String name, String newName, int buildNumber) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.credentialId = credentialId;
+        this.name = name;
+        this.newName = newName;
+        this.buildNumber = buildNumber;
+    }
+
+    public static UsageEvent itemUsage(String credentialId, String itemName, int buildNumber) {
+        return new UsageEvent(Type.ITEM, System.currentTimeMillis(), credentialId, itemName, buildNumber);
+    }
+
+    public static UsageEvent nodeUsage(String credentialId, String nodeName) {
+        return new UsageEvent(Type.NODE, System.currentTimeMillis(), credentialId, nodeName, NO_BUILD_NUMBER);
+    }
+
+    public static UsageEvent clear() {
+        return new UsageEvent(Type.CLEAR, System.currentTimeMillis(), null, null, NO_BUILD_NUMBER);
+    }
+
+    /**
+     * Renames usage, {@code type} is {@link Type#RENAME_ITEM} or {@link Type#RENAME_NODE}.
+     */
+    public static UsageEvent rename(Type type, long timestamp, String name, String newName) {
+        return new UsageEvent(type, timestamp, null, name, newName, NO_BUILD_NUMBER);
+    }
+
+    public static UsageEvent renameItem(String itemName, String newItemName) {
+        return rename(Type.RENAME_ITEM, System.currentTimeMillis(), itemName, newItemName);
+    }
+
+    public static UsageEvent renameNode(String nodeName, String newNodeName) {
+        return rename(Type.RENAME_NODE, System.currentTimeMillis(), nodeName, newNodeName);
+    }
+
+    public static UsageEvent removeItem(String itemName) {
+        return new UsageEvent(Type.REMOVE_ITEM, System.currentTimeMillis(), null, itemName, NO_BUILD_NUMBER);
+    }
+
+    public static UsageEvent removeNode(String nodeName) {
+        return new UsageEvent(Type.REMOVE_NODE, System.currentTimeMillis(), null, nodeName, NO_BUILD_NUMBER);
+    }
+
+    public static UsageEvent evictItem(String credentialId, String itemName) {
+        return new UsageEvent(Type.EVICT_ITEM, System.currentTimeMillis(), credentialId, itemName, NO_BUILD_NUMBER);
+    }
+
+    public static UsageEvent evictNode(String credentialId, String nodeName) {
+        return new UsageEvent(Type.EVICT_NODE, System.currentTimeMillis(), credentialId, nodeName, NO_BUILD_NUMBER);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Id of the used credential, {@code null} unless the event is a use or an eviction.
+     */
+    public String getCredentialId() {
+        return credentialId;
+    }
+
+    /**
+     * Full name of the item or name of the node, {@code null} for {@link Type#CLEAR}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Name the usage is renamed to, {@code null} unless the event is a rename.
+     */
+    public String getNewName() {
+        return newName;
+    }
+
+    /**
+     * Number of the build using the credential, {@link #NO_BUILD_NUMBER} if not used by a build.
+     */
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+}
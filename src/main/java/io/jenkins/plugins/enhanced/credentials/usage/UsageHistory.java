@@ -0,0 +1,239 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import jenkins.util.SystemProperties;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Usage counts of a credential over time, in minute, hour and day buckets held in fixed-size rings.
+ * <p>
+ * Uses are counted in the bucket of their minute. Completed minutes are rolled up into their hour and completed hours
+ * into their day the next time the history is used or read, days older than {@code retentionDays} are dropped. The
+ * memory used per credential is fixed, the buckets take {@code 60 * 8 + 48 * 16 + retentionDays * 16} bytes.
+ */
+public final class UsageHistory {
+
+    static final int RETENTION_DAYS = Math.max(1, SystemProperties.getInteger(UsageHistory.class.getName() + ".retentionDays", 90));
+
+    private static final int MINUTES = 60;
+    private static final int HOURS = 48;
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final byte GRANULARITY_MINUTE = 0;
+    private static final byte GRANULARITY_HOUR = 1;
+    private static final byte GRANULARITY_DAY = 2;
+
+    /**
+     * Counts of the minutes from {@link #rolledUpToMinute} on, indexed by minute modulo {@link #MINUTES}.
+     */
+    private final long[] minuteCounts = new long[MINUTES];
+    private final long[] hourCounts = new long[HOURS];
+    private final long[] hourEpochs = new long[HOURS];
+    private final long[] dayCounts = new long[RETENTION_DAYS];
+    private final long[] dayEpochs = new long[RETENTION_DAYS];
+
+    /**
+     * First minute not rolled up into its hour yet.
+     */
+    private long rolledUpToMinute;
+
+    /**
+     * First hour not rolled up into its day yet.
+     */
+    private long rolledUpToHour;
+
+    public UsageHistory() {
+        long now = System.currentTimeMillis();
+        this.rolledUpToMinute = now / MINUTE_MILLIS;
+        this.rolledUpToHour = now / HOUR_MILLIS;
+        Arrays.fill(hourEpochs, -1);
+        Arrays.fill(dayEpochs, -1);
+    }
+
+    /**
+     * Counts a use at the given time, which may lie in the past when usage is replayed.
+     * <p>
+     * The minute is checked and counted under the lock, a concurrent roll up could otherwise move past the minute and
+     * leave the use in its slot to be counted an hour late.
+     */
+    public synchronized void record(long timestamp, long count) {
+        long now = System.currentTimeMillis();
+        rollUp(now / MINUTE_MILLIS);
+        long minute = Math.min(timestamp, now) / MINUTE_MILLIS;
+        if (minute >= rolledUpToMinute) {
+            minuteCounts[(int) (minute % MINUTES)] += count;
+        } else {
+            recordRolledUp(minute, count);
+        }
+    }
+
+    private void recordRolledUp(long minute, long count) {
+        long hour = minute * MINUTE_MILLIS / HOUR_MILLIS;
+        addToHour(hour, count);
+        if (hour < rolledUpToHour) {
+            addToDay(hour * HOUR_MILLIS / DAY_MILLIS, count);
+        }
+    }
+
+    private void rollUp(long nowMinute) {
+        long firstMinute = rolledUpToMinute;
+        if (nowMinute <= firstMinute) {
+            return;
+        }
+        for (long minute = firstMinute; minute < Math.min(nowMinute, firstMinute + MINUTES); minute++) {
+            int slot = (int) (minute % MINUTES);
+            long count = minuteCounts[slot];
+            minuteCounts[slot] = 0;
+            if (count > 0) {
+                addToHour(minute * MINUTE_MILLIS / HOUR_MILLIS, count);
+            }
+        }
+        rolledUpToMinute = nowMinute;
+        long nowHour = nowMinute * MINUTE_MILLIS / HOUR_MILLIS;
+        for (long hour = rolledUpToHour; hour < Math.min(nowHour, rolledUpToHour + HOURS); hour++) {
+            int slot = (int) (hour % HOURS);
+            if (hourEpochs[slot] == hour && hourCounts[slot] > 0) {
+                addToDay(hour * HOUR_MILLIS / DAY_MILLIS, hourCounts[slot]);
+            }
+        }
+        rolledUpToHour = Math.max(rolledUpToHour, nowHour);
+    }
+
+    private void addToHour(long hour, long count) {
+        add(hourCounts, hourEpochs, hour, count);
+    }
+
+    private void addToDay(long day, long count) {
+        add(dayCounts, dayEpochs, day, count);
+    }
+
+    private static void add(long[] counts, long[] epochs, long epoch, long count) {
+        int slot = (int) (epoch % counts.length);
+        if (epochs[slot] < epoch) {
+            epochs[slot] = epoch;
+            counts[slot] = 0;
+        } else if (epochs[slot] > epoch) {
+            // Older than the ring holds
+            return;
+        }
+        counts[slot] += count;
+    }
+
+    public long getLast24Hours() {
+        return countLastHours(24);
+    }
+
+    public long getLast7Days() {
+        return countLastDays(7);
+    }
+
+    public long getLast30Days() {
+        return countLastDays(30);
+    }
+
+    /**
+     * Uses in the current and the previous {@code hours - 1} hours, at most {@value #HOURS} hours back.
+     */
+    public synchronized long countLastHours(int hours) {
+        long nowMinute = System.currentTimeMillis() / MINUTE_MILLIS;
+        rollUp(nowMinute);
+        long nowHour = nowMinute * MINUTE_MILLIS / HOUR_MILLIS;
+        return sum(hourCounts, hourEpochs, nowHour - hours) + sumMinutes();
+    }
+
+    /**
+     * Uses in the current and the previous {@code days - 1} days, at most {@code retentionDays} days back.
+     */
+    public synchronized long countLastDays(int days) {
+        long nowMinute = System.currentTimeMillis() / MINUTE_MILLIS;
+        rollUp(nowMinute);
+        long nowDay = nowMinute * MINUTE_MILLIS / DAY_MILLIS;
+        // The current hour is not rolled up into its day yet
+        return sum(dayCounts, dayEpochs, nowDay - days) + sum(hourCounts, hourEpochs, rolledUpToHour - 1) + sumMinutes();
+    }
+
+    private static long sum(long[] counts, long[] epochs, long afterEpoch) {
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (epochs[i] > afterEpoch) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+
+    private long sumMinutes() {
+        long sum = 0;
+        for (long count : minuteCounts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /**
+     * Writes all non empty buckets.
+     */
+    public synchronized void writeTo(DataOutputStream output) throws IOException {
+        // Minutes are kept by slot, their epoch follows from the first minute not rolled up
+        long[] minuteEpochs = new long[MINUTES];
+        for (long minute = rolledUpToMinute; minute < rolledUpToMinute + MINUTES; minute++) {
+            minuteEpochs[(int) (minute % MINUTES)] = minute;
+        }
+        output.writeLong(rolledUpToMinute);
+        output.writeLong(rolledUpToHour);
+        output.writeInt(countBuckets(minuteCounts) + countBuckets(hourCounts) + countBuckets(dayCounts));
+        writeBuckets(output, GRANULARITY_MINUTE, minuteCounts, minuteEpochs);
+        writeBuckets(output, GRANULARITY_HOUR, hourCounts, hourEpochs);
+        writeBuckets(output, GRANULARITY_DAY, dayCounts, dayEpochs);
+    }
+
+    /**
+     * Restores the buckets written by {@link #writeTo(DataOutputStream)}, the history is expected to be empty.
+     */
+    public synchronized void readFrom(DataInputStream input) throws IOException {
+        rolledUpToMinute = input.readLong();
+        rolledUpToHour = input.readLong();
+        int buckets = input.readInt();
+        for (int i = 0; i < buckets; i++) {
+            byte granularity = input.readByte();
+            long epoch = input.readLong();
+            long count = input.readLong();
+            if (granularity == GRANULARITY_MINUTE) {
+                if (epoch >= rolledUpToMinute && epoch < rolledUpToMinute + MINUTES) {
+                    minuteCounts[(int) (epoch % MINUTES)] += count;
+                }
+            } else if (granularity == GRANULARITY_HOUR) {
+                addToHour(epoch, count);
+            } else if (granularity == GRANULARITY_DAY) {
+                addToDay(epoch, count);
+            } else {
+                throw new IOException(String.format("Unknown usage history granularity %d", granularity));
+            }
+        }
+    }
+
+    private static int countBuckets(long[] counts) {
+        int buckets = 0;
+        for (long count : counts) {
+            buckets += count > 0 ? 1 : 0;
+        }
+        return buckets;
+    }
+
+    private static void writeBuckets(DataOutputStream output, byte granularity, long[] counts, long[] epochs) throws IOException {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                output.writeByte(granularity);
+                output.writeLong(epochs[i]);
+                output.writeLong(counts[i]);
+            }
+        }
+    }
+}
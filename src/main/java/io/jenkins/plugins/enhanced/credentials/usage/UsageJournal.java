@@ -0,0 +1,640 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only journal of {@link UsageEvent}s, split into numbered segments and compacted into snapshots.
+ * <p>
+ * Events are buffered in memory by {@link #record(UsageEvent)} and appended by {@link #flush()}, which is called by a
+ * single background writer, in the order they were recorded, so they are replayed in the order they were applied. A segment is sealed once it reaches {@code segmentSize} bytes, and once
+ * {@code compactAfterSegments} segments are sealed they are folded into a new snapshot in the background. The state is
+ * recovered by reading the latest snapshot and replaying the segments written after it.
+ * <p>
+ * Every record carries its length and a CRC, a record torn by a crash ends the replay of its segment.
+ * <p>
+ * A snapshot starts with its version and compression, followed by the segment it covers and a schema naming the
+ * entries it may contain, so a snapshot written by a newer version is rejected with the entries this one doesn't know.
+ * Snapshots are read and written as streams, only the usage read into memory is held in full.
+ */
+public final class UsageJournal implements UsagePersistence {
+
+    private static final Logger LOGGER = Logger.getLogger(UsageJournal.class.getName());
+
+    private static final String PROPERTY_PREFIX = UsageJournal.class.getName();
+
+    /**
+     * How the body of a snapshot is compressed, written by its ordinal.
+     */
+    public enum SnapshotCompression {
+        NONE,
+        GZIP
+    }
+
+    static final long SEGMENT_SIZE = SystemProperties.getLong(PROPERTY_PREFIX + ".segmentSize", 4L * 1024 * 1024);
+
+    static final int COMPACT_AFTER_SEGMENTS = SystemProperties.getInteger(PROPERTY_PREFIX + ".compactAfterSegments", 4);
+
+    static final SnapshotCompression SNAPSHOT_COMPRESSION = parseSnapshotCompression(SystemProperties.getString(PROPERTY_PREFIX + ".snapshotCompression", SnapshotCompression.GZIP.name()));
+
+    private static final int SNAPSHOT_MAGIC = 0x45435553;
+    private static final int SNAPSHOT_VERSION = 6;
+    private static final byte SNAPSHOT_END = 0;
+    private static final byte SNAPSHOT_CREDENTIAL = 1;
+    private static final byte SNAPSHOT_ITEM = 2;
+    private static final byte SNAPSHOT_NODE = 3;
+    private static final byte SNAPSHOT_HISTORY = 4;
+    private static final byte SNAPSHOT_SKETCH = 5;
+    private static final byte SNAPSHOT_TOP_ITEMS = 6;
+    private static final byte SNAPSHOT_TOP_NODES = 7;
+    /**
+     * Names of the entries by tag, written as the schema of a snapshot.
+     */
+    private static final String[] SNAPSHOT_ENTRIES = {"end", "credential", "item", "node", "history", "sketch", "topItems", "topNodes"};
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final int SNAPSHOT_BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final ConcurrentLinkedQueue<UsageEvent> buffer = new ConcurrentLinkedQueue<>();
+    private final List<UsageEvent> batch = new ArrayList<>();
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final CRC32 crc = new CRC32();
+    private final Object compactionLock = new Object();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final AtomicLong writtenEventCount = new AtomicLong();
+    private final AtomicLong compactionCount = new AtomicLong();
+
+    /**
+     * Number of the segment appended to, all lower numbered segments are sealed.
+     */
+    private volatile long activeSegment;
+    private volatile long snapshotSegment = -1;
+    private volatile long lastCompactionDuration;
+    private DataOutputStream output;
+    private long activeSegmentSize;
+
+    public UsageJournal(File directory) {
+        this.directory = directory;
+    }
+
+    private static SnapshotCompression parseSnapshotCompression(String value) {
+        try {
+            return SnapshotCompression.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning(String.format("Unknown snapshot compression:%s, using %s", value, SnapshotCompression.GZIP));
+            return SnapshotCompression.GZIP;
+        }
+    }
+
+    /**
+     * Whether neither a snapshot nor a segment has been written yet.
+     */
+    @Override
+    public boolean isEmpty() {
+        return list(SNAPSHOT_PREFIX).isEmpty() && list(SEGMENT_PREFIX).isEmpty();
+    }
+
+    /**
+     * Reads the latest snapshot and replays the segments written after it, new events go to a new segment.
+     */
+    @Override
+    public CredentialUsageStore recover() throws IOException {
+        CredentialUsageStore credentialUsageStore = new CredentialUsageStore(Collections.emptyMap());
+        List<Long> snapshots = list(SNAPSHOT_PREFIX);
+        long lastSegment = -1;
+        if (!snapshots.isEmpty()) {
+            lastSegment = snapshots.get(snapshots.size() - 1);
+            readSnapshot(file(SNAPSHOT_PREFIX, lastSegment), credentialUsageStore);
+            snapshotSegment = lastSegment;
+        }
+        for (long segment : list(SEGMENT_PREFIX)) {
+            if (segment > snapshotSegment) {
+                readSegment(file(SEGMENT_PREFIX, segment), credentialUsageStore::apply);
+                lastSegment = segment;
+            }
+        }
+        // Never append to a segment which may end with a torn record
+        activeSegment = lastSegment + 1;
+        LOGGER.fine(String.format("Recovered credential usage from %s up to segment %d", directory, lastSegment));
+        return credentialUsageStore;
+    }
+
+    /**
+     * Writes the usage as the first snapshot of an empty journal before {@link #recover()}, e.g. to migrate usage data.
+     */
+    @Override
+    public void writeInitialSnapshot(CredentialUsageStore credentialUsageStore) throws IOException {
+        if (!isEmpty()) {
+            throw new IllegalStateException(String.format("Usage journal in %s is not empty", directory));
+        }
+        writeSnapshot(0, credentialUsageStore);
+    }
+
+    /**
+     * Buffers the event until the next {@link #flush()}, never blocks. Events are written in the order of the calls,
+     * which must be the order they are applied to the usage in memory.
+     */
+    @Override
+    public void record(UsageEvent event) {
+        buffer.offer(event);
+    }
+
+    /**
+     * Appends the buffered events, returns the number of events written. Not thread safe, must be called by a single
+     * writer. Events which could not be written are kept for the next flush.
+     */
+    @Override
+    public int flush() throws IOException {
+        for (UsageEvent event = buffer.poll(); event != null; event = buffer.poll()) {
+            batch.add(event);
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int written = 0;
+        try {
+            for (UsageEvent event : batch) {
+                append(event);
+                written++;
+            }
+            if (output != null) {
+                output.flush();
+            }
+        } catch (IOException e) {
+            closeOutput();
+            batch.subList(0, written).clear();
+            throw e;
+        }
+        batch.clear();
+        writtenEventCount.addAndGet(written);
+        scheduleCompactionIfNeeded();
+        return written;
+    }
+
+    private void append(UsageEvent event) throws IOException {
+        recordBytes.reset();
+        try {
+            encode(event);
+        } catch (UTFDataFormatException e) {
+            LOGGER.log(Level.WARNING, String.format("Skipping usage of Credential:%s with a name too long to record", event.getCredentialId()), e);
+            return;
+        }
+        crc.reset();
+        crc.update(recordBytes.toByteArray(), 0, recordBytes.size());
+        int recordSize = 8 + recordBytes.size();
+        if (output != null && activeSegmentSize > 0 && activeSegmentSize + recordSize > SEGMENT_SIZE) {
+            closeOutput();
+            activeSegment++;
+        }
+        if (output == null) {
+            openOutput();
+        }
+        output.writeInt(recordBytes.size());
+        output.writeInt((int) crc.getValue());
+        recordBytes.writeTo(output);
+        activeSegmentSize += recordSize;
+    }
+
+    private void encode(UsageEvent event) throws IOException {
+        record.writeByte(event.getType().ordinal());
+        record.writeLong(event.getTimestamp());
+        switch (event.getType()) {
+            case ITEM:
+            case NODE:
+                record.writeUTF(event.getCredentialId());
+                record.writeUTF(event.getName());
+                record.writeInt(event.getBuildNumber());
+                break;
+            case RENAME_ITEM:
+            case RENAME_NODE:
+                record.writeUTF(event.getName());
+                record.writeUTF(event.getNewName());
+                break;
+            case REMOVE_ITEM:
+            case REMOVE_NODE:
+                record.writeUTF(event.getName());
+                break;
+            case EVICT_ITEM:
+            case EVICT_NODE:
+                record.writeUTF(event.getCredentialId());
+                record.writeUTF(event.getName());
+                break;
+            case CLEAR:
+                break;
+        }
+    }
+
+    private static UsageEvent decode(byte[] payload) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        UsageEvent.Type type = UsageEvent.Type.values()[input.readUnsignedByte()];
+        long timestamp = input.readLong();
+        switch (type) {
+            case ITEM:
+            case NODE:
+                return new UsageEvent(type, timestamp, input.readUTF(), input.readUTF(), input.readInt());
+            case RENAME_ITEM:
+            case RENAME_NODE:
+                return UsageEvent.rename(type, timestamp, input.readUTF(), input.readUTF());
+            case REMOVE_ITEM:
+            case REMOVE_NODE:
+                return new UsageEvent(type, timestamp, null, input.readUTF(), UsageEvent.NO_BUILD_NUMBER);
+            case EVICT_ITEM:
+            case EVICT_NODE:
+                return new UsageEvent(type, timestamp, input.readUTF(), input.readUTF(), UsageEvent.NO_BUILD_NUMBER);
+            default:
+                return new UsageEvent(type, timestamp, null, null, UsageEvent.NO_BUILD_NUMBER);
+        }
+    }
+
+    private void openOutput() throws IOException {
+        Files.createDirectories(directory.toPath());
+        // The active segment is left behind by a failed write, start a fresh one
+        while (file(SEGMENT_PREFIX, activeSegment).exists()) {
+            activeSegment++;
+        }
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file(SEGMENT_PREFIX, activeSegment))));
+        activeSegmentSize = 0;
+    }
+
+    private void closeOutput() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, String.format("Failed to close segment %d in %s", activeSegment, directory), e);
+        }
+        output = null;
+    }
+
+    /**
+     * Closes the active segment, buffered events should be flushed before.
+     */
+    @Override
+    public void close() {
+        closeOutput();
+    }
+
+    private void readSegment(File segmentFile, Consumer<UsageEvent> consumer) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile)))) {
+            CRC32 recordCrc = new CRC32();
+            while (true) {
+                int recordSize;
+                try {
+                    recordSize = input.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    if (recordSize < 0 || recordSize > MAX_RECORD_SIZE) {
+                        throw new IOException(String.format("Invalid record size %d", recordSize));
+                    }
+                    int expectedCrc = input.readInt();
+                    byte[] payload = new byte[recordSize];
+                    input.readFully(payload);
+                    recordCrc.reset();
+                    recordCrc.update(payload, 0, recordSize);
+                    if ((int) recordCrc.getValue() != expectedCrc) {
+                        throw new IOException("Record checksum mismatch");
+                    }
+                    consumer.accept(decode(payload));
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, String.format("Ignoring the rest of %s after a torn or corrupt record", segmentFile), e);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readSnapshot(File snapshotFile, CredentialUsageStore credentialUsageStore) throws IOException {
+        try (DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), SNAPSHOT_BUFFER_SIZE))) {
+            if (header.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(String.format("%s is not a usage snapshot", snapshotFile));
+            }
+            int version = header.readInt();
+            // Version 1 has no usage history, version 2 no times of the first and last use, version 3 no sketches,
+            // version 4 no top users, version 5 no compression and schema
+            if (version < 1 || version > SNAPSHOT_VERSION) {
+                throw new IOException(String.format("Unsupported usage snapshot version %d in %s", version, snapshotFile));
+            }
+            DataInputStream input = header;
+            if (version >= 6) {
+                int compression = header.readUnsignedByte();
+                if (compression >= SnapshotCompression.values().length) {
+                    throw new IOException(String.format("Unknown compression %d of %s", compression, snapshotFile));
+                }
+                if (SnapshotCompression.values()[compression] == SnapshotCompression.GZIP) {
+                    input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(header, SNAPSHOT_BUFFER_SIZE), SNAPSHOT_BUFFER_SIZE));
+                }
+            }
+            input.readLong();
+            if (version >= 6) {
+                readSchema(input, snapshotFile);
+            }
+            String credentialId = null;
+            for (byte entry = input.readByte(); entry != SNAPSHOT_END; entry = input.readByte()) {
+                switch (entry) {
+                    case SNAPSHOT_CREDENTIAL:
+                        credentialId = input.readUTF();
+                        break;
+                    case SNAPSHOT_ITEM:
+                        String itemName = input.readUTF();
+                        long itemCount = input.readLong();
+                        if (version >= 3) {
+                            credentialUsageStore.addItemUsage(credentialId, itemName, itemCount, input.readLong(), input.readLong(), input.readInt());
+                        } else {
+                            credentialUsageStore.addItemUsage(credentialId, itemName, itemCount, UsageCounter.UNKNOWN, UsageCounter.UNKNOWN, UsageEvent.NO_BUILD_NUMBER);
+                        }
+                        break;
+                    case SNAPSHOT_NODE:
+                        String nodeName = input.readUTF();
+                        long nodeCount = input.readLong();
+                        if (version >= 3) {
+                            credentialUsageStore.addNodeUsage(credentialId, nodeName, nodeCount, input.readLong(), input.readLong());
+                            input.readInt();
+                        } else {
+                            credentialUsageStore.addNodeUsage(credentialId, nodeName, nodeCount, UsageCounter.UNKNOWN, UsageCounter.UNKNOWN);
+                        }
+                        break;
+                    case SNAPSHOT_HISTORY:
+                        CredentialUsageCounters counters = credentialUsageStore.getCounters(credentialId);
+                        (counters != null ? counters.getHistory() : new UsageHistory()).readFrom(input);
+                        break;
+                    case SNAPSHOT_SKETCH:
+                        long count = input.readLong();
+                        long firstUsed = input.readLong();
+                        long lastUsed = input.readLong();
+                        int lastBuildNumber = input.readInt();
+                        String lastUsedItem = input.readBoolean() ? input.readUTF() : null;
+                        UsageSketch items = UsageSketch.readFrom(input);
+                        UsageSketch nodes = UsageSketch.readFrom(input);
+                        credentialUsageStore.addEstimatedUsage(credentialId, items, nodes, count, firstUsed, lastUsed, lastBuildNumber, lastUsedItem);
+                        break;
+                    case SNAPSHOT_TOP_ITEMS:
+                    case SNAPSHOT_TOP_NODES:
+                        CredentialUsageCounters topCounters = credentialUsageStore.getCounters(credentialId);
+                        TopUsage topUsage = topCounters == null ? new TopUsage() : entry == SNAPSHOT_TOP_ITEMS ? topCounters.getTopItemUsage() : topCounters.getTopNodeUsage();
+                        topUsage.readFrom(input);
+                        break;
+                    default:
+                        throw new IOException(String.format("Unknown entry %d in %s", entry, snapshotFile));
+                }
+            }
+            if (version < 5) {
+                credentialUsageStore.getAllCounters().forEach(CredentialUsageCounters::rebuildTopUsage);
+            }
+        }
+    }
+
+    private void writeSnapshot(long segment, CredentialUsageStore credentialUsageStore) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File snapshotFile = file(SNAPSHOT_PREFIX, segment);
+        File temporaryFile = new File(directory, snapshotFile.getName() + ".tmp");
+        try (FileOutputStream fileOutput = new FileOutputStream(temporaryFile)) {
+            DataOutputStream header = new DataOutputStream(new BufferedOutputStream(fileOutput, 16));
+            header.writeInt(SNAPSHOT_MAGIC);
+            header.writeInt(SNAPSHOT_VERSION);
+            header.writeByte(SNAPSHOT_COMPRESSION.ordinal());
+            header.flush();
+            GZIPOutputStream compressedOutput = SNAPSHOT_COMPRESSION == SnapshotCompression.GZIP ? new GZIPOutputStream(fileOutput, SNAPSHOT_BUFFER_SIZE) : null;
+            DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(compressedOutput != null ? compressedOutput : fileOutput, SNAPSHOT_BUFFER_SIZE));
+            snapshot.writeLong(segment);
+            writeSchema(snapshot);
+            for (CredentialUsageCounters counters : credentialUsageStore.getAllCounters()) {
+                snapshot.writeByte(SNAPSHOT_CREDENTIAL);
+                snapshot.writeUTF(counters.getCredentialId());
+                if (counters.isEstimated()) {
+                    writeSketchEntry(snapshot, counters);
+                } else {
+                    writeSnapshotEntries(snapshot, SNAPSHOT_ITEM, counters::forEachItemUsage);
+                    writeSnapshotEntries(snapshot, SNAPSHOT_NODE, counters::forEachNodeUsage);
+                }
+                snapshot.writeByte(SNAPSHOT_HISTORY);
+                counters.getHistory().writeTo(snapshot);
+                snapshot.writeByte(SNAPSHOT_TOP_ITEMS);
+                counters.getTopItemUsage().writeTo(snapshot);
+                snapshot.writeByte(SNAPSHOT_TOP_NODES);
+                counters.getTopNodeUsage().writeTo(snapshot);
+            }
+            snapshot.writeByte(SNAPSHOT_END);
+            snapshot.flush();
+            if (compressedOutput != null) {
+                compressedOutput.finish();
+            }
+            fileOutput.getChannel().force(true);
+        }
+        Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeSchema(DataOutputStream snapshot) throws IOException {
+        snapshot.writeByte(SNAPSHOT_ENTRIES.length);
+        for (int entry = 0; entry < SNAPSHOT_ENTRIES.length; entry++) {
+            snapshot.writeByte(entry);
+            snapshot.writeUTF(SNAPSHOT_ENTRIES[entry]);
+        }
+    }
+
+    /**
+     * Rejects a snapshot with entries this version can't read, before anything is read from it.
+     */
+    private static void readSchema(DataInputStream input, File snapshotFile) throws IOException {
+        List<String> unknownEntries = new ArrayList<>();
+        int entries = input.readUnsignedByte();
+        for (int i = 0; i < entries; i++) {
+            int entry = input.readUnsignedByte();
+            String name = input.readUTF();
+            if (entry >= SNAPSHOT_ENTRIES.length || !SNAPSHOT_ENTRIES[entry].equals(name)) {
+                unknownEntries.add(name);
+            }
+        }
+        if (!unknownEntries.isEmpty()) {
+            throw new IOException(String.format("%s was written by a newer version with the entries %s", snapshotFile, unknownEntries));
+        }
+    }
+
+    /**
+     * Estimated usage carries the total itself, there are no counters per item and node to add it up from.
+     */
+    private static void writeSketchEntry(DataOutputStream snapshot, CredentialUsageCounters counters) throws IOException {
+        UsageCounter totalUsage = counters.getTotalUsage();
+        String lastUsedItem = counters.getLastUsedItem();
+        snapshot.writeByte(SNAPSHOT_SKETCH);
+        snapshot.writeLong(totalUsage.getCount());
+        snapshot.writeLong(totalUsage.getFirstUsed());
+        snapshot.writeLong(totalUsage.getLastUsed());
+        snapshot.writeInt(totalUsage.getLastBuildNumber());
+        snapshot.writeBoolean(lastUsedItem != null);
+        if (lastUsedItem != null) {
+            snapshot.writeUTF(lastUsedItem);
+        }
+        counters.getItemSketch().writeTo(snapshot);
+        counters.getNodeSketch().writeTo(snapshot);
+    }
+
+    private static void writeSnapshotEntries(DataOutputStream snapshot, byte entry, Consumer<UsageVisitor> forEach) throws IOException {
+        IOException[] failure = new IOException[1];
+        forEach.accept((name, count, firstUsed, lastUsed, lastBuildNumber) -> {
+            if (failure[0] != null) {
+                return;
+            }
+            try {
+                snapshot.writeByte(entry);
+                snapshot.writeUTF(name);
+                snapshot.writeLong(count);
+                snapshot.writeLong(firstUsed);
+                snapshot.writeLong(lastUsed);
+                snapshot.writeInt(lastBuildNumber);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (activeSegment - 1 - snapshotSegment >= COMPACT_AFTER_SEGMENTS && compactionScheduled.compareAndSet(false, true)) {
+            Timer.get().submit(() -> {
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, String.format("Failed to compact the usage journal in %s", directory), e);
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Folds the sealed segments into a new snapshot and deletes them along with the previous snapshot.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            long compactionStartTime = System.currentTimeMillis();
+            long lastSealedSegment = activeSegment - 1;
+            List<Long> segments = new ArrayList<>();
+            for (long segment : list(SEGMENT_PREFIX)) {
+                if (segment > snapshotSegment && segment <= lastSealedSegment) {
+                    segments.add(segment);
+                }
+            }
+            if (segments.isEmpty()) {
+                return;
+            }
+            CredentialUsageStore credentialUsageStore = new CredentialUsageStore(Collections.emptyMap());
+            if (snapshotSegment >= 0) {
+                readSnapshot(file(SNAPSHOT_PREFIX, snapshotSegment), credentialUsageStore);
+            }
+            for (long segment : segments) {
+                readSegment(file(SEGMENT_PREFIX, segment), credentialUsageStore::apply);
+            }
+            writeSnapshot(lastSealedSegment, credentialUsageStore);
+            snapshotSegment = lastSealedSegment;
+            for (long snapshot : list(SNAPSHOT_PREFIX)) {
+                if (snapshot < lastSealedSegment) {
+                    Files.deleteIfExists(file(SNAPSHOT_PREFIX, snapshot).toPath());
+                }
+            }
+            for (long segment : segments) {
+                Files.deleteIfExists(file(SEGMENT_PREFIX, segment).toPath());
+            }
+            compactionCount.incrementAndGet();
+            lastCompactionDuration = System.currentTimeMillis() - compactionStartTime;
+            LOGGER.fine(String.format("Compacted %d usage journal segments into snapshot %d in %d ms", segments.size(), lastSealedSegment, lastCompactionDuration));
+        }
+    }
+
+    private File file(String prefix, long segment) {
+        return new File(directory, String.format("%s%020d%s", prefix, segment, FILE_SUFFIX));
+    }
+
+    /**
+     * Returns the numbers of the files with the prefix in ascending order.
+     */
+    private List<Long> list(String prefix) {
+        List<Long> numbers = new ArrayList<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(prefix) && name.endsWith(FILE_SUFFIX)) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - FILE_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        LOGGER.fine(String.format("Ignoring %s in %s", name, directory));
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getActiveSegment() {
+        return activeSegment;
+    }
+
+    /**
+     * Number of the last segment folded into the snapshot, -1 if there is no snapshot.
+     */
+    public long getSnapshotSegment() {
+        return snapshotSegment;
+    }
+
+    public long getWrittenEventCount() {
+        return writtenEventCount.get();
+    }
+
+    public long getCompactionCount() {
+        return compactionCount.get();
+    }
+
+    public long getLastCompactionDuration() {
+        return lastCompactionDuration;
+    }
+
+    public SnapshotCompression getSnapshotCompression() {
+        return SNAPSHOT_COMPRESSION;
+    }
+}
@@ -0,0 +1,42 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Where the usage counters are kept on disk, either the {@link UsageJournal} or the {@link MappedUsageFile}.
+ * <p>
+ * Events are handed over by {@link #record(UsageEvent)} as they are counted and made durable by {@link #flush()},
+ * which is called by a single background writer.
+ */
+public interface UsagePersistence {
+
+    /**
+     * Whether no usage has been written yet.
+     */
+    boolean isEmpty();
+
+    /**
+     * Writes the usage as the initial state before {@link #recover()}, e.g. to migrate usage data.
+     */
+    void writeInitialSnapshot(CredentialUsageStore credentialUsageStore) throws IOException;
+
+    /**
+     * Reads the usage written so far.
+     */
+    CredentialUsageStore recover() throws IOException;
+
+    /**
+     * Hands over a counted event, never blocks on disk. Recovered usage replays the events in the order of the calls.
+     */
+    void record(UsageEvent event);
+
+    /**
+     * Writes what was recorded since the last flush, returns the number of events written.
+     */
+    int flush() throws IOException;
+
+    void close();
+
+    File getDirectory();
+}
@@ -0,0 +1,147 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Limits on the usage kept by item and node, enforced by folding the least recently used counters into the
+ * {@link #OTHER_ITEMS} and {@link #OTHER_NODES} usage of their credential, so the usage still adds up to the total.
+ * <p>
+ * A limit of 0 is no limit. Credentials whose usage is estimated are bounded by their sketches already and are left
+ * alone, as are the counters of the other and deleted usage. Counters with unknown times predate the usage journal and
+ * are the least recently used, but never expire.
+ */
+public final class UsageRetention {
+
+    public static final String OTHER_ITEMS = "(other items)";
+
+    public static final String OTHER_NODES = "(other nodes)";
+
+    /**
+     * Estimated memory of a counter, a slot takes 32 bytes and {@link UsageCounterTable}s are kept between an eighth
+     * and half full.
+     */
+    public static final long COUNTER_MEMORY_SIZE = 128;
+
+    private static final Comparator<Candidate> LEAST_RECENTLY_USED = Comparator.comparingLong(candidate -> candidate.lastUsed);
+
+    private final int maxItemsPerCredential;
+    private final int maxNodesPerCredential;
+    private final long timeToLive;
+    private final long memoryBudget;
+
+    /**
+     * @param timeToLive   milliseconds since the last use after which a counter is evicted
+     * @param memoryBudget bytes all counters may take, estimated by {@link #COUNTER_MEMORY_SIZE}
+     */
+    public UsageRetention(int maxItemsPerCredential, int maxNodesPerCredential, long timeToLive, long memoryBudget) {
+        this.maxItemsPerCredential = maxItemsPerCredential;
+        this.maxNodesPerCredential = maxNodesPerCredential;
+        this.timeToLive = timeToLive;
+        this.memoryBudget = memoryBudget;
+    }
+
+    public boolean isEnabled() {
+        return maxItemsPerCredential > 0 || maxNodesPerCredential > 0 || timeToLive > 0 || memoryBudget > 0;
+    }
+
+    /**
+     * Returns the evictions which bring the usage within the limits, per credential first and then over all
+     * credentials for the memory budget.
+     */
+    public List<UsageEvent> selectEvictions(CredentialUsageStore credentialUsageStore, long now) {
+        List<UsageEvent> evictions = new ArrayList<>();
+        List<Candidate> kept = new ArrayList<>();
+        for (CredentialUsageCounters counters : credentialUsageStore.getAllCounters()) {
+            if (counters.isEstimated()) {
+                continue;
+            }
+            List<Candidate> items = new ArrayList<>();
+            counters.forEachItemUsage((name, count, firstUsed, lastUsed, lastBuildNumber) -> {
+                if (!isRetained(name)) {
+                    items.add(new Candidate(counters.getCredentialId(), name, false, lastUsed));
+                }
+            });
+            select(items, maxItemsPerCredential, now, evictions, kept);
+            List<Candidate> nodes = new ArrayList<>();
+            counters.forEachNodeUsage((name, count, firstUsed, lastUsed, lastBuildNumber) -> {
+                if (!isRetained(name)) {
+                    nodes.add(new Candidate(counters.getCredentialId(), name, true, lastUsed));
+                }
+            });
+            select(nodes, maxNodesPerCredential, now, evictions, kept);
+        }
+        if (memoryBudget > 0) {
+            // Evicted counters add at most one other counter per credential, which is not worth counting
+            long excess = credentialUsageStore.getCounterCount() - evictions.size() - memoryBudget / COUNTER_MEMORY_SIZE;
+            if (excess > 0) {
+                kept.sort(LEAST_RECENTLY_USED);
+                for (int i = 0; i < kept.size() && i < excess; i++) {
+                    evictions.add(kept.get(i).toEviction());
+                }
+            }
+        }
+        return evictions;
+    }
+
+    private void select(List<Candidate> candidates, int maxCount, long now, List<UsageEvent> evictions, List<Candidate> kept) {
+        candidates.sort(LEAST_RECENTLY_USED);
+        int excess = maxCount > 0 ? candidates.size() - maxCount : 0;
+        for (Candidate candidate : candidates) {
+            if (excess > 0 || isExpired(candidate, now)) {
+                evictions.add(candidate.toEviction());
+                excess--;
+            } else {
+                kept.add(candidate);
+            }
+        }
+    }
+
+    private boolean isExpired(Candidate candidate, long now) {
+        return timeToLive > 0 && candidate.lastUsed != UsageCounter.UNKNOWN && now - candidate.lastUsed > timeToLive;
+    }
+
+    /**
+     * Whether the usage is never evicted, which is the usage the evicted and deleted usage is folded into.
+     */
+    public static boolean isRetained(String name) {
+        return OTHER_ITEMS.equals(name) || OTHER_NODES.equals(name)
+                || DeletedUsagePolicy.DELETED_ITEMS.equals(name) || DeletedUsagePolicy.DELETED_NODES.equals(name);
+    }
+
+    public int getMaxItemsPerCredential() {
+        return maxItemsPerCredential;
+    }
+
+    public int getMaxNodesPerCredential() {
+        return maxNodesPerCredential;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    private static final class Candidate {
+
+        private final String credentialId;
+        private final String name;
+        private final boolean node;
+        private final long lastUsed;
+
+        private Candidate(String credentialId, String name, boolean node, long lastUsed) {
+            this.credentialId = credentialId;
+            this.name = name;
+            this.node = node;
+            this.lastUsed = lastUsed;
+        }
+
+        private UsageEvent toEviction() {
+            return node ? UsageEvent.evictNode(credentialId, name) : UsageEvent.evictItem(credentialId, name);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+import jenkins.util.SystemProperties;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Estimated usage of a credential by items or by nodes, in place of exact counters once a credential was used by
+ * more than {@code threshold} distinct items and nodes.
+ * <p>
+ * The number of distinct names is estimated with a {@link HyperLogLog}, the count per name with a
+ * {@link CountMinSketch}. Names themselves are not kept, so the memory used is fixed, about
+ * {@code 2^precision + 32 * width} bytes.
+ */
+public final class UsageSketch {
+
+    private static final String PROPERTY_PREFIX = UsageSketch.class.getName();
+
+    /**
+     * Number of distinct items and nodes of a credential above which its usage is estimated, 0 never estimates.
+     */
+    static final int THRESHOLD = Math.max(0, SystemProperties.getInteger(PROPERTY_PREFIX + ".threshold", 0));
+
+    static final int PRECISION = Math.min(HyperLogLog.MAX_PRECISION, Math.max(HyperLogLog.MIN_PRECISION, SystemProperties.getInteger(PROPERTY_PREFIX + ".precision", 10)));
+
+    static final int WIDTH = SystemProperties.getInteger(PROPERTY_PREFIX + ".width", 64);
+
+    private final HyperLogLog distinctNames;
+    private final CountMinSketch counts;
+
+    public UsageSketch() {
+        this(new HyperLogLog(PRECISION), new CountMinSketch(WIDTH));
+    }
+
+    private UsageSketch(HyperLogLog distinctNames, CountMinSketch counts) {
+        this.distinctNames = distinctNames;
+        this.counts = counts;
+    }
+
+    /**
+     * Whether a credential with this many distinct items and nodes is to be estimated.
+     */
+    public static boolean isExceeded(int distinctNames) {
+        return THRESHOLD > 0 && distinctNames > THRESHOLD;
+    }
+
+    public void add(String name, long count) {
+        long hash = hash(name);
+        distinctNames.add(hash);
+        counts.add(hash, count);
+    }
+
+    public long estimateDistinctCount() {
+        return distinctNames.estimate();
+    }
+
+    /**
+     * Relative standard error of {@link #estimateDistinctCount()}, in percent.
+     */
+    public double getDistinctCountError() {
+        return distinctNames.getRelativeError() * 100;
+    }
+
+    /**
+     * Estimated count of the name, never below the real count.
+     */
+    public long estimateCount(String name) {
+        return counts.estimate(hash(name));
+    }
+
+    /**
+     * Most {@link #estimateCount(String)} exceeds the real count by, with a probability of about 98%.
+     */
+    public long getCountError() {
+        return counts.getError();
+    }
+
+    public int getMemorySize() {
+        return distinctNames.getSize() + CountMinSketch.DEPTH * counts.getWidth() * Long.BYTES;
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters, finished with the MurmurHash3 mixer so all bits depend on all characters.
+     */
+    static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public void writeTo(DataOutputStream output) throws IOException {
+        distinctNames.writeTo(output);
+        counts.writeTo(output);
+    }
+
+    public static UsageSketch readFrom(DataInputStream input) throws IOException {
+        return new UsageSketch(HyperLogLog.readFrom(input), CountMinSketch.readFrom(input));
+    }
+}
@@ -0,0 +1,10 @@
+package io.jenkins.plugins.enhanced.credentials.usage;
+
+/**
+ * Receives the usage counters of a credential by item or node name, without a {@link UsageCounter} per counter.
+ */
+@FunctionalInterface
+public interface UsageVisitor {
+
+    void visit(String name, long count, long firstUsed, long lastUsed, int lastBuildNumber);
+}
@@ -0,0 +1,126 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.audit.AccessAuditLog;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Runs without Jenkins, so there is no writer thread and buffered decisions are only written by {@code drain()}.
+ */
+public class AccessAuditLogTest {
+
+    /**
+     * Names of two UTF-8 bytes each.
+     */
+    private static final String ACCENTS = "\u00e9\u00e8\u00ea\u00eb\u00e0\u00e2\u00e4\u00f6\u00fc\u00ef\u00e9\u00e8\u00ea\u00eb\u00e0\u00e2\u00e4\u00f6\u00fc\u00ef";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File logFile;
+
+    private AccessAuditLog auditLog(int bufferCapacity, int allowSampleEvery, long maxFileSize, int maxFiles) throws IOException {
+        logFile = new File(temporaryFolder.newFolder(), "decisions.log");
+        return new AccessAuditLog(bufferCapacity, allowSampleEvery, logFile, maxFileSize, maxFiles);
+    }
+
+    private List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testAllowSampling() throws IOException {
+        AccessAuditLog auditLog = auditLog(2048, 4, 1024 * 1024, 2);
+        for (int i = 0; i < 1000; i++) {
+            auditLog.record("credential", "job", true, false, 1);
+        }
+        Assert.assertEquals(1000, auditLog.getRecordedCount() + auditLog.getSampledOutCount());
+        // One in four on average, far from both ends
+        Assert.assertTrue(auditLog.getRecordedCount() > 100 && auditLog.getRecordedCount() < 500);
+        Assert.assertEquals(auditLog.getRecordedCount(), auditLog.drain());
+        Assert.assertEquals(auditLog.getRecordedCount(), lines(logFile).size());
+
+        auditLog = auditLog(16, 1, 1024 * 1024, 2);
+        for (int i = 0; i < 10; i++) {
+            auditLog.record("credential", "job", true, false, 1);
+        }
+        Assert.assertEquals(10, auditLog.getRecordedCount());
+        Assert.assertEquals(0, auditLog.getSampledOutCount());
+    }
+
+    @Test
+    public void testDenyAlwaysRecorded() throws IOException {
+        AccessAuditLog auditLog = auditLog(16, 0, 1024 * 1024, 2);
+        auditLog.record("credential", "allowed", true, false, 1);
+        auditLog.record("credential", "denied", false, true, 2);
+        Assert.assertEquals(1, auditLog.getRecordedCount());
+        Assert.assertEquals(1, auditLog.getSampledOutCount());
+        Assert.assertEquals(1, auditLog.drain());
+        List<String> lines = lines(logFile);
+        Assert.assertEquals(1, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).contains("\"decision\":\"DENY\",\"credentialId\":\"credential\",\"item\":\"denied\",\"cached\":true,\"ruleGeneration\":2}"));
+    }
+
+    @Test
+    public void testDropWhenFull() throws IOException {
+        AccessAuditLog auditLog = auditLog(4, 1, 1024 * 1024, 2);
+        for (int i = 0; i < 6; i++) {
+            auditLog.record("credential", "job" + i, false, false, 1);
+        }
+        Assert.assertEquals(4, auditLog.getRecordedCount());
+        Assert.assertEquals(2, auditLog.getDroppedCount());
+        Assert.assertEquals(4, auditLog.getBufferedCount());
+        Assert.assertEquals(4, auditLog.drain());
+        Assert.assertEquals(4, auditLog.getWrittenCount());
+        Assert.assertEquals(0, auditLog.getBufferedCount());
+        List<String> lines = lines(logFile);
+        Assert.assertTrue(lines.get(0).contains("\"item\":\"job0\""));
+        Assert.assertTrue(lines.get(3).contains("\"item\":\"job3\""));
+    }
+
+    @Test
+    public void testJsonEscaping() throws IOException {
+        AccessAuditLog auditLog = auditLog(16, 1, 1024 * 1024, 2);
+        auditLog.record("quote\" backslash\\ tab\t", "line\r\nbreak \u0001 \u00fcn\u00efcode", false, false, 1);
+        auditLog.record(null, "job", false, false, 1);
+        auditLog.drain();
+        List<String> lines = lines(logFile);
+        // Line breaks in names never split a decision over several lines
+        Assert.assertEquals(2, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).contains("\"credentialId\":\"quote\\\" backslash\\\\ tab\\t\",\"item\":\"line\\r\\nbreak \\u0001 \u00fcn\u00efcode\","));
+        Assert.assertTrue(lines.get(1), lines.get(1).contains("\"credentialId\":null,"));
+    }
+
+    @Test
+    public void testRotation() throws IOException {
+        long maxFileSize = 1024;
+        AccessAuditLog auditLog = auditLog(64, 1, maxFileSize, 3);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) {
+                // Multi-byte names, so a size counted in chars would overflow the files
+                auditLog.record("credential", ACCENTS + "-" + round + "-" + i, false, false, 1);
+            }
+            auditLog.drain();
+        }
+        Assert.assertEquals(50, auditLog.getWrittenCount());
+        File firstRotated = new File(logFile.getPath() + ".1");
+        File secondRotated = new File(logFile.getPath() + ".2");
+        Assert.assertTrue(firstRotated.exists());
+        Assert.assertTrue(secondRotated.exists());
+        // The oldest file is dropped
+        Assert.assertFalse(new File(logFile.getPath() + ".3").exists());
+        for (File file : new File[]{logFile, firstRotated, secondRotated}) {
+            Assert.assertTrue(file + " has " + file.length() + " bytes", file.length() <= maxFileSize);
+        }
+        List<String> lines = lines(logFile);
+        Assert.assertTrue(lines.get(lines.size() - 1).contains(ACCENTS + "-4-9"));
+    }
+}
@@ -0,0 +1,161 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.CompiledCredentialRules;
+import io.jenkins.plugins.enhanced.credentials.CredentialRule;
+import io.jenkins.plugins.enhanced.credentials.CredentialRuleSupporter;
+import io.jenkins.plugins.enhanced.credentials.CredentialRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the access decision for a credential use, see {@link BenchmarkRunner}.
+ * <p>
+ * {@code evaluate*} benchmarks measure the rule engine alone, {@code check*} benchmarks the whole check including the
+ * decision cache, which holds all the checked combinations once warmed up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dio.jenkins.plugins.enhanced.credentials.audit.AccessAuditLog.enabled=false")
+public class AccessDecisionBenchmark {
+
+    private static final int CHECK_COUNT = 1024;
+
+    public enum PatternShape {
+        LITERAL,
+        PREFIX,
+        REGEX
+    }
+
+    @State(Scope.Benchmark)
+    public static class Rules {
+
+        @Param({"10", "100", "1000", "10000"})
+        public int ruleCount;
+
+        @Param({"LITERAL", "PREFIX", "REGEX"})
+        public PatternShape patternShape;
+
+        /**
+         * Share of the checks whose credential is matched by a rule, the others fall through to the default restriction.
+         */
+        @Param({"0.1", "0.9"})
+        public double hitRatio;
+
+        /**
+         * Number of path segments of the checked item names.
+         */
+        @Param({"1", "4"})
+        public int itemDepth;
+
+        CompiledCredentialRules compiledCredentialRules;
+        String[] credentialIds = new String[CHECK_COUNT];
+        String[] itemNames = new String[CHECK_COUNT];
+        final CredentialRuleSupporter credentialRuleSupporter = new CredentialRuleSupporter();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            List<CredentialRule> credentialRuleList = new ArrayList<>();
+            for (int i = 0; i < ruleCount; i++) {
+                credentialRuleList.add(new CredentialRule("rule" + i, credentialPattern(i), itemPattern(i)));
+            }
+            compiledCredentialRules = CompiledCredentialRules.compile(new CredentialRules(credentialRuleList, true));
+            Random random = new Random(42);
+            for (int i = 0; i < CHECK_COUNT; i++) {
+                int rule = random.nextInt(ruleCount);
+                credentialIds[i] = random.nextDouble() < hitRatio ? credentialId(rule) : "unmatched-" + rule;
+                // Half of the matched credentials are used by the item their rule allows
+                itemNames[i] = folder(random.nextBoolean() ? rule : (rule + 1) % ruleCount) + "/deploy-main";
+            }
+        }
+
+        private String credentialPattern(int rule) {
+            switch (patternShape) {
+                case LITERAL:
+                    return credentialId(rule);
+                case PREFIX:
+                    return "credential-" + rule + "-.*";
+                default:
+                    return "credential-" + rule + "-(dev|prod)[0-9]*";
+            }
+        }
+
+        private String itemPattern(int rule) {
+            switch (patternShape) {
+                case LITERAL:
+                    return folder(rule) + "/deploy-main";
+                case PREFIX:
+                    return folder(rule) + "/.*";
+                default:
+                    return folder(rule) + "/(build|deploy)-[a-z]+";
+            }
+        }
+
+        private static String credentialId(int rule) {
+            return "credential-" + rule + "-prod";
+        }
+
+        private String folder(int rule) {
+            StringBuilder folder = new StringBuilder("team-" + rule);
+            for (int depth = 1; depth < itemDepth; depth++) {
+                folder.append("/folder-").append(depth);
+            }
+            return folder.toString();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int next() {
+            next = (next + 1) & (CHECK_COUNT - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Boolean evaluateSingleThreaded(Rules rules, Cursor cursor) {
+        int i = cursor.next();
+        return rules.credentialRuleSupporter.evaluateAccessForCredential(rules.compiledCredentialRules, rules.credentialIds[i], rules.itemNames[i]);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Boolean evaluate32Threads(Rules rules, Cursor cursor) {
+        int i = cursor.next();
+        return rules.credentialRuleSupporter.evaluateAccessForCredential(rules.compiledCredentialRules, rules.credentialIds[i], rules.itemNames[i]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Boolean checkSingleThreaded(Rules rules, Cursor cursor) {
+        int i = cursor.next();
+        return rules.credentialRuleSupporter.checkItemHasAccessForCredential(rules.compiledCredentialRules, rules.credentialIds[i], rules.itemNames[i]);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Boolean check32Threads(Rules rules, Cursor cursor) {
+        int i = cursor.next();
+        return rules.credentialRuleSupporter.checkItemHasAccessForCredential(rules.compiledCredentialRules, rules.credentialIds[i], rules.itemNames[i]);
+    }
+}
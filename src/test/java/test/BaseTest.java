@@ -13,6 +13,9 @@ import hudson.tasks.Shell;
 import io.jenkins.plugins.enhanced.credentials.CredentialRule;
 import io.jenkins.plugins.enhanced.credentials.CredentialRules;
 import io.jenkins.plugins.enhanced.credentials.CredentialUsages;
+import io.jenkins.plugins.enhanced.credentials.EvaluationMode;
+import io.jenkins.plugins.enhanced.credentials.RuleEffect;
+import io.jenkins.plugins.enhanced.credentials.listener.CredentialUseDispatcher;
 import org.jenkinsci.plugins.credentialsbinding.impl.SecretBuildWrapper;
 import org.jenkinsci.plugins.credentialsbinding.impl.UsernamePasswordBinding;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
@@ -76,14 +79,28 @@ public abstract class BaseTest {
     }
 
     protected void configure(JenkinsRule jenkinsRule, Boolean restrictNotMatching, List<CredentialRule> credentialRuleList) {
+        this.configure(jenkinsRule, restrictNotMatching, EvaluationMode.ANY_MATCH, credentialRuleList);
+    }
+
+    protected void configure(JenkinsRule jenkinsRule, Boolean restrictNotMatching, EvaluationMode evaluationMode, List<CredentialRule> credentialRuleList) {
         CredentialRules.CredentialRulesDescriptorImpl descriptor = (CredentialRules.CredentialRulesDescriptorImpl) jenkinsRule.jenkins.getDescriptor(CredentialRules.class);
         descriptor.restrictNotMatching = restrictNotMatching;
+        descriptor.evaluationMode = evaluationMode;
         descriptor.credentialRuleList = credentialRuleList;
         descriptor.save();
     }
 
+    protected CredentialRule createRule(String name, String credentialPattern, String itemPattern, RuleEffect effect, Integer priority) {
+        CredentialRule credentialRule = new CredentialRule(name, credentialPattern, itemPattern);
+        credentialRule.setEffect(effect);
+        credentialRule.setPriority(priority);
+        return credentialRule;
+    }
+
     protected CredentialUsages getCredentialUsages(JenkinsRule jenkinsRule){
         CredentialUsages.CredentialUsageDescriptor credentialUsageDescriptor = (CredentialUsages.CredentialUsageDescriptor) jenkinsRule.jenkins.getDescriptor(CredentialUsages.class);
+        // The report only shows what the consumer thread counted, count the queued uses and changes as well
+        CredentialUseDispatcher.get().drain();
         return credentialUsageDescriptor.getCredentialUsageReport();
     }
 
@@ -0,0 +1,32 @@
+package test;
+
+import org.junit.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks, use {@code mvn test -Pbenchmark}. Results are written to {@code target/jmh-report.json}.
+ * <p>
+ * Benchmarks and parameters can be narrowed with {@code -Dbenchmark.include=<regex>} and
+ * {@code -Dbenchmark.params=ruleCount=100,1000;patternShape=REGEX}.
+ */
+public class BenchmarkRunner {
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(System.getProperty("benchmark.include", AccessDecisionBenchmark.class.getName()))
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-report.json");
+        String params = System.getProperty("benchmark.params");
+        if (params != null) {
+            for (String param : params.split(";")) {
+                String[] nameAndValues = param.split("=", 2);
+                options.param(nameAndValues[0], nameAndValues[1].split(","));
+            }
+        }
+        new Runner(options.build()).run();
+    }
+}
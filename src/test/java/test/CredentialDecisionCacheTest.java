@@ -0,0 +1,57 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.CompiledCredentialRules;
+import io.jenkins.plugins.enhanced.credentials.CredentialDecisionCache;
+import io.jenkins.plugins.enhanced.credentials.CredentialRules;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class CredentialDecisionCacheTest {
+
+    private final CredentialDecisionCache cache = CredentialDecisionCache.get();
+    private CompiledCredentialRules credentialRules;
+
+    @Before
+    public void setup() {
+        cache.invalidateAll();
+        credentialRules = CompiledCredentialRules.compile(new CredentialRules(new ArrayList<>(), true));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        Assert.assertNull(cache.getDecision(credentialRules, "credential", "job"));
+        cache.putDecision(credentialRules, "credential", "job", Boolean.TRUE);
+        Assert.assertEquals(Boolean.TRUE, cache.getDecision(credentialRules, "credential", "job"));
+        Assert.assertNull(cache.getDecision(credentialRules, "other-credential", "job"));
+        Assert.assertEquals(hits + 1, cache.getHitCount());
+        Assert.assertEquals(misses + 2, cache.getMissCount());
+
+        // Decisions of an older rule set are never returned
+        CompiledCredentialRules newRules = CompiledCredentialRules.compile(new CredentialRules(new ArrayList<>(), true));
+        Assert.assertNull(cache.getDecision(newRules, "credential", "job"));
+
+        cache.invalidateAll();
+        Assert.assertNull(cache.getDecision(credentialRules, "credential", "job"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidateItem() {
+        for (String itemName : new String[]{"folder", "folder/job", "folder/sub/job", "folder-other/job", "folderjob"}) {
+            cache.putDecision(credentialRules, "credential", itemName, Boolean.FALSE);
+        }
+        cache.invalidateItem("folder");
+        Assert.assertNull(cache.getDecision(credentialRules, "credential", "folder"));
+        Assert.assertNull(cache.getDecision(credentialRules, "credential", "folder/job"));
+        Assert.assertNull(cache.getDecision(credentialRules, "credential", "folder/sub/job"));
+        // Items merely starting with the same name are kept
+        Assert.assertEquals(Boolean.FALSE, cache.getDecision(credentialRules, "credential", "folder-other/job"));
+        Assert.assertEquals(Boolean.FALSE, cache.getDecision(credentialRules, "credential", "folderjob"));
+        Assert.assertEquals(2, cache.getSize());
+    }
+}
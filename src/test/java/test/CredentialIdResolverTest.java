@@ -0,0 +1,101 @@
+package test;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.BaseCredentials;
+import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+import io.jenkins.plugins.enhanced.credentials.CredentialIdResolver;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CredentialIdResolverTest {
+
+    @Test
+    public void testIdCredentials() {
+        Assert.assertEquals("credential", CredentialIdResolver.resolveId(new StandardCredentials("credential")));
+    }
+
+    @Test
+    public void testCredentialsWithGetId() {
+        Assert.assertEquals("credential1", CredentialIdResolver.resolveId(new CredentialsWithId("credential1")));
+        // The second lookup uses the handle cached for the class
+        Assert.assertEquals("credential2", CredentialIdResolver.resolveId(new CredentialsWithId("credential2")));
+    }
+
+    @Test
+    public void testCredentialsWithoutGetId() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                CredentialIdResolver.resolveId(new CredentialsWithoutId());
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains(CredentialsWithoutId.class.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void testCredentialsWithOtherGetId() {
+        assertRejected(new CredentialsWithVoidId());
+        assertRejected(new CredentialsWithIntegerId());
+        assertRejected(new CredentialsWithId(null));
+    }
+
+    private static void assertRejected(Credentials credentials) {
+        try {
+            CredentialIdResolver.resolveId(credentials);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(credentials.getClass().getName()));
+        }
+    }
+
+    private static final class StandardCredentials extends BaseStandardCredentials {
+
+        private StandardCredentials(String id) {
+            super(CredentialsScope.GLOBAL, id, "");
+        }
+    }
+
+    private static final class CredentialsWithId extends BaseCredentials {
+
+        private final String id;
+
+        private CredentialsWithId(String id) {
+            super(CredentialsScope.GLOBAL);
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    private static final class CredentialsWithoutId extends BaseCredentials {
+
+        private CredentialsWithoutId() {
+            super(CredentialsScope.GLOBAL);
+        }
+    }
+
+    private static final class CredentialsWithVoidId extends BaseCredentials {
+
+        private CredentialsWithVoidId() {
+            super(CredentialsScope.GLOBAL);
+        }
+
+        public void getId() {
+        }
+    }
+
+    private static final class CredentialsWithIntegerId extends BaseCredentials {
+
+        private CredentialsWithIntegerId() {
+            super(CredentialsScope.GLOBAL);
+        }
+
+        public Integer getId() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.CredentialUsage;
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+public class CredentialUsageStoreTest {
+
+    @Test
+    public void testIncrementsWhileReading() throws InterruptedException {
+        CredentialUsageStore store = new CredentialUsageStore(new HashMap<>());
+        int uses = 80_000;
+        // Uses are counted by a single writer while the report is read
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < uses; i++) {
+                if (i % 2 == 0) {
+                    store.incrementItemUsage("credential" + (i % 4), "item" + (i % 8), System.currentTimeMillis(), i);
+                } else {
+                    store.incrementNodeUsage("credential" + (i % 4), "node", System.currentTimeMillis());
+                }
+            }
+        });
+        writer.start();
+        long changeCount = 0;
+        while (writer.isAlive()) {
+            long readChangeCount = store.getChangeCount();
+            Assert.assertTrue(readChangeCount >= changeCount);
+            changeCount = readChangeCount;
+            for (CredentialUsage credentialUsage : store.snapshot().values()) {
+                Assert.assertTrue(credentialUsage.getTotalUsageCount() <= uses / 4);
+            }
+        }
+        writer.join();
+        HashMap<String, CredentialUsage> snapshot = store.snapshot();
+        Assert.assertEquals(4, snapshot.size());
+        Assert.assertEquals(uses, store.getChangeCount());
+        for (CredentialUsage credentialUsage : snapshot.values()) {
+            Assert.assertEquals(uses / 4, credentialUsage.getTotalUsageCount().intValue());
+        }
+        Assert.assertEquals(uses / 4, snapshot.get("credential1").getNodeUsage().get("node").intValue());
+        Assert.assertEquals(uses / 8, snapshot.get("credential0").getItemUsage().get("item4").intValue());
+    }
+
+    @Test
+    public void testLoadAndClear() {
+        HashMap<String, CredentialUsage> credentialUsageMap = new HashMap<>();
+        credentialUsageMap.put("credential", new CredentialUsage("credential").incrementItemUsage("item").incrementNodeUsage("node"));
+        CredentialUsageStore store = new CredentialUsageStore(credentialUsageMap);
+        store.incrementItemUsage("credential", "item", System.currentTimeMillis(), 1);
+        CredentialUsage credentialUsage = store.snapshot().get("credential");
+        Assert.assertEquals(3, credentialUsage.getTotalUsageCount().intValue());
+        Assert.assertEquals(2, credentialUsage.getItemUsage().get("item").intValue());
+
+        long changeCount = store.getChangeCount();
+        store.clear();
+        Assert.assertTrue(store.snapshot().isEmpty());
+        Assert.assertTrue(store.getChangeCount() > changeCount);
+    }
+}
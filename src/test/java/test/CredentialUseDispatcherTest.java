@@ -0,0 +1,127 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.listener.CredentialUseConsumer;
+import io.jenkins.plugins.enhanced.credentials.listener.CredentialUseDispatcher;
+import io.jenkins.plugins.enhanced.credentials.listener.CredentialUseEvent;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs without Jenkins, so there is no consumer thread and queued uses are only delivered by {@code drain()}.
+ */
+public class CredentialUseDispatcherTest {
+
+    private final List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+
+    private CredentialUseDispatcher dispatcher(CredentialUseDispatcher.OverflowPolicy overflowPolicy) {
+        return new CredentialUseDispatcher(4, overflowPolicy, Collections.singletonList((CredentialUseConsumer) event -> delivered.add(event.getTimestamp())));
+    }
+
+    private static void dispatch(CredentialUseDispatcher dispatcher, int uses) {
+        for (int i = 0; i < uses; i++) {
+            dispatcher.dispatch(new CredentialUseEvent(i, "credential", "job", null, i));
+        }
+    }
+
+    @Test
+    public void testDropNewest() {
+        CredentialUseDispatcher dispatcher = dispatcher(CredentialUseDispatcher.OverflowPolicy.DROP_NEWEST);
+        dispatch(dispatcher, 6);
+        Assert.assertEquals(4, dispatcher.getQueueDepth());
+        Assert.assertEquals(6, dispatcher.getDispatchedCount());
+        Assert.assertEquals(2, dispatcher.getDroppedCount());
+        Assert.assertEquals(4, dispatcher.drain());
+        Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L), delivered);
+        Assert.assertEquals(4, dispatcher.getConsumedCount());
+        Assert.assertEquals(0, dispatcher.getBlockedCount());
+    }
+
+    @Test
+    public void testDropOldest() {
+        CredentialUseDispatcher dispatcher = dispatcher(CredentialUseDispatcher.OverflowPolicy.DROP_OLDEST);
+        dispatch(dispatcher, 6);
+        Assert.assertEquals(2, dispatcher.getDroppedCount());
+        Assert.assertEquals(4, dispatcher.drain());
+        Assert.assertEquals(Arrays.asList(2L, 3L, 4L, 5L), delivered);
+        Assert.assertEquals(4, dispatcher.getConsumedCount());
+    }
+
+    @Test
+    public void testBlock() {
+        CredentialUseDispatcher dispatcher = dispatcher(CredentialUseDispatcher.OverflowPolicy.BLOCK);
+        // Without a consumer thread the blocked use makes room itself
+        dispatch(dispatcher, 6);
+        Assert.assertEquals(1, dispatcher.getBlockedCount());
+        Assert.assertEquals(0, dispatcher.getDroppedCount());
+        Assert.assertEquals(4, dispatcher.getConsumedCount());
+        Assert.assertEquals(2, dispatcher.drain());
+        Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L), delivered);
+        Assert.assertEquals(6, dispatcher.getConsumedCount());
+        Assert.assertEquals(0, dispatcher.drain());
+    }
+
+    @Test
+    public void testStopAndConsumerFailure() throws InterruptedException {
+        CredentialUseConsumer failing = event -> {
+            throw new IllegalStateException("failing consumer");
+        };
+        CredentialUseDispatcher dispatcher = new CredentialUseDispatcher(4, CredentialUseDispatcher.OverflowPolicy.DROP_NEWEST,
+                Arrays.asList(failing, event -> delivered.add(event.getTimestamp())));
+        dispatch(dispatcher, 2);
+        dispatcher.stop();
+        Assert.assertEquals(Arrays.asList(0L, 1L), delivered);
+        Assert.assertEquals(2, dispatcher.getConsumerFailureCount());
+
+        // Once stopped, uses are delivered by the thread dispatching them
+        dispatch(dispatcher, 1);
+        Assert.assertEquals(3, delivered.size());
+        Assert.assertEquals(0, dispatcher.getQueueDepth());
+        Assert.assertEquals(3, dispatcher.getConsumedCount());
+    }
+
+    @Test
+    public void testUsageChanges() {
+        List<String> events = new ArrayList<>();
+        CredentialUseConsumer consumer = new CredentialUseConsumer() {
+            @Override
+            public void onUse(CredentialUseEvent event) {
+                events.add("use " + event.getTimestamp());
+            }
+
+            @Override
+            public void onUsageChange(UsageEvent usageChange) {
+                events.add("rename " + usageChange.getNewName());
+            }
+        };
+        CredentialUseDispatcher dispatcher = new CredentialUseDispatcher(4, CredentialUseDispatcher.OverflowPolicy.DROP_OLDEST, Collections.singletonList(consumer));
+        dispatcher.dispatch(new CredentialUseEvent(0, "credential", "job", null, 0));
+        dispatcher.dispatchUsageChange(UsageEvent.renameItem("job", "renamed"));
+        for (int i = 1; i <= 3; i++) {
+            dispatcher.dispatch(new CredentialUseEvent(i, "credential", "renamed", null, i));
+        }
+        // The oldest use is dropped, the change behind it is delivered instead of dropped
+        dispatcher.dispatch(new CredentialUseEvent(4, "credential", "renamed", null, 4));
+        Assert.assertEquals(Collections.singletonList("rename renamed"), events);
+        Assert.assertEquals(1, dispatcher.getDroppedCount());
+        Assert.assertEquals(4, dispatcher.drain());
+        Assert.assertEquals(Arrays.asList("rename renamed", "use 1", "use 2", "use 3", "use 4"), events);
+        Assert.assertEquals(4, dispatcher.getConsumedCount());
+
+        // A change waits for room even if uses which don't fit are dropped
+        events.clear();
+        dispatcher = new CredentialUseDispatcher(4, CredentialUseDispatcher.OverflowPolicy.DROP_NEWEST, Collections.singletonList(consumer));
+        for (int i = 0; i < 4; i++) {
+            dispatcher.dispatch(new CredentialUseEvent(i, "credential", "job", null, i));
+        }
+        dispatcher.dispatchUsageChange(UsageEvent.renameItem("job", "renamed"));
+        Assert.assertEquals(0, dispatcher.getDroppedCount());
+        Assert.assertEquals(1, dispatcher.drain());
+        Assert.assertEquals(Arrays.asList("use 0", "use 1", "use 2", "use 3", "rename renamed"), events);
+    }
+}
@@ -1,18 +1,34 @@
 package test;
 
+import com.cloudbees.plugins.credentials.CredentialsUseListener;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.ExtensionList;
 import hudson.model.FreeStyleProject;
 import hudson.model.Label;
+import hudson.slaves.DumbSlave;
+import io.jenkins.plugins.enhanced.credentials.CompiledCredentialRules;
+import io.jenkins.plugins.enhanced.credentials.CredentialDecisionCache;
 import io.jenkins.plugins.enhanced.credentials.CredentialRule;
+import io.jenkins.plugins.enhanced.credentials.CredentialRuleConfiguration;
+import io.jenkins.plugins.enhanced.credentials.CredentialRuleSupporter;
+import io.jenkins.plugins.enhanced.credentials.CredentialRules;
 import io.jenkins.plugins.enhanced.credentials.CredentialUsage;
 import io.jenkins.plugins.enhanced.credentials.CredentialUsages;
+import io.jenkins.plugins.enhanced.credentials.EvaluationMode;
+import io.jenkins.plugins.enhanced.credentials.RuleEffect;
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageJournal;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -24,6 +40,7 @@ public class EnhancedCredentialsPluginTest extends BaseTest{
     private UsernamePasswordCredentialsImpl credential1;
     private UsernamePasswordCredentialsImpl credential2;
     private Label nodeLabel;
+    private DumbSlave agent;
 
 
     @Before
@@ -32,7 +49,7 @@ public class EnhancedCredentialsPluginTest extends BaseTest{
         this.credential1 = this.addSecretTextCredential("credential1");
         this.credential2 = this.addSecretTextCredential("credential2");
         this.nodeLabel = Label.parseExpression("node1");
-        this.jenkinsRule.createOnlineSlave(this.nodeLabel);
+        this.agent = this.jenkinsRule.createOnlineSlave(this.nodeLabel);
     }
 
     @Test
@@ -183,6 +200,35 @@ public class EnhancedCredentialsPluginTest extends BaseTest{
         shouldSuccess(workflowJob);
     }
 
+    @Test
+    public void testDenyRuleWithAnyMatch() throws Exception {
+        this.configure(this.jenkinsRule, false, EvaluationMode.ANY_MATCH, Arrays.asList(
+                this.createRule("allowAll", "credential1.*", ".*", RuleEffect.ALLOW, 0),
+                this.createRule("denySandbox", "credential1.*", "sandbox.*", RuleEffect.DENY, 0)));
+        FreeStyleProject freeStyleProject = this.createFreeStyle("testDenyRuleWithAnyMatch1", credential1);
+        shouldSuccess(freeStyleProject);
+        freeStyleProject = this.createFreeStyle("sandboxTestDenyRuleWithAnyMatch", credential1);
+        shouldFail(freeStyleProject);
+        freeStyleProject = this.createFreeStyle("sandboxTestDenyRuleWithAnyMatch2", credential2);
+        shouldSuccess(freeStyleProject);
+    }
+
+    @Test
+    public void testPriorityWithFirstMatch() throws Exception {
+        this.configure(this.jenkinsRule, true, EvaluationMode.FIRST_MATCH, Arrays.asList(
+                this.createRule("denySandbox", "credential1.*", "sandbox.*", RuleEffect.DENY, 10),
+                this.createRule("allowSandboxTrusted", "credential1.*", "sandboxTrusted.*", RuleEffect.ALLOW, 20),
+                this.createRule("allowAll", "credential1.*", ".*", RuleEffect.ALLOW, 0)));
+        WorkflowJob workflowJob = this.createPipeline("testPriorityWithFirstMatch1", credential1, true);
+        shouldSuccess(workflowJob);
+        workflowJob = this.createPipeline("sandboxTestPriorityWithFirstMatch", credential1, true);
+        shouldFail(workflowJob);
+        workflowJob = this.createPipeline("sandboxTrustedTestPriorityWithFirstMatch", credential1, true);
+        shouldSuccess(workflowJob);
+        workflowJob = this.createPipeline("testPriorityWithFirstMatch2", credential2, true);
+        shouldFail(workflowJob);
+    }
+
     @Test
     public void testCredentialUsageCount() throws Exception {
         WorkflowJob workflowJob = this.createPipeline("testCredentialUsageCountPipeline", credential1,true);
@@ -209,5 +255,113 @@ public class EnhancedCredentialsPluginTest extends BaseTest{
         Assert.assertEquals(1, credentialUsage.getItemUsage().get(freeStyleProject.getFullName()).intValue());
     }
 
+    @Test
+    public void testCredentialUsageCountByNodeAndItem() throws Exception {
+        FreeStyleProject freeStyleProject = this.jenkinsRule.createFreeStyleProject("testCredentialUsageCountByItem");
+        // Each use is counted once, however many listeners see it
+        CredentialsUseListener.fireUse(credential1, this.agent);
+        CredentialsUseListener.fireUse(credential1, freeStyleProject);
+        CredentialUsages credentialUsages  = this.getCredentialUsages(this.jenkinsRule);
+        CredentialUsage credentialUsage = credentialUsages.getCredentialUsageMap().get(credential1.getId());
+        Assert.assertEquals(2, credentialUsage.getTotalUsageCount().intValue());
+        Assert.assertEquals(1, credentialUsage.getNodeUsage().get(this.agent.getNodeName()).intValue());
+        Assert.assertEquals(1, credentialUsage.getItemUsage().get(freeStyleProject.getFullName()).intValue());
+    }
+
+    @Test
+    public void testDecisionCacheInvalidation() throws Exception {
+        this.configure(this.jenkinsRule, true, Arrays.asList(new CredentialRule("allowAll", "credential1.*", ".*")));
+        CredentialDecisionCache cache = CredentialDecisionCache.get();
+        CredentialRuleSupporter credentialRuleSupporter = new CredentialRuleSupporter();
+        MockFolder folder = this.jenkinsRule.createFolder("folder");
+        FreeStyleProject job = folder.createProject(FreeStyleProject.class, "job");
+        FreeStyleProject other = this.jenkinsRule.createFreeStyleProject("other");
+        Assert.assertTrue(credentialRuleSupporter.checkJobHasAccessForCredential(credential1, job));
+        Assert.assertTrue(credentialRuleSupporter.checkJobHasAccessForCredential(credential1, other));
+        CompiledCredentialRules credentialRules = CredentialRuleConfiguration.getCompiledCredentialRules();
+        Assert.assertEquals(Boolean.TRUE, cache.getDecision(credentialRules, credential1.getId(), "folder/job"));
+
+        // Renaming the folder drops the decisions of the items in it
+        folder.renameTo("renamed");
+        Assert.assertNull(cache.getDecision(credentialRules, credential1.getId(), "folder/job"));
+        Assert.assertEquals(Boolean.TRUE, cache.getDecision(credentialRules, credential1.getId(), "other"));
+
+        other.delete();
+        Assert.assertNull(cache.getDecision(credentialRules, credential1.getId(), "other"));
+
+        // Saving the rules drops all decisions
+        Assert.assertTrue(credentialRuleSupporter.checkJobHasAccessForCredential(credential1, job));
+        Assert.assertTrue(cache.getSize() > 0);
+        this.configure(this.jenkinsRule, true, Arrays.asList(new CredentialRule("allowAll", "credential1.*", ".*")));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testRulesReloadedOnExternalEdit() throws Exception {
+        this.configure(this.jenkinsRule, true, Arrays.asList(new CredentialRule("allowAll", "credential1.*", ".*")));
+        CredentialDecisionCache cache = CredentialDecisionCache.get();
+        CredentialRuleSupporter credentialRuleSupporter = new CredentialRuleSupporter();
+        FreeStyleProject job = this.jenkinsRule.createFreeStyleProject("job");
+        CompiledCredentialRules credentialRules = CredentialRuleConfiguration.getCompiledCredentialRules();
+
+        // Checks read the snapshot in memory, a reload would replace it and drop the cached decisions
+        Assert.assertTrue(credentialRuleSupporter.checkJobHasAccessForCredential(credential1, job));
+        Assert.assertTrue(credentialRuleSupporter.checkJobHasAccessForCredential(credential1, job));
+        Assert.assertSame(credentialRules, CredentialRuleConfiguration.getCompiledCredentialRules());
+        Assert.assertEquals(Boolean.TRUE, cache.getDecision(credentialRules, credential1.getId(), job.getFullName()));
+
+        // Nothing is reloaded while the file is unchanged
+        CredentialRules.CredentialRulesReloader reloader = ExtensionList.lookupSingleton(CredentialRules.CredentialRulesReloader.class);
+        reloader.run();
+        Assert.assertSame(credentialRules, CredentialRuleConfiguration.getCompiledCredentialRules());
+        Assert.assertTrue(cache.getSize() > 0);
+
+        CredentialRules.CredentialRulesDescriptorImpl descriptor = (CredentialRules.CredentialRulesDescriptorImpl) this.jenkinsRule.jenkins.getDescriptor(CredentialRules.class);
+        File configFile = new File(this.jenkinsRule.jenkins.getRootDir(), descriptor.getId() + ".xml");
+        long lastModified = configFile.lastModified();
+        String config = new String(Files.readAllBytes(configFile.toPath()), StandardCharsets.UTF_8);
+        Assert.assertTrue(config.contains("credential1.*"));
+        Files.write(configFile.toPath(), config.replace("credential1.*", "otherCredential.*").getBytes(StandardCharsets.UTF_8));
+        // Some file systems only keep seconds
+        Assert.assertTrue(configFile.setLastModified(lastModified + 2000));
+
+        reloader.run();
+        Assert.assertNotSame(credentialRules, CredentialRuleConfiguration.getCompiledCredentialRules());
+        Assert.assertEquals("otherCredential.*", descriptor.credentialRuleList.get(0).getCredentialPattern());
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertFalse(credentialRuleSupporter.checkJobHasAccessForCredential(credential1, job));
+    }
+
+    @Test
+    public void testUsageFlushAndReload() throws Exception {
+        CredentialUsages.CredentialUsageDescriptor descriptor = (CredentialUsages.CredentialUsageDescriptor) this.jenkinsRule.jenkins.getDescriptor(CredentialUsages.class);
+        FreeStyleProject freeStyleProject = this.jenkinsRule.createFreeStyleProject("testUsageFlushAndReload");
+        descriptor.flush();
+        long flushCount = descriptor.getFlushCount();
+        long firstUseTime = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            CredentialUsages.incrementCredentialUsage(credential2, freeStyleProject);
+        }
+        // Counts the queued uses
+        this.getCredentialUsages(this.jenkinsRule);
+        Assert.assertEquals(3, descriptor.getPendingChangeCount());
+        // The lag is the age of the oldest change not written, which was made after firstUseTime
+        long flushLag = descriptor.getFlushLag();
+        Assert.assertTrue(flushLag >= 0);
+        Assert.assertTrue(flushLag <= System.currentTimeMillis() - firstUseTime);
+
+        descriptor.flush();
+        Assert.assertEquals(0, descriptor.getPendingChangeCount());
+        Assert.assertEquals(0, descriptor.getFlushLag());
+        Assert.assertEquals(flushCount + 1, descriptor.getFlushCount());
+        Assert.assertEquals(0, descriptor.getFlushFailureCount());
 
+        // What was flushed is on disk, whatever happens to the controller now
+        UsageJournal usageJournal = descriptor.getUsageJournal();
+        Assert.assertNotNull(usageJournal);
+        CredentialUsageStore reloaded = new UsageJournal(usageJournal.getDirectory()).recover();
+        CredentialUsage credentialUsage = reloaded.snapshot().get(credential2.getId());
+        Assert.assertEquals(3, credentialUsage.getTotalUsageCount().intValue());
+        Assert.assertEquals(3, credentialUsage.getItemUsage().get(freeStyleProject.getFullName()).intValue());
+    }
 }
@@ -0,0 +1,40 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.engine.ClassifiedPattern;
+import io.jenkins.plugins.enhanced.credentials.engine.ItemPathIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class ItemPathIndexTest {
+
+    @Test
+    public void testCandidatesCoverAllMatches() {
+        List<String> patterns = Arrays.asList("team-a/.*", "team-a/backend/.*", "team-a/backend/deploy", "team-b/.*",
+                ".*", "deploy-.*", "team-a/ba.*", "team-[ab]/.*", "team-a/(x|y)/.*", "(?i)TEAM-A/.*");
+        List<String> items = Arrays.asList("team-a", "team-a/job", "team-a/backend", "team-a/backend/deploy",
+                "team-a/backend/deploy/main", "team-b/job", "team-c/job", "deploy-prod", "team-a/x/job");
+        List<ClassifiedPattern> classifiedPatterns = new ArrayList<>();
+        for (String pattern : patterns) {
+            classifiedPatterns.add(ClassifiedPattern.classify(Pattern.compile(pattern)));
+        }
+        ItemPathIndex itemPathIndex = ItemPathIndex.compile(classifiedPatterns);
+        Assert.assertEquals(6, itemPathIndex.getAnchoredPatternCount());
+        for (String item : items) {
+            BitSet candidates = itemPathIndex.candidates(item);
+            for (int i = 0; i < patterns.size(); i++) {
+                if (Pattern.compile(patterns.get(i)).matcher(item).matches()) {
+                    Assert.assertTrue(String.format("Pattern:%s Item:%s", patterns.get(i), item), candidates.get(i));
+                }
+            }
+        }
+        Assert.assertFalse(itemPathIndex.candidates("team-c/job").get(0));
+        Assert.assertFalse(itemPathIndex.candidates("team-a/frontend/job").get(1));
+        Assert.assertTrue(itemPathIndex.candidates("team-c/job").get(4));
+    }
+}
@@ -0,0 +1,77 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.CredentialUsage;
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import io.jenkins.plugins.enhanced.credentials.usage.LegacyUsageReader;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageJournal;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+public class LegacyUsageReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMigrateToSnapshot() throws IOException {
+        File xmlFile = temporaryFolder.newFile("io.jenkins.plugins.enhanced.credentials.CredentialUsages.xml");
+        Files.write(xmlFile.toPath(), ("<?xml version='1.1' encoding='UTF-8'?>\n"
+                + "<io.jenkins.plugins.enhanced.credentials.CredentialUsages_-CredentialUsageDescriptor plugin=\"enhanced-credentials\">\n"
+                + "  <credentialUsageMap>\n"
+                + "    <entry>\n"
+                + "      <string>credential1</string>\n"
+                + "      <io.jenkins.plugins.enhanced.credentials.CredentialUsage>\n"
+                + "        <credentialId>credential1</credentialId>\n"
+                + "        <totalUsageCount>6</totalUsageCount>\n"
+                + "        <itemUsage>\n"
+                + "          <entry>\n"
+                + "            <string>folder/job &amp; co</string>\n"
+                + "            <int>5</int>\n"
+                + "          </entry>\n"
+                + "        </itemUsage>\n"
+                + "        <nodeUsage>\n"
+                + "          <entry>\n"
+                + "            <string>agent</string>\n"
+                + "            <int>1</int>\n"
+                + "          </entry>\n"
+                + "        </nodeUsage>\n"
+                + "      </io.jenkins.plugins.enhanced.credentials.CredentialUsage>\n"
+                + "    </entry>\n"
+                + "    <entry>\n"
+                + "      <string>unused</string>\n"
+                + "      <io.jenkins.plugins.enhanced.credentials.CredentialUsage>\n"
+                + "        <credentialId>unused</credentialId>\n"
+                + "        <totalUsageCount>0</totalUsageCount>\n"
+                + "        <itemUsage/>\n"
+                + "        <nodeUsage/>\n"
+                + "      </io.jenkins.plugins.enhanced.credentials.CredentialUsage>\n"
+                + "    </entry>\n"
+                + "  </credentialUsageMap>\n"
+                + "</io.jenkins.plugins.enhanced.credentials.CredentialUsages_-CredentialUsageDescriptor>\n").getBytes(StandardCharsets.UTF_8));
+
+        CredentialUsageStore legacyUsage = new CredentialUsageStore(new HashMap<>());
+        Assert.assertEquals(1, LegacyUsageReader.read(xmlFile, legacyUsage));
+        File directory = temporaryFolder.newFolder();
+        new UsageJournal(directory).writeInitialSnapshot(legacyUsage);
+
+        CredentialUsageStore credentialUsageStore = new UsageJournal(directory).recover();
+        CredentialUsage credentialUsage = credentialUsageStore.snapshot().get("credential1");
+        Assert.assertEquals(6, credentialUsage.getTotalUsageCount().intValue());
+        Assert.assertEquals(5, credentialUsage.getItemUsage().get("folder/job & co").intValue());
+        Assert.assertEquals(1, credentialUsage.getNodeUsage().get("agent").intValue());
+        Assert.assertEquals("folder/job & co", credentialUsageStore.getCounters("credential1").getTopItems().get(0).getName());
+        // The snapshot body is gzip compressed by default, right after magic, version and compression
+        byte[] snapshot = Files.readAllBytes(new File(directory, "snapshot-00000000000000000000.bin").toPath());
+        Assert.assertEquals(6, snapshot[7]);
+        Assert.assertEquals((byte) 0x1f, snapshot[9]);
+        Assert.assertEquals((byte) 0x8b, snapshot[10]);
+    }
+}
@@ -0,0 +1,80 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.CredentialUsage;
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import io.jenkins.plugins.enhanced.credentials.usage.MappedUsageFile;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageCounter;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageRetention;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+public class MappedUsageFileTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMigrateAndRecover() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        HashMap<String, CredentialUsage> legacyUsage = new HashMap<>();
+        legacyUsage.put("credential1", new CredentialUsage("credential1").incrementItemUsage("job1"));
+        MappedUsageFile usageFile = new MappedUsageFile(directory);
+        Assert.assertTrue(usageFile.isEmpty());
+        usageFile.writeInitialSnapshot(new CredentialUsageStore(legacyUsage));
+        usageFile.recover();
+        usageFile.record(UsageEvent.itemUsage("credential1", "job1", 4));
+        usageFile.record(UsageEvent.nodeUsage("credential1", "agent"));
+        usageFile.record(UsageEvent.itemUsage("credential2", "job2", 7));
+        Assert.assertEquals(3, usageFile.flush());
+        Assert.assertEquals(3, usageFile.getRecordCount());
+        usageFile.close();
+
+        // A name torn by a crash is dropped, the records using known names are kept
+        try (FileOutputStream names = new FileOutputStream(new File(directory, "names.bin"), true)) {
+            names.write(new byte[]{0, 10, 'j'});
+        }
+        usageFile = new MappedUsageFile(directory);
+        CredentialUsageStore credentialUsageStore = usageFile.recover();
+        HashMap<String, CredentialUsage> usage = credentialUsageStore.snapshot();
+        Assert.assertEquals(3, usage.get("credential1").getTotalUsageCount().intValue());
+        Assert.assertEquals(2, usage.get("credential1").getItemUsage().get("job1").intValue());
+        Assert.assertEquals(1, usage.get("credential1").getNodeUsage().get("agent").intValue());
+        UsageCounter itemUsage = credentialUsageStore.getCounters("credential2").getItemUsage("job2");
+        Assert.assertEquals(7, itemUsage.getLastBuildNumber());
+        Assert.assertEquals(2, credentialUsageStore.getCounters("credential1").getTopItems().get(0).getCount());
+
+        // Freed records are reused
+        usageFile.record(UsageEvent.renameItem("job1", "job2"));
+        usageFile.record(UsageEvent.removeNode("agent"));
+        Assert.assertEquals(2, usageFile.getRecordCount());
+        usageFile.close();
+        usageFile = new MappedUsageFile(directory);
+        usage = usageFile.recover().snapshot();
+        Assert.assertEquals(2, usage.get("credential1").getItemUsage().get("job2").intValue());
+        Assert.assertTrue(usage.get("credential1").getNodeUsage().isEmpty());
+        Assert.assertEquals(2, usageFile.getRecordCount());
+
+        usageFile.record(UsageEvent.evictItem("credential2", "job2"));
+        Assert.assertEquals(2, usageFile.getRecordCount());
+        usageFile.close();
+        usageFile = new MappedUsageFile(directory);
+        usage = usageFile.recover().snapshot();
+        Assert.assertEquals(2, usage.get("credential1").getItemUsage().get("job2").intValue());
+        Assert.assertEquals(1, usage.get("credential2").getItemUsage().get(UsageRetention.OTHER_ITEMS).intValue());
+
+        usageFile.record(UsageEvent.clear());
+        usageFile.record(UsageEvent.itemUsage("credential3", "job3", 1));
+        usageFile.close();
+        usage = new MappedUsageFile(directory).recover().snapshot();
+        Assert.assertEquals(1, usage.size());
+        Assert.assertEquals(1, usage.get("credential3").getTotalUsageCount().intValue());
+    }
+}
@@ -0,0 +1,150 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import io.jenkins.plugins.enhanced.credentials.usage.MergedUsage;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class MergedUsageTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testIdempotentMerge() throws IOException {
+        CredentialUsageStore usageA = new CredentialUsageStore(new HashMap<>());
+        usageA.apply(UsageEvent.itemUsage("credential1", "job1", 1));
+        usageA.apply(UsageEvent.itemUsage("credential1", "job1", 2));
+        usageA.apply(UsageEvent.nodeUsage("credential2", "agent"));
+        byte[] exportA = export(new MergedUsage(temporaryFolder.newFolder()), "controllerA", usageA);
+
+        MergedUsage mergedB = new MergedUsage(temporaryFolder.newFolder());
+        CredentialUsageStore usageB = new CredentialUsageStore(new HashMap<>());
+        usageB.apply(UsageEvent.itemUsage("credential1", "job9", 1));
+        Assert.assertEquals(4, mergedB.merge("controllerB", new ByteArrayInputStream(exportA)));
+        Assert.assertEquals(0, mergedB.merge("controllerB", new ByteArrayInputStream(exportA)));
+        Assert.assertEquals(2, mergedB.getTotalUsage("credential1"));
+
+        // A sees its own usage come back through B without counting it twice
+        File directoryC = temporaryFolder.newFolder();
+        MergedUsage mergedC = new MergedUsage(directoryC);
+        byte[] exportB = export(mergedB, "controllerB", usageB);
+        mergedC.merge("controllerC", new ByteArrayInputStream(exportB));
+        mergedC.merge("controllerC", new ByteArrayInputStream(exportA));
+        Assert.assertEquals(3, mergedC.getTotalUsage("credential1"));
+        Assert.assertEquals(1, mergedC.getTotalUsage("credential2"));
+        Assert.assertEquals(2, mergedC.getControllers().size());
+
+        MergedUsage reloaded = new MergedUsage(directoryC);
+        reloaded.load();
+        Assert.assertEquals(3, reloaded.getTotalUsage("credential1"));
+        Assert.assertEquals("credential1", reloaded.getTotalUsage().get(0).getKey());
+
+        MergedUsage mergedA = new MergedUsage(temporaryFolder.newFolder());
+        mergedA.merge("controllerA", new ByteArrayInputStream(exportB));
+        Assert.assertEquals(1, mergedA.getTotalUsage("credential1"));
+    }
+
+    @Test
+    public void testNewEpochAfterShrinking() throws IOException {
+        File directoryA = temporaryFolder.newFolder();
+        MergedUsage mergedA = new MergedUsage(directoryA);
+        CredentialUsageStore usageA = new CredentialUsageStore(new HashMap<>());
+        for (int build = 1; build <= 3; build++) {
+            usageA.apply(UsageEvent.itemUsage("credential1", "job1", build));
+        }
+        byte[] oldExport = export(mergedA, "controllerA", usageA);
+        MergedUsage mergedB = new MergedUsage(temporaryFolder.newFolder());
+        mergedB.merge("controllerB", new ByteArrayInputStream(oldExport));
+        Assert.assertEquals(3, mergedB.getTotalUsage("credential1"));
+
+        // Cleared usage would hide behind the old higher count without a new epoch
+        usageA.apply(UsageEvent.clear());
+        mergedA.startLocalEpoch();
+        // The epoch is written by the next flush or export, not by the change
+        MergedUsage unwrittenA = new MergedUsage(directoryA);
+        unwrittenA.load();
+        Assert.assertEquals(0, unwrittenA.getLocalEpoch());
+        usageA.apply(UsageEvent.itemUsage("credential1", "job2", 1));
+        mergedB.merge("controllerB", new ByteArrayInputStream(export(mergedA, "controllerA", usageA)));
+        Assert.assertEquals(1, mergedB.getTotalUsage("credential1"));
+        // An export of the old epoch changes nothing
+        Assert.assertEquals(0, mergedB.merge("controllerB", new ByteArrayInputStream(oldExport)));
+        Assert.assertEquals(1, mergedB.getTotalUsage("credential1"));
+
+        MergedUsage reloadedA = new MergedUsage(directoryA);
+        reloadedA.load();
+        Assert.assertEquals(mergedA.getLocalEpoch(), reloadedA.getLocalEpoch());
+        Assert.assertTrue(reloadedA.getLocalEpoch() > 0);
+    }
+
+    @Test
+    public void testTruncatedMerge() throws IOException {
+        MergedUsage mergedA = new MergedUsage(temporaryFolder.newFolder());
+        CredentialUsageStore usageA = new CredentialUsageStore(new HashMap<>());
+        for (int build = 1; build <= 3; build++) {
+            usageA.apply(UsageEvent.itemUsage("credential1", "job1", build));
+        }
+        File directoryB = temporaryFolder.newFolder();
+        MergedUsage mergedB = new MergedUsage(directoryB);
+        mergedB.merge("controllerB", new ByteArrayInputStream(export(mergedA, "controllerA", usageA)));
+
+        // Higher counts of a truncated export are not merged
+        usageA.apply(UsageEvent.itemUsage("credential1", "job1", 4));
+        assertTruncatedMergeFails(mergedB, export(mergedA, "controllerA", usageA));
+        Assert.assertEquals(3, mergedB.getTotalUsage("credential1"));
+
+        // Nor is a newer epoch clearing the merged counters
+        usageA.apply(UsageEvent.clear());
+        mergedA.startLocalEpoch();
+        usageA.apply(UsageEvent.itemUsage("credential1", "job2", 1));
+        assertTruncatedMergeFails(mergedB, export(mergedA, "controllerA", usageA));
+        Assert.assertEquals(3, mergedB.getTotalUsage("credential1"));
+
+        MergedUsage reloadedB = new MergedUsage(directoryB);
+        reloadedB.load();
+        Assert.assertEquals(3, reloadedB.getTotalUsage("credential1"));
+    }
+
+    /**
+     * Merges the export without its end marker, as if the upload was cut off after the last counter.
+     */
+    private static void assertTruncatedMergeFails(MergedUsage mergedUsage, byte[] export) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(export))) {
+            byte[] buffer = new byte[4096];
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                content.write(buffer, 0, read);
+            }
+        }
+        ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(truncated)) {
+            output.write(content.toByteArray(), 0, content.size() - 1);
+        }
+        try {
+            mergedUsage.merge("controllerB", new ByteArrayInputStream(truncated.toByteArray()));
+            Assert.fail();
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    private static byte[] export(MergedUsage mergedUsage, String controllerId, CredentialUsageStore usage) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        mergedUsage.export(controllerId, usage, output);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,77 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.engine.MultiPatternMatcher;
+import io.jenkins.plugins.enhanced.credentials.engine.RegexBudgetExceededException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class MultiPatternMatcherTest {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "deploy-key-prod",
+            "team-a/.*",
+            "^kubernetes.*$",
+            "(svc|app)-[a-z]+\\d{1,3}",
+            "[^/]+/build",
+            "\\Qa.b\\E-.+",
+            "(a+)+$",
+            "(?i)CaseInsensitive",
+            "(\\w)\\1-repeated",
+            "credential1.*");
+
+    private static final List<String> INPUTS = Arrays.asList(
+            "deploy-key-prod", "deploy-key-prod2", "team-a/", "team-a/repo/main", "team-b/repo",
+            "kubernetes", "kubernetes_deployments", "svc-api12", "app-x", "app-x1234", "repo/build",
+            "org/repo/build", "a.b-1", "axb-1", "aaaa", "caseinsensitive", "xx-repeated", "xy-repeated",
+            "credential1", "credential2", "team-a/line\nbreak", "");
+
+    @Test
+    public void testMatchesLikeJavaRegex() {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String pattern : PATTERNS) {
+            patterns.add(Pattern.compile(pattern));
+        }
+        MultiPatternMatcher matcher = MultiPatternMatcher.compile(patterns);
+        Assert.assertEquals(PATTERNS.size(), matcher.getPatternCount());
+        Assert.assertEquals(2, matcher.getFallbackPatternCount());
+        for (String input : INPUTS) {
+            BitSet matches = matcher.match(input);
+            for (int i = 0; i < patterns.size(); i++) {
+                Assert.assertEquals(String.format("Pattern:%s Input:%s", patterns.get(i), input),
+                        patterns.get(i).matcher(input).matches(), matches.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testNullPatternNeverMatches() {
+        MultiPatternMatcher matcher = MultiPatternMatcher.compile(Arrays.asList(null, Pattern.compile(".*")));
+        BitSet matches = matcher.match("anything");
+        Assert.assertFalse(matches.get(0));
+        Assert.assertTrue(matches.get(1));
+    }
+
+    @Test
+    public void testCatastrophicPatterns() {
+        String input = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+        // Expressible by the automaton, matched in linear time
+        MultiPatternMatcher matcher = MultiPatternMatcher.compile(Arrays.asList(Pattern.compile("(.*a){20}b")));
+        Assert.assertEquals(0, matcher.getFallbackPatternCount());
+        Assert.assertTrue(matcher.match(input).isEmpty());
+        // Back references need the regex engine, which gives up once the step budget is used
+        matcher = MultiPatternMatcher.compile(Arrays.asList(Pattern.compile("(a+)+\\1b")));
+        Assert.assertEquals(1, matcher.getFallbackPatternCount());
+        try {
+            matcher.match(input);
+            Assert.fail("Step budget should be exceeded");
+        } catch (RegexBudgetExceededException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.engine.ClassifiedPattern;
+import io.jenkins.plugins.enhanced.credentials.engine.PatternIndex;
+import io.jenkins.plugins.enhanced.credentials.engine.PatternKind;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class PatternIndexTest {
+
+    @Test
+    public void testClassification() {
+        Assert.assertEquals(PatternKind.EXACT, ClassifiedPattern.classify(Pattern.compile("deploy-key-prod")).getKind());
+        Assert.assertEquals(PatternKind.EXACT, ClassifiedPattern.classify(Pattern.compile("deploy\\.key")).getKind());
+        Assert.assertEquals(PatternKind.PREFIX, ClassifiedPattern.classify(Pattern.compile("team-a/.*")).getKind());
+        Assert.assertEquals(PatternKind.PREFIX, ClassifiedPattern.classify(Pattern.compile(".*")).getKind());
+        Assert.assertEquals(PatternKind.GLOB, ClassifiedPattern.classify(Pattern.compile("team-.*-prod")).getKind());
+        Assert.assertEquals(PatternKind.GLOB, ClassifiedPattern.classify(Pattern.compile(".*-prod")).getKind());
+        Assert.assertEquals(PatternKind.REGEX, ClassifiedPattern.classify(Pattern.compile("team-[ab]/.*")).getKind());
+        Assert.assertEquals(PatternKind.REGEX, ClassifiedPattern.classify(Pattern.compile("(?i)deploy")).getKind());
+    }
+
+    @Test
+    public void testMatchesLikeJavaRegex() {
+        List<String> patterns = Arrays.asList("deploy-key-prod", "deploy-key-prod", "team-a/.*", "team-.*", ".*",
+                "team-.*-prod", ".*-prod", "team-[ab]/.*", "(?i)DEPLOY-.*");
+        List<String> inputs = Arrays.asList("deploy-key-prod", "deploy-key-prod2", "team-a/", "team-a/repo", "team-b/repo",
+                "team-x-prod", "team--prod", "team-prod", "x-prod", "team-a/line\nbreak", "", "Deploy-key");
+        List<ClassifiedPattern> classifiedPatterns = new ArrayList<>();
+        for (String pattern : patterns) {
+            classifiedPatterns.add(ClassifiedPattern.classify(Pattern.compile(pattern)));
+        }
+        PatternIndex patternIndex = PatternIndex.compile(classifiedPatterns);
+        Assert.assertEquals(Integer.valueOf(2), patternIndex.getKindCounts().get(PatternKind.EXACT));
+        Assert.assertEquals(Integer.valueOf(3), patternIndex.getKindCounts().get(PatternKind.PREFIX));
+        Assert.assertEquals(Integer.valueOf(2), patternIndex.getKindCounts().get(PatternKind.GLOB));
+        Assert.assertEquals(Integer.valueOf(2), patternIndex.getKindCounts().get(PatternKind.REGEX));
+        for (String input : inputs) {
+            BitSet matches = patternIndex.match(input);
+            for (int i = 0; i < patterns.size(); i++) {
+                boolean expected = Pattern.compile(patterns.get(i)).matcher(input).matches();
+                String message = String.format("Pattern:%s Input:%s", patterns.get(i), input);
+                Assert.assertEquals(message, expected, matches.get(i));
+                Assert.assertEquals(message, expected, classifiedPatterns.get(i).matches(input));
+            }
+        }
+    }
+
+    @Test
+    public void testFilteredPrefixTrie() {
+        List<String> patterns = new ArrayList<>(Arrays.asList("team-a-.*-prod", "team-b-[0-9]+", "team-a-[xy]", "team-d/.*\\.yml",
+                "team-c-.*$", "team-e-[0-9]$", "^team-.*", "team-"));
+        // More patterns share this prefix than are matched one by one, they go to the automaton
+        for (int i = 0; i < 20; i++) {
+            patterns.add("shared-.*-" + i);
+        }
+        List<String> inputs = Arrays.asList("team-a-1-prod", "team-a-1-dev", "team-a-x", "team-a-z", "team-b-42", "team-b-",
+                "team-d/a.yml", "team-d/ayml", "team-c-anything", "team-e-7", "team-", "team", "", "shared-1-3", "shared-abc-19",
+                "shared-", "shared-x-20", "team-a-1-prod\n", "team-b-4\r\n", "team-c-x\n", "team-e-7\n", "team-a-1-prod\u2028",
+                "team-a-1\n-prod");
+        assertMatchesLikeJavaRegex(patterns, inputs);
+    }
+
+    private static void assertMatchesLikeJavaRegex(List<String> patterns, List<String> inputs) {
+        List<ClassifiedPattern> classifiedPatterns = new ArrayList<>();
+        for (String pattern : patterns) {
+            classifiedPatterns.add(ClassifiedPattern.classify(Pattern.compile(pattern)));
+        }
+        PatternIndex patternIndex = PatternIndex.compile(classifiedPatterns);
+        for (String input : inputs) {
+            BitSet matches = patternIndex.match(input);
+            for (int i = 0; i < patterns.size(); i++) {
+                boolean expected = Pattern.compile(patterns.get(i)).matcher(input).matches();
+                Assert.assertEquals(String.format("Pattern:%s Input:%s", patterns.get(i), input), expected, matches.get(i));
+            }
+        }
+    }
+}
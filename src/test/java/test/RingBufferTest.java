@@ -0,0 +1,71 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.RingBuffer;
+import io.jenkins.plugins.enhanced.credentials.audit.AccessDecisionEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RingBufferTest {
+
+    private static AccessDecisionEvent event(long timestamp) {
+        return new AccessDecisionEvent(timestamp, "credential", "item", true, false, 1);
+    }
+
+    @Test
+    public void testOfferFailsWhenFull() {
+        RingBuffer<AccessDecisionEvent> buffer = new RingBuffer<>(3);
+        Assert.assertEquals(4, buffer.getCapacity());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(event(i)));
+        }
+        Assert.assertFalse(buffer.offer(event(4)));
+        Assert.assertEquals(0, buffer.poll().getTimestamp());
+        Assert.assertTrue(buffer.offer(event(5)));
+        for (long expected : new long[]{1, 2, 3, 5}) {
+            Assert.assertEquals(expected, buffer.poll().getTimestamp());
+        }
+        Assert.assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        RingBuffer<AccessDecisionEvent> buffer = new RingBuffer<>(64);
+        int producers = 4;
+        int eventsPerProducer = 20_000;
+        AtomicInteger dropped = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long base = (long) p * eventsPerProducer;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < eventsPerProducer; i++) {
+                    if (!buffer.offer(event(base + i))) {
+                        dropped.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        Set<Long> consumed = new HashSet<>();
+        boolean running = true;
+        while (running) {
+            running = threads.stream().anyMatch(Thread::isAlive);
+            for (AccessDecisionEvent event = buffer.poll(); event != null; event = buffer.poll()) {
+                Assert.assertTrue(consumed.add(event.getTimestamp()));
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (AccessDecisionEvent event = buffer.poll(); event != null; event = buffer.poll()) {
+            Assert.assertTrue(consumed.add(event.getTimestamp()));
+        }
+        Assert.assertEquals(producers * eventsPerProducer, consumed.size() + dropped.get());
+    }
+}
@@ -0,0 +1,103 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import io.jenkins.plugins.enhanced.credentials.usage.StaleCredentialScan;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class StaleCredentialScanTest extends BaseTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    private CredentialUsageStore credentialUsageStore;
+
+    @Before
+    public void setup() throws Exception {
+        this.setJenkinsRule(jenkinsRule);
+        this.addSecretTextCredential("stale");
+        this.addSecretTextCredential("recent");
+        this.addSecretTextCredential("unused");
+        long now = System.currentTimeMillis();
+        this.credentialUsageStore = new CredentialUsageStore(new HashMap<>());
+        this.credentialUsageStore.incrementItemUsage("stale", "job", now - TimeUnit.DAYS.toMillis(40), 1);
+        this.credentialUsageStore.incrementItemUsage("recent", "job", now - TimeUnit.DAYS.toMillis(1), 2);
+    }
+
+    @Test
+    public void testStaleRecentAndUnusedCredentials() {
+        StaleCredentialScan scan = new StaleCredentialScan(30, credentialUsageStore);
+        scan.run();
+        Assert.assertEquals(StaleCredentialScan.State.COMPLETED, scan.getState());
+        Assert.assertEquals(3, scan.getScannedCredentialCount());
+        List<StaleCredentialScan.StaleCredential> staleCredentials = scan.getStaleCredentials();
+        Assert.assertEquals(2, staleCredentials.size());
+        StaleCredentialScan.StaleCredential stale = find(staleCredentials, "stale");
+        Assert.assertNotNull(stale.getLastUsedDate());
+        StaleCredentialScan.StaleCredential unused = find(staleCredentials, "unused");
+        Assert.assertNull(unused.getLastUsedDate());
+    }
+
+    @Test
+    public void testCancelledScan() {
+        StaleCredentialScan scan = new StaleCredentialScan(30, credentialUsageStore);
+        scan.cancel();
+        scan.run();
+        Assert.assertEquals(StaleCredentialScan.State.CANCELLED, scan.getState());
+        Assert.assertFalse(scan.isRunning());
+        Assert.assertEquals(0, scan.getScannedCredentialCount());
+        Assert.assertTrue(scan.getStaleCredentials().isEmpty());
+    }
+
+    @Test
+    public void testResumedScan() throws Exception {
+        StaleCredentialScan cancelled = new StaleCredentialScan(30, credentialUsageStore);
+        cancelled.cancel();
+        cancelled.run();
+        StaleCredentialScan resumed = new StaleCredentialScan(cancelled);
+        resumed.run();
+        Assert.assertEquals(StaleCredentialScan.State.COMPLETED, resumed.getState());
+        Assert.assertEquals(3, resumed.getScannedCredentialCount());
+        Assert.assertEquals(2, resumed.getStaleCredentials().size());
+
+        this.credentialUsageStore.incrementItemUsage("stale", "job", System.currentTimeMillis(), 1);
+        // Only a new scan walks the stores already scanned again
+        this.addSecretTextCredential("added");
+        StaleCredentialScan resumedAgain = new StaleCredentialScan(resumed);
+        resumedAgain.run();
+        Assert.assertEquals(StaleCredentialScan.State.COMPLETED, resumedAgain.getState());
+        Assert.assertEquals(3, resumedAgain.getScannedCredentialCount());
+        List<StaleCredentialScan.StaleCredential> staleCredentials = resumedAgain.getStaleCredentials();
+        // The stale credentials found before are checked again against the uses
+        Assert.assertEquals(1, staleCredentials.size());
+        find(staleCredentials, "unused");
+    }
+
+    @Test
+    public void testStartedScan() throws Exception {
+        StaleCredentialScan scan = StaleCredentialScan.start(30, credentialUsageStore);
+        Assert.assertSame(scan, StaleCredentialScan.getLatest());
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (scan.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(StaleCredentialScan.State.COMPLETED, scan.getState());
+        Assert.assertEquals(2, scan.getStaleCredentials().size());
+    }
+
+    private static StaleCredentialScan.StaleCredential find(List<StaleCredentialScan.StaleCredential> staleCredentials, String credentialId) {
+        List<StaleCredentialScan.StaleCredential> found = staleCredentials.stream()
+                .filter(staleCredential -> credentialId.equals(staleCredential.getCredentialId()))
+                .collect(Collectors.toList());
+        Assert.assertEquals(1, found.size());
+        return found.get(0);
+    }
+}
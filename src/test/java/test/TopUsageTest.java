@@ -0,0 +1,30 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.usage.TopUsage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TopUsageTest {
+
+    @Test
+    public void testHeavyHitters() {
+        TopUsage topUsage = new TopUsage();
+        for (int i = 0; i < 10000; i++) {
+            topUsage.add("folder/pr-" + i, 1);
+            if (i % 10 == 0) {
+                topUsage.add("folder/main", 1);
+            }
+            if (i % 20 == 0) {
+                topUsage.add("folder/release", 1);
+            }
+        }
+        List<TopUsage.Entry> entries = topUsage.getEntries();
+        Assert.assertEquals(20, entries.size());
+        Assert.assertEquals("folder/main", entries.get(0).getName());
+        Assert.assertTrue(entries.get(0).getGuaranteedCount() <= 1000);
+        Assert.assertTrue(entries.get(0).getCount() >= 1000);
+        Assert.assertEquals("folder/release", entries.get(1).getName());
+    }
+}
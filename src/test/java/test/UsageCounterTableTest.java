@@ -0,0 +1,89 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.usage.NameDictionary;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageCounter;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageCounterTable;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UsageCounterTableTest {
+
+    @Test
+    public void testGrowAndGet() {
+        NameDictionary names = new NameDictionary();
+        UsageCounterTable table = new UsageCounterTable();
+        for (int i = 0; i < 1000; i++) {
+            int nameId = names.intern("folder/job-" + i);
+            for (int use = 0; use <= i % 3; use++) {
+                table.recordUse(nameId, 1000L + i + use, i);
+            }
+        }
+        Assert.assertEquals(1000, table.size());
+        Assert.assertEquals(1000, names.size());
+        Assert.assertEquals(names.intern("folder/job-10"), names.intern(new String("folder/job-10")));
+
+        UsageCounter counter = table.get(names.intern("folder/job-500"));
+        Assert.assertEquals(3, counter.getCount());
+        Assert.assertEquals(1500L, counter.getFirstUsed());
+        Assert.assertEquals(1502L, counter.getLastUsed());
+        Assert.assertNull(table.get(names.intern("folder/unused")));
+
+        long[] total = new long[1];
+        table.forEach((nameId, count, firstUsed, lastUsed, lastBuildNumber) -> total[0] += count);
+        Assert.assertEquals(1999, total[0]);
+    }
+
+    @Test
+    public void testRenameAtResizeThreshold() {
+        // Moving a counter to a new name adds to the table from the visitor, which may resize it
+        for (int n = 1; n <= 40; n++) {
+            for (int victim = 0; victim < n; victim++) {
+                UsageCounterTable table = new UsageCounterTable();
+                for (int nameId = 0; nameId < n; nameId++) {
+                    table.recordUse(nameId, 1000L + nameId, UsageEvent.NO_BUILD_NUMBER);
+                }
+                Assert.assertTrue(table.remove(victim, (id, count, firstUsed, lastUsed, lastBuildNumber) -> table.add(1000, count, firstUsed, lastUsed, lastBuildNumber)));
+                Assert.assertEquals(n, table.size());
+                Assert.assertNull(table.get(victim));
+                Assert.assertEquals(1000L + victim, table.get(1000).getLastUsed());
+                long[] total = new long[1];
+                table.forEach((nameId, count, firstUsed, lastUsed, lastBuildNumber) -> total[0] += count);
+                Assert.assertEquals(n, total[0]);
+            }
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        UsageCounterTable table = new UsageCounterTable();
+        for (int nameId = 0; nameId < 500; nameId++) {
+            table.recordUse(nameId, 1000L + nameId, UsageEvent.NO_BUILD_NUMBER);
+        }
+        for (int nameId = 0; nameId < 500; nameId += 3) {
+            Assert.assertTrue(table.remove(nameId, (id, count, firstUsed, lastUsed, lastBuildNumber) -> Assert.assertEquals(1, count)));
+        }
+        Assert.assertFalse(table.remove(0, (id, count, firstUsed, lastUsed, lastBuildNumber) -> Assert.fail()));
+        Assert.assertEquals(333, table.size());
+        // Every counter left is still found after the others shifted back
+        for (int nameId = 0; nameId < 500; nameId++) {
+            UsageCounter counter = table.get(nameId);
+            if (nameId % 3 == 0) {
+                Assert.assertNull(counter);
+            } else {
+                Assert.assertEquals(1000L + nameId, counter.getLastUsed());
+            }
+        }
+
+        // The table shrinks once mostly empty and keeps the counters left
+        for (int nameId = 1; nameId < 490; nameId++) {
+            table.remove(nameId, (id, count, firstUsed, lastUsed, lastBuildNumber) -> {
+            });
+        }
+        Assert.assertEquals(7, table.size());
+        Assert.assertTrue(table.capacity() < 64);
+        for (int nameId = 490; nameId < 500; nameId++) {
+            Assert.assertEquals(nameId % 3 != 0, table.get(nameId) != null);
+        }
+    }
+}
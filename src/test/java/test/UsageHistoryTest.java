@@ -0,0 +1,37 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.usage.UsageHistory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class UsageHistoryTest {
+
+    @Test
+    public void testWindows() throws IOException {
+        long now = System.currentTimeMillis();
+        UsageHistory history = new UsageHistory();
+        history.record(now, 1);
+        history.record(now - TimeUnit.HOURS.toMillis(2), 2);
+        history.record(now - TimeUnit.DAYS.toMillis(3), 4);
+        history.record(now - TimeUnit.DAYS.toMillis(20), 8);
+        history.record(now - TimeUnit.DAYS.toMillis(400), 16);
+        Assert.assertEquals(3, history.getLast24Hours());
+        Assert.assertEquals(7, history.getLast7Days());
+        Assert.assertEquals(15, history.getLast30Days());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        history.writeTo(new DataOutputStream(bytes));
+        UsageHistory restored = new UsageHistory();
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        restored.record(now, 1);
+        Assert.assertEquals(4, restored.getLast24Hours());
+        Assert.assertEquals(16, restored.getLast30Days());
+    }
+}
@@ -0,0 +1,149 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.CredentialUsage;
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageCounter;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageJournal;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageRetention;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class UsageJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRecoverAfterCompaction() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        HashMap<String, CredentialUsage> legacyUsage = new HashMap<>();
+        legacyUsage.put("credential1", new CredentialUsage("credential1").incrementItemUsage("job1"));
+        UsageJournal journal = new UsageJournal(directory);
+        journal.writeInitialSnapshot(new CredentialUsageStore(legacyUsage));
+        journal.recover();
+        journal.record(UsageEvent.itemUsage("credential1", "job1", 1));
+        journal.record(UsageEvent.nodeUsage("credential1", "agent"));
+        Assert.assertEquals(2, journal.flush());
+        journal.close();
+
+        journal = new UsageJournal(directory);
+        CredentialUsage credentialUsage = journal.recover().snapshot().get("credential1");
+        Assert.assertEquals(3, credentialUsage.getTotalUsageCount().intValue());
+        Assert.assertEquals(2, credentialUsage.getItemUsage().get("job1").intValue());
+        journal.record(UsageEvent.itemUsage("credential2", "job2", 7));
+        journal.flush();
+        journal.close();
+
+        journal = new UsageJournal(directory);
+        journal.recover();
+        journal.compact();
+        Assert.assertEquals(1, journal.getCompactionCount());
+        journal.close();
+
+        CredentialUsageStore credentialUsageStore = new UsageJournal(directory).recover();
+        HashMap<String, CredentialUsage> usage = credentialUsageStore.snapshot();
+        Assert.assertEquals(3, usage.get("credential1").getTotalUsageCount().intValue());
+        // Migrated usage has no history
+        Assert.assertEquals(2, credentialUsageStore.getCounters("credential1").getHistory().getLast24Hours());
+        Assert.assertEquals(1, usage.get("credential2").getItemUsage().get("job2").intValue());
+        Assert.assertEquals(2, credentialUsageStore.getCounters("credential1").getTopItems().get(0).getCount());
+        UsageCounter itemUsage = credentialUsageStore.getCounters("credential2").getItemUsage("job2");
+        Assert.assertNotEquals(UsageCounter.UNKNOWN, itemUsage.getLastUsed());
+        Assert.assertEquals(7, itemUsage.getLastBuildNumber());
+        Assert.assertArrayEquals(new String[]{"snapshot-00000000000000000002.bin"}, directory.list());
+    }
+
+    @Test
+    public void testTornRecordAndClear() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        UsageJournal journal = new UsageJournal(directory);
+        journal.recover();
+        journal.record(UsageEvent.itemUsage("credential1", "job1", 1));
+        journal.flush();
+        journal.record(UsageEvent.clear());
+        journal.record(UsageEvent.itemUsage("credential2", "job2", 1));
+        journal.flush();
+        journal.close();
+        try (FileOutputStream output = new FileOutputStream(new File(directory, "segment-00000000000000000000.bin"), true)) {
+            output.write(new byte[]{0, 0, 0, 40, 1, 2});
+        }
+
+        journal = new UsageJournal(directory);
+        HashMap<String, CredentialUsage> usage = journal.recover().snapshot();
+        Assert.assertNull(usage.get("credential1"));
+        Assert.assertEquals(1, usage.get("credential2").getTotalUsageCount().intValue());
+        journal.record(UsageEvent.itemUsage("credential2", "job2", 2));
+        journal.flush();
+        journal.close();
+        Assert.assertEquals(2, new UsageJournal(directory).recover().snapshot().get("credential2").getTotalUsageCount().intValue());
+    }
+
+    @Test
+    public void testReplayInRecordOrder() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        UsageJournal journal = new UsageJournal(directory);
+        CredentialUsageStore live = journal.recover();
+        List<UsageEvent> events = new ArrayList<>();
+        events.add(new UsageEvent(UsageEvent.Type.ITEM, 1000L, "credential", "job", 1));
+        events.add(UsageEvent.rename(UsageEvent.Type.RENAME_ITEM, 3000L, "job", "renamed"));
+        // A use queued before the rename but counted after it
+        events.add(new UsageEvent(UsageEvent.Type.ITEM, 2000L, "credential", "job", 2));
+        events.add(UsageEvent.evictItem("credential", "renamed"));
+        events.add(new UsageEvent(UsageEvent.Type.ITEM, 1500L, "credential", "renamed", 3));
+        for (UsageEvent event : events) {
+            // Recorded by the accounting thread, written by the flushing one
+            Thread thread = new Thread(() -> journal.record(event));
+            thread.start();
+            thread.join();
+            live.apply(event);
+        }
+        journal.flush();
+        journal.close();
+
+        HashMap<String, CredentialUsage> replayed = new UsageJournal(directory).recover().snapshot();
+        Assert.assertEquals(live.snapshot().get("credential").getItemUsage(), replayed.get("credential").getItemUsage());
+        Assert.assertEquals(1, replayed.get("credential").getItemUsage().get("job").intValue());
+        Assert.assertEquals(1, replayed.get("credential").getItemUsage().get("renamed").intValue());
+        Assert.assertEquals(1, replayed.get("credential").getItemUsage().get(UsageRetention.OTHER_ITEMS).intValue());
+    }
+
+    @Test
+    public void testRenameAndRemoveReplay() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        UsageJournal journal = new UsageJournal(directory);
+        journal.recover();
+        journal.record(UsageEvent.nodeUsage("credential1", "cloud-agent-1"));
+        journal.record(UsageEvent.itemUsage("credential1", "folder/job1", 1));
+        journal.record(UsageEvent.itemUsage("credential1", "folder/job2", 1));
+        journal.record(UsageEvent.itemUsage("credential2", "folder/job1", 2));
+        journal.record(UsageEvent.renameItem("folder/job1", "other/job1"));
+        journal.record(UsageEvent.renameItem("folder/job2", "other/job1"));
+        journal.record(UsageEvent.removeNode("cloud-agent-1"));
+        journal.record(UsageEvent.evictItem("credential2", "other/job1"));
+        journal.flush();
+        journal.close();
+
+        CredentialUsageStore credentialUsageStore = new UsageJournal(directory).recover();
+        HashMap<String, CredentialUsage> usage = credentialUsageStore.snapshot();
+        Assert.assertEquals(2, usage.get("credential1").getItemUsage().get("other/job1").intValue());
+        Assert.assertNull(usage.get("credential1").getItemUsage().get("folder/job1"));
+        // Evictions only fold the usage of their credential
+        Assert.assertNull(usage.get("credential2").getItemUsage().get("other/job1"));
+        Assert.assertEquals(1, usage.get("credential2").getItemUsage().get(UsageRetention.OTHER_ITEMS).intValue());
+        Assert.assertTrue(usage.get("credential1").getNodeUsage().isEmpty());
+        // The total keeps the usage of removed nodes
+        Assert.assertEquals(3, usage.get("credential1").getTotalUsageCount().intValue());
+        Assert.assertEquals(1, credentialUsageStore.getCounters("credential1").getTopItems().size());
+        Assert.assertEquals("other/job1", credentialUsageStore.getCounters("credential1").getLastUsedItem());
+    }
+}
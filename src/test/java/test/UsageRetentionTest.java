@@ -0,0 +1,63 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.CredentialUsage;
+import io.jenkins.plugins.enhanced.credentials.usage.CredentialUsageStore;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageEvent;
+import io.jenkins.plugins.enhanced.credentials.usage.UsageRetention;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+public class UsageRetentionTest {
+
+    @Test
+    public void testMaxItemsAndTimeToLive() {
+        CredentialUsageStore store = new CredentialUsageStore(new HashMap<>());
+        for (int i = 0; i < 10; i++) {
+            store.incrementItemUsage("credential", "job" + i, 5000L + i, i);
+        }
+        store.incrementNodeUsage("credential", "old-agent", 100L);
+        store.incrementNodeUsage("credential", "agent", 5000L);
+
+        UsageRetention retention = new UsageRetention(4, 0, 1000L, 0);
+        List<UsageEvent> evictions = retention.selectEvictions(store, 5500L);
+        Assert.assertEquals(7, evictions.size());
+        evictions.forEach(store::apply);
+
+        CredentialUsage credentialUsage = store.snapshot().get("credential");
+        Assert.assertEquals(12, credentialUsage.getTotalUsageCount().intValue());
+        // The least recently used items are folded into the other items
+        Assert.assertEquals(5, credentialUsage.getItemUsage().size());
+        Assert.assertEquals(6, credentialUsage.getItemUsage().get(UsageRetention.OTHER_ITEMS).intValue());
+        Assert.assertNull(credentialUsage.getItemUsage().get("job5"));
+        Assert.assertEquals(1, credentialUsage.getItemUsage().get("job6").intValue());
+        Assert.assertEquals(1, credentialUsage.getNodeUsage().get(UsageRetention.OTHER_NODES).intValue());
+        Assert.assertEquals(1, credentialUsage.getNodeUsage().get("agent").intValue());
+
+        // The other usage itself is never evicted
+        Assert.assertTrue(retention.selectEvictions(store, 5500L).isEmpty());
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        CredentialUsageStore store = new CredentialUsageStore(new HashMap<>());
+        for (int i = 0; i < 100; i++) {
+            store.incrementItemUsage("credential" + (i % 2), "job" + i, 1000L + i, i);
+        }
+        Assert.assertEquals(100, store.getCounterCount());
+
+        UsageRetention retention = new UsageRetention(0, 0, 0, 50 * UsageRetention.COUNTER_MEMORY_SIZE);
+        List<UsageEvent> evictions = retention.selectEvictions(store, 2000L);
+        Assert.assertEquals(50, evictions.size());
+        evictions.forEach(store::apply);
+
+        // The least recently used counters over all credentials went, each credential gained its other items
+        Assert.assertEquals(52, store.getCounterCount());
+        Assert.assertNull(store.getCounters("credential0").getItemUsage("job48"));
+        Assert.assertNotNull(store.getCounters("credential0").getItemUsage("job50"));
+        Assert.assertEquals(25, store.getCounters("credential1").getItemUsage(UsageRetention.OTHER_ITEMS).getCount());
+        Assert.assertEquals(50, store.getCounters("credential1").getTotalUsageCount());
+    }
+}
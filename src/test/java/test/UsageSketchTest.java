@@ -0,0 +1,42 @@
+package test;
+
+import io.jenkins.plugins.enhanced.credentials.usage.UsageSketch;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class UsageSketchTest {
+
+    @Test
+    public void testEstimates() throws IOException {
+        UsageSketch sketch = new UsageSketch();
+        for (int i = 0; i < 20000; i++) {
+            sketch.add("folder/pr-" + i, 1);
+        }
+        sketch.add("folder/main", 500);
+        // Four standard errors
+        Assert.assertEquals(20001, sketch.estimateDistinctCount(), 20001 * 4 * sketch.getDistinctCountError() / 100);
+        long estimate = sketch.estimateCount("folder/main");
+        Assert.assertTrue(estimate >= 500);
+        Assert.assertTrue(estimate <= 500 + sketch.getCountError());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.writeTo(new DataOutputStream(bytes));
+        UsageSketch restored = UsageSketch.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(sketch.estimateDistinctCount(), restored.estimateDistinctCount());
+        Assert.assertEquals(estimate, restored.estimateCount("folder/main"));
+        Assert.assertEquals(3, addAll(new UsageSketch(), "a", "b", "c", "a"));
+    }
+
+    private static long addAll(UsageSketch sketch, String... names) {
+        for (String name : names) {
+            sketch.add(name, 1);
+        }
+        return sketch.estimateDistinctCount();
+    }
+}